@@ -26,6 +26,7 @@ import android.widget.Button;
 import android.widget.Toast;
 import com.example.android.tv.recommendations.model.MockDatabase;
 import com.example.android.tv.recommendations.model.Subscription;
+import com.example.android.tv.recommendations.util.ChannelRegistry;
 import com.example.android.tv.recommendations.util.TvUtil;
 import java.util.Arrays;
 import java.util.List;
@@ -39,21 +40,47 @@ public class MainActivity extends Activity {
 
     private static final int MAKE_BROWSABLE_REQUEST_CODE = 9001;
 
+    private Button mTrendingSubscribeButton;
+    private Subscription mTrendingSubscription;
+
+    private final ChannelRegistry.Listener mChannelsListener =
+            new ChannelRegistry.Listener() {
+                @Override
+                public void onChannelsChanged(ChannelRegistry registry) {
+                    if (mTrendingSubscription != null) {
+                        setupButtonState(mTrendingSubscribeButton, mTrendingSubscription);
+                    }
+                }
+            };
+
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-        Button mTrendingSubscribeButton = findViewById(R.id.subscribe_trending_button);
+        mTrendingSubscribeButton = findViewById(R.id.subscribe_trending_button);
+        // Enabled once the subscription is read, which opens the database.
+        mTrendingSubscribeButton.setEnabled(false);
 
-        final Subscription trendingSubscription = MockDatabase.getSeriadosSubscription(getApplicationContext());
-        setupButtonState(mTrendingSubscribeButton, trendingSubscription);
+        ChannelRegistry.addListener(mChannelsListener);
+        new LoadChannelsTask(getApplicationContext()).execute();
 
         TvUtil.scheduleSyncingChannel(this);
     }
 
+    @Override
+    protected void onDestroy() {
+        ChannelRegistry.removeListener(mChannelsListener);
+        super.onDestroy();
+    }
+
     private void setupButtonState(Button button, final Subscription subscription) {
-        boolean channelExists = subscription.getChannelId() > 0L;
+        // Until the channels are loaded, trusts the stored channel id.
+        ChannelRegistry registry = ChannelRegistry.peek();
+        boolean channelExists =
+                registry != null
+                        ? registry.findById(subscription.getChannelId()) != null
+                        : subscription.getChannelId() > 0L;
         button.setEnabled(!channelExists);
         button.setOnClickListener(
                 new View.OnClickListener() {
@@ -64,6 +91,30 @@ public class MainActivity extends Activity {
                 });
     }
 
+    /* Reads the subscription and loads the channels, both of which hit the disk. */
+    private class LoadChannelsTask extends AsyncTask<Void, Void, Subscription> {
+
+        private final Context mContext;
+
+        LoadChannelsTask(Context context) {
+            this.mContext = context;
+        }
+
+        @Override
+        protected Subscription doInBackground(Void... voids) {
+            Subscription subscription = MockDatabase.getSeriadosSubscription(mContext);
+            ChannelRegistry.get(mContext);
+            return subscription;
+        }
+
+        @Override
+        protected void onPostExecute(Subscription subscription) {
+            super.onPostExecute(subscription);
+            mTrendingSubscription = subscription;
+            mChannelsListener.onChannelsChanged(ChannelRegistry.peek());
+        }
+    }
+
     private class AddChannelTask extends AsyncTask<Subscription, Void, Long> {
 
         private final Context mContext;
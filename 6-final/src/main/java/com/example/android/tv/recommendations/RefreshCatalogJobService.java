@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.android.tv.recommendations;
+
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.content.Context;
+import android.os.AsyncTask;
+import android.util.Log;
+import com.example.android.tv.recommendations.model.CatalogSnapshot;
+import com.example.android.tv.recommendations.model.MockMovieService;
+import com.example.android.tv.recommendations.util.CatalogRefreshScheduler;
+import com.example.android.tv.recommendations.util.SyncMetrics;
+import com.example.android.tv.recommendations.util.SystemTracer;
+import com.example.android.tv.recommendations.util.TvUtil;
+import com.example.android.tv.recommendations.util.WatchNextSync;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
+/**
+ * Refreshes the catalog on a timer. If the catalog changed, the programs of every channel are
+ * synced right away instead of waiting for a change to a channel. See {@link
+ * CatalogRefreshScheduler} for how the next refresh is scheduled.
+ */
+public class RefreshCatalogJobService extends JobService {
+
+    private static final String TAG = "RefreshCatalogJobSvc";
+    private static final String JOB_NAME = "refreshCatalog";
+
+    private RefreshCatalogTask mRefreshCatalogTask;
+    private long mStartNanos;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        SystemTracer.install();
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters jobParameters) {
+        Log.d(TAG, "Starting catalog refresh job");
+        mStartNanos = TvUtil.recordJobStarted(JOB_NAME, jobParameters);
+        mRefreshCatalogTask =
+                new RefreshCatalogTask(getApplicationContext()) {
+                    @Override
+                    protected void onPostExecute(Boolean changed) {
+                        super.onPostExecute(changed);
+                        TvUtil.recordJobFinished(JOB_NAME, mStartNanos);
+                        jobFinished(jobParameters, false);
+                    }
+                };
+        mRefreshCatalogTask.execute();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters jobParameters) {
+        if (mRefreshCatalogTask != null) {
+            mRefreshCatalogTask.cancel(true);
+        }
+        TvUtil.recordJobFinished(JOB_NAME, mStartNanos);
+        // The next refresh is only scheduled once a refresh completes.
+        return true;
+    }
+
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        SyncMetrics.dump(writer);
+    }
+
+    private static class RefreshCatalogTask extends AsyncTask<Void, Void, Boolean> {
+
+        private final Context mContext;
+
+        RefreshCatalogTask(Context context) {
+            this.mContext = context;
+        }
+
+        @Override
+        protected Boolean doInBackground(Void... voids) {
+            CatalogSnapshot previous = MockMovieService.getPublishedSnapshot();
+            CatalogSnapshot current = MockMovieService.refresh(mContext);
+            if (isCancelled()) {
+                return false;
+            }
+            boolean changed = CatalogRefreshScheduler.onRefreshed(mContext, previous, current);
+            if (changed) {
+                SyncProgramsJobService.requestSyncNow(mContext);
+                if (WatchNextSync.isWatching(mContext)) {
+                    TvUtil.scheduleSyncingWatchNextNow(mContext);
+                }
+            }
+            return changed;
+        }
+    }
+}
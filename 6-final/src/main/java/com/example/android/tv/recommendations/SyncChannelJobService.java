@@ -22,7 +22,14 @@ import android.util.Log;
 import com.example.android.tv.recommendations.model.MockDatabase;
 import com.example.android.tv.recommendations.model.MockMovieService;
 import com.example.android.tv.recommendations.model.Subscription;
+import com.example.android.tv.recommendations.util.CatalogRefreshScheduler;
+import com.example.android.tv.recommendations.util.ChannelRegistry;
+import com.example.android.tv.recommendations.util.SyncMetrics;
+import com.example.android.tv.recommendations.util.SystemTracer;
 import com.example.android.tv.recommendations.util.TvUtil;
+import com.example.android.tv.recommendations.util.WatchNextSync;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.List;
 
 /**
@@ -32,17 +39,27 @@ import java.util.List;
 public class SyncChannelJobService extends JobService {
 
     private static final String TAG = "RecommendChannelJobSvc";
+    private static final String JOB_NAME = "syncChannels";
 
     private SyncChannelTask mSyncChannelTask;
+    private long mStartNanos;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        SystemTracer.install();
+    }
 
     @Override
     public boolean onStartJob(final JobParameters jobParameters) {
         Log.d(TAG, "Starting channel creation job");
+        mStartNanos = TvUtil.recordJobStarted(JOB_NAME, jobParameters);
         mSyncChannelTask =
                 new SyncChannelTask(getApplicationContext()) {
                     @Override
                     protected void onPostExecute(Boolean success) {
                         super.onPostExecute(success);
+                        TvUtil.recordJobFinished(JOB_NAME, mStartNanos);
                         jobFinished(jobParameters, !success);
                     }
                 };
@@ -55,9 +72,15 @@ public class SyncChannelJobService extends JobService {
         if (mSyncChannelTask != null) {
             mSyncChannelTask.cancel(true);
         }
+        TvUtil.recordJobFinished(JOB_NAME, mStartNanos);
         return true;
     }
 
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        SyncMetrics.dump(writer);
+    }
+
     private static class SyncChannelTask extends AsyncTask<Void, Void, Boolean> {
 
         private final Context mContext;
@@ -68,8 +91,18 @@ public class SyncChannelJobService extends JobService {
 
         @Override
         protected Boolean doInBackground(Void... voids) {
+            long start = SyncMetrics.beginSection(SyncMetrics.SYNC_CHANNELS);
+            try {
+                return syncChannels();
+            } finally {
+                SyncMetrics.endSection(SyncMetrics.SYNC_CHANNELS, start);
+            }
+        }
+
+        private boolean syncChannels() {
             List<Subscription> subscriptions = MockDatabase.getSubscriptions(mContext);
-            int numOfChannelsInTVProvider = TvUtil.getNumberOfChannels(mContext);
+            ChannelRegistry channels = ChannelRegistry.get(mContext);
+            int numOfChannelsInTVProvider = channels.size();
             // Checks if the default channels are added. Since a user can add more channels from
             // your app later, the number of channels in the provider can be greater than the number
             // of default channels.
@@ -78,20 +111,30 @@ public class SyncChannelJobService extends JobService {
             } else {
                 // Create subscriptions from mocked source.
                 subscriptions = MockMovieService.createUniversalSubscriptions(mContext);
-                for (Subscription subscription : subscriptions) {
-                    long channelId = TvUtil.createChannel(mContext, subscription);
-                    subscription.setChannelId(channelId);
-                    TvContractCompat.requestChannelBrowsable(mContext, channelId);
+                long[] channelIds = channels.createChannels(mContext, subscriptions);
+                for (int index = 0; index < subscriptions.size(); ++index) {
+                    Subscription subscription = subscriptions.get(index);
+                    subscription.setChannelId(channelIds[index]);
+                    if (channelIds[index] != -1L) {
+                        TvContractCompat.requestChannelBrowsable(mContext, channelIds[index]);
+                    }
                 }
 
                 MockDatabase.saveSubscriptions(mContext, subscriptions);
             }
 
-            // Kick off a job to update default programs.
+            // Kick off a job to update default programs, one job for all of the channels.
             // The program job should verify if the channel is visible before updating programs.
-            for (Subscription channel : subscriptions) {
-                TvUtil.scheduleSyncingProgramsForChannel(mContext, channel.getChannelId());
+            long[] channelIds = new long[subscriptions.size()];
+            for (int index = 0; index < subscriptions.size(); ++index) {
+                channelIds[index] = subscriptions.get(index).getChannelId();
+            }
+            TvUtil.scheduleSyncingProgramsForChannels(mContext, channelIds);
+            if (WatchNextSync.isWatching(mContext)) {
+                TvUtil.scheduleSyncingWatchNext(mContext);
             }
+            // Keep the programs fresh even when no channel changes.
+            CatalogRefreshScheduler.schedule(mContext);
             return true;
         }
     }
@@ -15,80 +15,219 @@ package com.example.android.tv.recommendations;
 
 import android.app.job.JobParameters;
 import android.app.job.JobService;
-import android.content.ContentUris;
 import android.content.Context;
-import android.database.Cursor;
 import android.net.Uri;
-import android.os.AsyncTask;
-import android.os.PersistableBundle;
-import androidx.annotation.NonNull;
-import androidx.tvprovider.media.tv.Channel;
-import androidx.tvprovider.media.tv.PreviewProgram;
-import androidx.tvprovider.media.tv.TvContractCompat;
 import android.util.Log;
 import com.example.android.tv.recommendations.model.MockDatabase;
 import com.example.android.tv.recommendations.model.MockMovieService;
 import com.example.android.tv.recommendations.model.Movie;
 import com.example.android.tv.recommendations.model.Subscription;
+import com.example.android.tv.recommendations.util.ChannelRegistry;
+import com.example.android.tv.recommendations.util.ChannelSyncExecutor;
+import com.example.android.tv.recommendations.util.ContentResolverTvProvider;
+import com.example.android.tv.recommendations.util.LongLongMap;
+import com.example.android.tv.recommendations.util.ProgramBatchWriter;
+import com.example.android.tv.recommendations.util.ProgramReconciler;
+import com.example.android.tv.recommendations.util.SyncEngine;
+import com.example.android.tv.recommendations.util.SyncMetrics;
+import com.example.android.tv.recommendations.util.SyncTriggerFilter;
+import com.example.android.tv.recommendations.util.SystemTracer;
+import com.example.android.tv.recommendations.util.TvProvider;
 import com.example.android.tv.recommendations.util.TvUtil;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * Syncs programs for a channel. A channel id is required to be passed via the {@link
- * JobParameters}. This service is scheduled to listen to changes to a channel. Once the job
- * completes, it will reschedule itself to listen for the next change to the channel. See {@link
- * TvUtil#scheduleSyncingProgramsForChannel(Context, long)} for more details about the scheduling.
+ * Syncs programs for the channels of the app. A single job listens to changes to all of the
+ * channels, whose ids are passed via the {@link JobParameters}. When it is triggered, the channels
+ * that changed are synced together, and once every sync completes the job reschedules itself to
+ * listen for the next changes. See {@link TvUtil#scheduleSyncingPrograms(Context, LongLongMap)}
+ * for more details about the scheduling.
+ *
+ * <p>A sync of every channel can be requested with {@link #requestSyncNow(Context)}, such as when
+ * the catalog changed. It never replaces a job that is running, which would stop its syncs
+ * halfway; the running job runs again as soon as it finishes instead.
+ *
+ * <p>The timings and counters of the sync are printed by {@code adb shell dumpsys activity service
+ * com.example.android.tv.recommendations/.SyncProgramsJobService}, see {@link SyncMetrics}.
  */
 public class SyncProgramsJobService extends JobService {
 
     private static final String TAG = "SyncProgramsJobService";
+    private static final String JOB_NAME = "syncPrograms";
+
+    /* Whether the job is running, and whether a sync was requested meanwhile. */
+    private static final AtomicBoolean sRunning = new AtomicBoolean();
+    private static final AtomicBoolean sSyncRequested = new AtomicBoolean();
+
+    /* Syncs of the running job by channel id, only accessed on the main thread. */
+    private final Map<Long, ChannelSyncExecutor.Handle> mSyncs = new HashMap<>();
+    private long mStartNanos;
 
-    private SyncProgramsTask mSyncProgramsTask;
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        SystemTracer.install();
+    }
 
     @Override
     public boolean onStartJob(final JobParameters jobParameters) {
         Log.d(TAG, "onStartJob(): " + jobParameters);
+        mStartNanos = TvUtil.recordJobStarted(JOB_NAME, jobParameters);
 
-        final long channelId = getChannelId(jobParameters);
-        if (channelId == -1L) {
+        final LongLongMap generations = TvUtil.getSyncGenerations(jobParameters.getExtras());
+        if (generations.isEmpty()) {
+            return false;
+        }
+        long[] channelIds = getChangedChannelIds(generations, jobParameters);
+        if (channelIds.length == 0) {
+            // Only our own writes changed, keep listening with the same generations.
+            TvUtil.scheduleSyncingPrograms(this, generations);
             return false;
         }
-        Log.d(TAG, "onStartJob(): Scheduling syncing for programs for channel " + channelId);
-
-        mSyncProgramsTask =
-                new SyncProgramsTask(getApplicationContext()) {
-                    @Override
-                    protected void onPostExecute(Boolean finished) {
-                        super.onPostExecute(finished);
-                        // Daisy chain listening for the next change to the channel.
-                        TvUtil.scheduleSyncingProgramsForChannel(
-                                SyncProgramsJobService.this, channelId);
-                        mSyncProgramsTask = null;
-                        jobFinished(jobParameters, !finished);
-                    }
-                };
-        mSyncProgramsTask.execute(channelId);
+        Log.d(TAG, "onStartJob(): Syncing programs for " + channelIds.length + " channels");
+
+        final boolean[] rescheduled = new boolean[1];
+        mSyncs.clear();
+        sRunning.set(true);
+        for (final long channelId : channelIds) {
+            final SyncProgramsTask task = new SyncProgramsTask(getApplicationContext(), channelId);
+            ChannelSyncExecutor.Handle handle =
+                    ChannelSyncExecutor.submit(
+                            channelId,
+                            task,
+                            new ChannelSyncExecutor.Callback() {
+                                @Override
+                                public void onSyncFinished(boolean finished) {
+                                    if (mSyncs.remove(channelId) == null) {
+                                        // Stopped, the job scheduler takes care of rescheduling.
+                                        return;
+                                    }
+                                    generations.put(channelId, task.getGeneration());
+                                    rescheduled[0] |= !finished;
+                                    if (mSyncs.isEmpty()) {
+                                        // Daisy chain listening for the next changes.
+                                        addPendingChannels(generations);
+                                        TvUtil.scheduleSyncingPrograms(
+                                                SyncProgramsJobService.this, generations);
+                                        sRunning.set(false);
+                                        if (sSyncRequested.getAndSet(false)) {
+                                            TvUtil.scheduleSyncingProgramsNow(
+                                                    SyncProgramsJobService.this);
+                                        }
+                                        TvUtil.recordJobFinished(JOB_NAME, mStartNanos);
+                                        jobFinished(jobParameters, rescheduled[0]);
+                                    }
+                                }
+                            });
+            mSyncs.put(channelId, handle);
+        }
 
         return true;
     }
 
     @Override
     public boolean onStopJob(JobParameters jobParameters) {
-        if (mSyncProgramsTask != null) {
-            mSyncProgramsTask.cancel(true);
+        if (mSyncs.isEmpty()) {
+            return false;
+        }
+        for (ChannelSyncExecutor.Handle handle : mSyncs.values()) {
+            handle.cancel();
         }
+        mSyncs.clear();
+        sRunning.set(false);
+        MockMovieService.cancelFetches();
+        TvUtil.recordJobFinished(JOB_NAME, mStartNanos);
         return true;
     }
 
-    private long getChannelId(JobParameters jobParameters) {
-        PersistableBundle extras = jobParameters.getExtras();
-        if (extras == null) {
-            return -1L;
+    /**
+     * Syncs the programs of every channel now. If the job is running, it is not replaced, and runs
+     * again once it finishes.
+     *
+     * @param context for accessing the job scheduler.
+     */
+    public static void requestSyncNow(Context context) {
+        sSyncRequested.set(true);
+        // Whichever of this and the running job sees the request last takes care of it.
+        if (!sRunning.get() && sSyncRequested.getAndSet(false)) {
+            TvUtil.scheduleSyncingProgramsNow(context);
         }
+    }
 
-        return extras.getLong(TvContractCompat.EXTRA_CHANNEL_ID, -1L);
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        SyncMetrics.dump(writer);
+        writer.println("Programs: " + ProgramBatchWriter.getStats());
+        writer.println("Database: " + MockDatabase.getCacheStats());
+        writer.println("Ignored triggers: " + SyncTriggerFilter.getSuppressedCount());
+        writer.flush();
+    }
+
+    /*
+     * Adds the channels that were added to the pending job while the syncs ran, which rescheduling
+     * with the channels of the started job would drop.
+     */
+    private void addPendingChannels(LongLongMap generations) {
+        LongLongMap pending = TvUtil.getPendingSyncGenerations(this);
+        for (long channelId : pending.keys()) {
+            if (!generations.containsKey(channelId)) {
+                generations.put(
+                        channelId, pending.get(channelId, SyncTriggerFilter.NO_GENERATION));
+            }
+        }
+    }
+
+    /*
+     * Returns the channels whose changes have to be synced. Changes are grouped by channel, and
+     * those caused by the last sync of a channel are ignored. All channels changed if the job was
+     * not triggered by a change, or if there were too many changes for them to be reported.
+     */
+    private static long[] getChangedChannelIds(
+            LongLongMap generations, JobParameters jobParameters) {
+        long[] channelIds = generations.keys();
+        Uri[] triggeredUris = jobParameters.getTriggeredContentUris();
+        Map<Long, List<Uri>> changes = new HashMap<>();
+        if (triggeredUris != null) {
+            for (Uri uri : triggeredUris) {
+                long channelId = TvUtil.getChannelIdFromUri(uri);
+                if (!generations.containsKey(channelId)) {
+                    // Another channel, seen when all channels are observed through one uri.
+                    continue;
+                }
+                List<Uri> uris = changes.get(channelId);
+                if (uris == null) {
+                    uris = new ArrayList<>();
+                    changes.put(channelId, uris);
+                }
+                uris.add(uri);
+            }
+        }
+
+        // Reloaded shortly after a channel changes, well before the job runs.
+        ChannelRegistry registry = ChannelRegistry.peek();
+        LongLongMap changed = new LongLongMap();
+        for (long channelId : channelIds) {
+            List<Uri> uris = changes.get(channelId);
+            if (triggeredUris != null && triggeredUris.length > 0 && uris == null) {
+                continue;
+            }
+            long generation = generations.get(channelId, SyncTriggerFilter.NO_GENERATION);
+            if (SyncTriggerFilter.shouldSync(
+                    channelId,
+                    generation,
+                    uris != null ? uris.toArray(new Uri[0]) : null,
+                    registry != null ? registry.findById(channelId) : null)) {
+                changed.put(channelId, 1L);
+            }
+        }
+        return changed.keys();
     }
 
     /*
@@ -97,140 +236,151 @@ public class SyncProgramsJobService extends JobService {
      * If the channel is not browsable, the programs will be removed to avoid showing
      * stale programs when the channel becomes browsable in the future.
      *
-     * If the channel is browsable, then it will check if the channel has any programs.
-     *      If the channel does not have any programs, new programs will be added.
-     *      If the channel does have programs, then a fresh list of programs will be fetched and the
-     *          channel's programs will be updated.
+     * If the channel is browsable, then the programs of the channel are reconciled with the
+     * catalog: programs are inserted, updated or deleted only where they differ from it.
+     *
+     * The sync runs in stages: fetch the catalog, reconcile it with the stored movies, write the
+     * changes in batches, then persist the final list. The movies of each batch are persisted as
+     * soon as it is written, and the sync stops between stages and batches once its thread is
+     * interrupted. Since the stored movies are always those whose programs exist, the next sync
+     * resumes from the last batch instead of inserting the same programs again.
+     *
+     * Returns the generation under which the written programs were recorded, see
+     * SyncTriggerFilter.
      */
-    private void syncPrograms(long channelId, List<Movie> initialMovies) {
-        Log.d(TAG, "Sync programs for channel: " + channelId);
+    private long syncPrograms(long channelId, List<Movie> initialMovies) {
+        boolean debug = Log.isLoggable(TAG, Log.DEBUG);
+        if (debug) {
+            Log.d(TAG, "Sync programs for channel: " + channelId);
+        }
         List<Movie> movies = new ArrayList<>(initialMovies);
 
-        try (Cursor cursor =
-                getContentResolver()
-                        .query(
-                                TvContractCompat.buildChannelUri(channelId),
-                                null,
-                                null,
-                                null,
-                                null)) {
-            if (cursor != null && cursor.moveToNext()) {
-                Channel channel = Channel.fromCursor(cursor);
-                if (!channel.isBrowsable()) {
-                    Log.d(TAG, "Channel is not browsable: " + channelId);
-                    deletePrograms(channelId, movies);
-                } else {
-                    Log.d(TAG, "Channel is browsable: " + channelId);
-                    if (movies.isEmpty()) {
-                        movies = createPrograms(channelId, MockMovieService.getList());
-                    } else {
-                        movies = updatePrograms(channelId, movies);
-                    }
-                    MockDatabase.saveMovies(getApplicationContext(), channelId, movies);
-                }
+        ChannelRegistry.Entry channel = ChannelRegistry.get(this).findById(channelId);
+        if (channel == null) {
+            Log.d(TAG, "Channel does not exist: " + channelId);
+            return SyncTriggerFilter.NO_GENERATION;
+        }
+        List<Movie> written = new ArrayList<>();
+        if (!channel.isBrowsable()) {
+            if (debug) {
+                Log.d(TAG, "Channel is not browsable: " + channelId);
+            }
+            deletePrograms(channelId, movies, written);
+        } else {
+            ProgramReconciler.Summary summary = reconcilePrograms(channelId, movies, written);
+            if (debug) {
+                Log.d(TAG, "Synced programs for channel " + channelId + ": " + summary);
             }
         }
+        return SyncTriggerFilter.recordOwnWrites(channelId, channel, written);
     }
 
-    private List<Movie> createPrograms(long channelId, List<Movie> movies) {
-
-        List<Movie> moviesAdded = new ArrayList<>(movies.size());
-        for (Movie movie : movies) {
-            PreviewProgram previewProgram = buildProgram(channelId, movie);
-
-            Uri programUri =
-                    getContentResolver()
-                            .insert(
-                                    TvContractCompat.PreviewPrograms.CONTENT_URI,
-                                    previewProgram.toContentValues());
-            long programId = ContentUris.parseId(programUri);
-            Log.d(TAG, "Inserted new program: " + programId);
-            movie.setProgramId(programId);
-            moviesAdded.add(movie);
+    /*
+     * Applies the changes between the published programs of a channel and the catalog, and stores
+     * the result, see SyncEngine. The movies whose programs were written are added to written.
+     */
+    private ProgramReconciler.Summary reconcilePrograms(
+            long channelId, List<Movie> movies, List<Movie> written) {
+        // Fetch.
+        List<Movie> catalog = MockMovieService.getList(getApplicationContext());
+        if (isCancelled()) {
+            return new ProgramReconciler.Summary(0, 0, 0, 0);
+        }
+        if (catalog.isEmpty()) {
+            Log.w(TAG, "Catalog is empty, keeping the programs of channel " + channelId);
         }
 
-        return moviesAdded;
-    }
-
-    private List<Movie> updatePrograms(long channelId, List<Movie> movies) {
-
-        // By getting a fresh list, we should see a visible change in the home screen.
-        List<Movie> updateMovies = MockMovieService.getFreshList();
-        for (int i = 0; i < movies.size(); ++i) {
-            Movie old = movies.get(i);
-            Movie update = updateMovies.get(i);
-            long programId = old.getProgramId();
+        // Audit, reconcile and write batches, each one checkpointed.
+        SyncEngine.Result result =
+                SyncEngine.syncPrograms(
+                        getProvider(),
+                        channelId,
+                        movies,
+                        catalog,
+                        createCheckpoint(channelId, written));
+        if (result.getRepaired() != null) {
+            Log.d(TAG, "Repaired programs of channel " + channelId + ": " + result.getRepaired());
+        }
+        if (isCancelled()) {
+            Log.d(TAG, "Sync of channel " + channelId + " stopped after " + result.getSummary());
+            return result.getSummary();
+        }
 
-            getContentResolver()
-                    .update(
-                            TvContractCompat.buildPreviewProgramUri(programId),
-                            buildProgram(channelId, update).toContentValues(),
-                            null,
-                            null);
-            Log.d(TAG, "Updated program: " + programId);
-            update.setProgramId(programId);
+        // Persist, in the order of the catalog.
+        if (result.getPublished() != null) {
+            MockDatabase.saveMovies(getApplicationContext(), channelId, result.getPublished());
         }
+        return result.getSummary();
+    }
 
-        return updateMovies;
+    /* Persists the movies of each batch written to the provider, and adds them to written. */
+    private ProgramBatchWriter.Checkpoint createCheckpoint(
+            final long channelId, final List<Movie> written) {
+        return new ProgramBatchWriter.Checkpoint() {
+            @Override
+            public void onBatchApplied(List<Movie> stored, List<Movie> removed) {
+                MockDatabase.saveMovieChanges(getApplicationContext(), channelId, stored, removed);
+                written.addAll(stored);
+                written.addAll(removed);
+            }
+        };
     }
 
-    private void deletePrograms(long channelId, List<Movie> movies) {
+    private void deletePrograms(long channelId, List<Movie> movies, List<Movie> written) {
         if (movies.isEmpty()) {
             return;
         }
 
-        int count = 0;
-        for (Movie movie : movies) {
-            count +=
-                    getContentResolver()
-                            .delete(
-                                    TvContractCompat.buildPreviewProgramUri(movie.getProgramId()),
-                                    null,
-                                    null);
-        }
+        int count =
+                SyncEngine.clearPrograms(
+                        getProvider(), movies, createCheckpoint(channelId, written));
         Log.d(TAG, "Deleted " + count + " programs for  channel " + channelId);
+        if (isCancelled()) {
+            return;
+        }
 
         // Remove our local records to stay in sync with the TV Provider.
         MockDatabase.removeMovies(getApplicationContext(), channelId);
     }
 
-    @NonNull
-    private PreviewProgram buildProgram(long channelId, Movie movie) {
-        Uri posterArtUri = Uri.parse(movie.getCardImageUrl());
-
-        PreviewProgram.Builder builder = new PreviewProgram.Builder();
-        builder.setChannelId(channelId)
-                .setType(TvContractCompat.PreviewProgramColumns.TYPE_MOVIE)
-                .setTitle(movie.getTitle())
-                .setDescription(movie.getDescription())
-                .setPosterArtUri(posterArtUri)
-                .setPosterArtAspectRatio(TvContractCompat.PreviewProgramColumns.ASPECT_RATIO_MOVIE_POSTER)
-                .setIntentUri(null);
-        return builder.build();
+    private TvProvider getProvider() {
+        return new ContentResolverTvProvider(getApplicationContext());
     }
 
-    private class SyncProgramsTask extends AsyncTask<Long, Void, Boolean> {
+    private static boolean isCancelled() {
+        return Thread.currentThread().isInterrupted();
+    }
+
+    private class SyncProgramsTask implements Callable<Boolean> {
 
         private final Context mContext;
+        private final long mChannelId;
+        private volatile long mGeneration = SyncTriggerFilter.NO_GENERATION;
 
-        private SyncProgramsTask(Context context) {
+        private SyncProgramsTask(Context context, long channelId) {
             this.mContext = context;
+            this.mChannelId = channelId;
+        }
+
+        /* Returns the generation of the sync, once the task has finished. */
+        long getGeneration() {
+            return mGeneration;
         }
 
         @Override
-        protected Boolean doInBackground(Long... channelIds) {
-            List<Long> params = Arrays.asList(channelIds);
-            if (!params.isEmpty()) {
-                for (Long channelId : params) {
-                    Subscription subscription =
-                            MockDatabase.findSubscriptionByChannelId(mContext, channelId);
-                    if (subscription != null) {
-                        List<Movie> cachedMovies = MockDatabase.getMovies(mContext, channelId);
-                        syncPrograms(channelId, cachedMovies);
-                    }
+        public Boolean call() {
+            Subscription subscription =
+                    MockDatabase.findSubscriptionByChannelId(mContext, mChannelId);
+            if (subscription != null) {
+                long start = SyncMetrics.beginSection(SyncMetrics.SYNC_CHANNEL);
+                try {
+                    List<Movie> cachedMovies = MockDatabase.getMovies(mContext, mChannelId);
+                    mGeneration = syncPrograms(mChannelId, cachedMovies);
+                } finally {
+                    SyncMetrics.endSection(SyncMetrics.SYNC_CHANNEL, start);
                 }
             }
-            return true;
+            return !isCancelled();
         }
     }
 }
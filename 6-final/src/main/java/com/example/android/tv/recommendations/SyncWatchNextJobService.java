@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.android.tv.recommendations;
+
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.content.Context;
+import android.os.AsyncTask;
+import android.util.Log;
+import com.example.android.tv.recommendations.model.MockMovieService;
+import com.example.android.tv.recommendations.util.SyncMetrics;
+import com.example.android.tv.recommendations.util.SystemTracer;
+import com.example.android.tv.recommendations.util.TvUtil;
+import com.example.android.tv.recommendations.util.WatchNextSync;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
+/**
+ * Syncs the Watch Next row when its programs change, such as when the user removes one, or when
+ * the catalog changed. Once the sync completes, the job listens for the next changes as long as the
+ * row holds movies of the app. See {@link WatchNextSync} for what is written.
+ *
+ * <p>The writes of a sync trigger the job once more, and that sync finds nothing to write.
+ */
+public class SyncWatchNextJobService extends JobService {
+
+    private static final String TAG = "SyncWatchNextJobSvc";
+    private static final String JOB_NAME = "syncWatchNext";
+
+    private SyncWatchNextTask mSyncWatchNextTask;
+    private long mStartNanos;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        SystemTracer.install();
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters jobParameters) {
+        Log.d(TAG, "Starting Watch Next sync job");
+        mStartNanos = TvUtil.recordJobStarted(JOB_NAME, jobParameters);
+        mSyncWatchNextTask =
+                new SyncWatchNextTask(getApplicationContext()) {
+                    @Override
+                    protected void onPostExecute(Boolean watching) {
+                        super.onPostExecute(watching);
+                        TvUtil.recordJobFinished(JOB_NAME, mStartNanos);
+                        // Daisy chain listening for the next changes, until the row is empty.
+                        if (watching) {
+                            TvUtil.scheduleSyncingWatchNext(SyncWatchNextJobService.this);
+                        }
+                        jobFinished(jobParameters, false);
+                    }
+                };
+        mSyncWatchNextTask.execute();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters jobParameters) {
+        if (mSyncWatchNextTask != null) {
+            mSyncWatchNextTask.cancel(true);
+        }
+        TvUtil.recordJobFinished(JOB_NAME, mStartNanos);
+        return true;
+    }
+
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        SyncMetrics.dump(writer);
+    }
+
+    private static class SyncWatchNextTask extends AsyncTask<Void, Void, Boolean> {
+
+        private final Context mContext;
+
+        SyncWatchNextTask(Context context) {
+            this.mContext = context;
+        }
+
+        @Override
+        protected Boolean doInBackground(Void... voids) {
+            if (!WatchNextSync.isWatching(mContext)) {
+                return false;
+            }
+            WatchNextSync.refresh(mContext, MockMovieService.getList(mContext));
+            return WatchNextSync.isWatching(mContext);
+        }
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.android.tv.recommendations.model;
+
+import com.example.android.tv.recommendations.util.LongLongMap;
+import com.example.android.tv.recommendations.util.SyncMetrics;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Fetches the pages of the catalog concurrently and merges them in page order. An item that
+ * already appeared on an earlier page is dropped.
+ *
+ * <p>Pages go through a {@link CatalogResponseCache} on disk. A cached page is returned without a
+ * request while it is fresh, and revalidated with {@code If-None-Match} and {@code
+ * If-Modified-Since} once it has expired. Responses are requested gzipped, and parsed as they are
+ * read. A page that fails is replaced by its cached copy, however old. Without one, or if the fetch
+ * is cancelled, nothing is returned so that a partial catalog is never published: the programs of
+ * the missing page would be deleted, only to be inserted again by the next refresh. Once a fetch
+ * has returned the catalog, the pages of other urls are removed from the cache.
+ *
+ * <p>The fetcher does not depend on the Android framework, so that it can be run against a local
+ * server. Its methods block on the network, and must be called on a worker thread.
+ */
+public final class CatalogFetcher {
+
+    /** Receives the problems met by a fetch, on the fetching thread. */
+    public interface Listener {
+
+        /**
+         * Called when a page could not be fetched.
+         *
+         * @param url of the page.
+         * @param error the reason why.
+         * @param cached true if the cached copy of the page is used instead, false if the fetch
+         *     returns nothing.
+         */
+        void onPageFailed(String url, Throwable error, boolean cached);
+
+        /**
+         * Called when items of a page could not be converted into movies.
+         *
+         * @param url of the page.
+         * @param count the number of items skipped.
+         */
+        void onItemsSkipped(String url, int count);
+    }
+
+    private final CatalogResponseCache mCache;
+    private final ExecutorService mExecutor;
+    private final Listener mListener;
+
+    /** Pages that have been submitted and not yet merged, so they can be cancelled. */
+    private final Set<PageRequest> mPendingPages =
+            Collections.newSetFromMap(new ConcurrentHashMap<PageRequest, Boolean>());
+
+    /**
+     * Creates a fetcher.
+     *
+     * @param cacheDirectory where the pages are cached, created on the first fetch.
+     * @param executor on which pages are fetched, which bounds how many are fetched at a time.
+     * @param listener notified of the pages that could not be fetched.
+     */
+    public CatalogFetcher(File cacheDirectory, ExecutorService executor, Listener listener) {
+        this.mCache = new CatalogResponseCache(cacheDirectory);
+        this.mExecutor = executor;
+        this.mListener = listener;
+    }
+
+    /**
+     * Fetches the catalog.
+     *
+     * @param catalogUrl of the first page of the catalog, to which the page number is appended as
+     *     a {@code page} query parameter.
+     * @param pageCount the number of pages to fetch.
+     * @param cacheTtlMillis how long a cached page is used without a request, 0 to always
+     *     revalidate.
+     * @return the movies of the catalog, empty if it could not be fetched or the fetch was
+     *     cancelled. The caller is free to modify them.
+     */
+    public List<Movie> fetch(String catalogUrl, int pageCount, long cacheTtlMillis) {
+        List<PageRequest> pages = new ArrayList<>(pageCount);
+        List<String> urls = new ArrayList<>(pageCount);
+        for (int page = 1; page <= pageCount; ++page) {
+            String url = catalogUrl + "&page=" + page;
+            urls.add(url);
+            PageRequest request = new PageRequest(url, mCache, cacheTtlMillis, mListener);
+            mPendingPages.add(request);
+            request.mFuture = mExecutor.submit(request);
+            pages.add(request);
+        }
+
+        List<Movie> list = new ArrayList<>();
+        LongLongMap seen = new LongLongMap(pageCount * 20);
+        try {
+            for (PageRequest page : pages) {
+                List<Movie> movies;
+                try {
+                    movies = page.mFuture.get();
+                } catch (ExecutionException e) {
+                    CatalogResponseCache.Entry cached = mCache.get(page.mUrl);
+                    mListener.onPageFailed(page.mUrl, e.getCause(), cached != null);
+                    if (cached == null) {
+                        list.clear();
+                        break;
+                    }
+                    movies = cached.copyMovies();
+                }
+                for (Movie movie : movies) {
+                    // Ids are derived from the TMDB id and media type, see TmdbCatalogParser.
+                    if (!seen.containsKey(movie.getId())) {
+                        seen.put(movie.getId(), list.size());
+                        list.add(movie);
+                    }
+                }
+            }
+            if (!list.isEmpty()) {
+                // Drops the pages of an older catalog url or page count.
+                mCache.retainAll(urls);
+            }
+        } catch (CancellationException e) {
+            list.clear();
+        } catch (InterruptedException e) {
+            list.clear();
+            Thread.currentThread().interrupt();
+        } finally {
+            for (PageRequest page : pages) {
+                page.cancel();
+                mPendingPages.remove(page);
+            }
+        }
+        return list;
+    }
+
+    /** Cancels the pages that are being fetched. The fetch they belong to returns nothing. */
+    public void cancel() {
+        for (PageRequest page : mPendingPages) {
+            page.cancel();
+        }
+    }
+
+    /* Fetches and parses one page of the catalog, going through the response cache. */
+    private static final class PageRequest implements Callable<List<Movie>> {
+
+        private final String mUrl;
+        private final CatalogResponseCache mCache;
+        private final long mCacheTtlMillis;
+        private final Listener mListener;
+        private volatile Future<List<Movie>> mFuture;
+        private volatile HttpURLConnection mConnection;
+        private volatile boolean mCancelled;
+
+        PageRequest(
+                String url, CatalogResponseCache cache, long cacheTtlMillis, Listener listener) {
+            this.mUrl = url;
+            this.mCache = cache;
+            this.mCacheTtlMillis = cacheTtlMillis;
+            this.mListener = listener;
+        }
+
+        @Override
+        public List<Movie> call() throws IOException {
+            final List<Movie> movies = new ArrayList<>();
+            if (mCancelled) {
+                return movies;
+            }
+
+            CatalogResponseCache.Entry cached = mCache.get(mUrl);
+            long now = System.currentTimeMillis();
+            if (cached != null && now - cached.fetchedAtMillis < mCacheTtlMillis) {
+                SyncMetrics.count(SyncMetrics.PAGES_CACHED, 1L);
+                return cached.copyMovies();
+            }
+
+            HttpURLConnection conn = (HttpURLConnection) new URL(mUrl).openConnection();
+            mConnection = conn;
+            long start = SyncMetrics.beginSection(SyncMetrics.FETCH_PAGE);
+            boolean fetching = true;
+            try {
+                conn.setReadTimeout(15000); //milliseconds
+                conn.setConnectTimeout(1500); // milliseconds
+                conn.setRequestMethod("GET");
+                // Asking for gzip explicitly turns off transparent decompression, see below.
+                conn.setRequestProperty("Accept-Encoding", "gzip");
+                if (cached != null && cached.etag != null) {
+                    conn.setRequestProperty("If-None-Match", cached.etag);
+                }
+                if (cached != null && cached.lastModified != null) {
+                    conn.setRequestProperty("If-Modified-Since", cached.lastModified);
+                }
+                conn.connect();
+
+                int responseCode = conn.getResponseCode();
+                // Latency up to the response headers, the body is timed as it is parsed.
+                SyncMetrics.endSection(SyncMetrics.FETCH_PAGE, start);
+                fetching = false;
+                if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                    SyncMetrics.count(SyncMetrics.PAGES_NOT_MODIFIED, 1L);
+                    storeInCache(cached.revalidatedAt(now));
+                    return cached.copyMovies();
+                }
+                if (responseCode != HttpURLConnection.HTTP_OK) {
+                    throw new IOException("Response code " + responseCode);
+                }
+
+                SyncMetrics.count(SyncMetrics.PAGES_FETCHED, 1L);
+                // Bytes on the wire, before decompression.
+                InputStream body = new CountingInputStream(conn.getInputStream());
+                if ("gzip".equalsIgnoreCase(conn.getContentEncoding())) {
+                    body = new GZIPInputStream(body);
+                }
+                // Movies are built as the response is read, the body is never held in memory.
+                start = SyncMetrics.beginSection(SyncMetrics.PARSE_PAGE);
+                try (Reader reader = new InputStreamReader(body, StandardCharsets.UTF_8)) {
+                    int skipped =
+                            TmdbCatalogParser.parse(
+                                    reader,
+                                    new TmdbCatalogParser.Listener() {
+                                        @Override
+                                        public void onMovie(Movie movie) {
+                                            movies.add(movie);
+                                        }
+                                    });
+                    if (skipped > 0) {
+                        mListener.onItemsSkipped(mUrl, skipped);
+                    }
+                } finally {
+                    SyncMetrics.endSection(SyncMetrics.PARSE_PAGE, start);
+                }
+                storeInCache(
+                        new CatalogResponseCache.Entry(
+                                mUrl,
+                                conn.getHeaderField("ETag"),
+                                conn.getHeaderField("Last-Modified"),
+                                now,
+                                movies));
+            } finally {
+                if (fetching) {
+                    SyncMetrics.endSection(SyncMetrics.FETCH_PAGE, start);
+                }
+                conn.disconnect();
+            }
+            return movies;
+        }
+
+        private void storeInCache(CatalogResponseCache.Entry entry) {
+            try {
+                mCache.put(entry);
+            } catch (IOException e) {
+                // The page is still usable, it will be fetched again next time.
+            }
+        }
+
+        /*
+         * Cancels the page. Disconnecting is what unblocks a thread that is waiting on the
+         * network, as HttpURLConnection does not respond to interrupts.
+         */
+        void cancel() {
+            mCancelled = true;
+            Future<List<Movie>> future = mFuture;
+            if (future != null) {
+                future.cancel(true);
+            }
+            HttpURLConnection conn = mConnection;
+            if (conn != null) {
+                conn.disconnect();
+            }
+        }
+    }
+
+    /* Counts the bytes read from the network in SyncMetrics#BYTES_READ. */
+    private static final class CountingInputStream extends FilterInputStream {
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if (read >= 0) {
+                SyncMetrics.count(SyncMetrics.BYTES_READ, 1L);
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                SyncMetrics.count(SyncMetrics.BYTES_READ, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            long skipped = super.skip(count);
+            SyncMetrics.count(SyncMetrics.BYTES_READ, skipped);
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.android.tv.recommendations.model;
+
+import com.example.android.tv.recommendations.util.BinaryRecordCodec;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Caches the parsed pages of the catalog on disk, keyed by url, together with the validators
+ * ({@code ETag} and {@code Last-Modified}) returned by the server.
+ *
+ * <p>A page younger than the time to live is used without contacting the server. An older page is
+ * revalidated with a conditional request, and reused as is when the server answers that it has not
+ * been modified. Pages are stored as parsed movies rather than as response bodies, so reusing one
+ * never parses JSON again.
+ */
+final class CatalogResponseCache {
+
+    private static final int FILE_MAGIC = 0x544D4442; // "TMDB"
+    // Version 2: movies carry ids derived from their TMDB id.
+    private static final int FILE_VERSION = 2;
+    private static final String TEMP_SUFFIX = ".tmp";
+    // Entry files are named by the hex SHA-1 of their url.
+    private static final int DIGEST_NAME_LENGTH = 40;
+
+    /** A cached page of the catalog. */
+    static final class Entry {
+
+        final String url;
+        final String etag;
+        final String lastModified;
+        final long fetchedAtMillis;
+        private final List<Movie> movies;
+
+        Entry(
+                String url,
+                String etag,
+                String lastModified,
+                long fetchedAtMillis,
+                List<Movie> movies) {
+            this.url = url;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.fetchedAtMillis = fetchedAtMillis;
+            this.movies = Collections.unmodifiableList(new ArrayList<>(movies));
+        }
+
+        /** Returns the same page, revalidated at the given time. */
+        Entry revalidatedAt(long timeMillis) {
+            return new Entry(url, etag, lastModified, timeMillis, movies);
+        }
+
+        /** Returns copies of the movies of the page, which the caller is free to modify. */
+        List<Movie> copyMovies() {
+            List<Movie> copy = new ArrayList<>(movies.size());
+            for (Movie movie : movies) {
+                copy.add(new Movie(movie));
+            }
+            return copy;
+        }
+    }
+
+    private final File mDirectory;
+    private final Map<String, Entry> mEntries = new HashMap<>();
+
+    CatalogResponseCache(File directory) {
+        this.mDirectory = directory;
+    }
+
+    /**
+     * Returns the cached page for a url, reading it from disk if it is not in memory yet.
+     *
+     * @return the page or null if it has never been cached or cannot be read.
+     */
+    synchronized Entry get(String url) {
+        Entry entry = mEntries.get(url);
+        if (entry == null) {
+            entry = read(url);
+            if (entry != null) {
+                mEntries.put(url, entry);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Stores a page in memory and on disk. The page is written to a temporary file without holding
+     * the lock, which is only taken to move the file in place. A page older than the one already
+     * cached for the same url is dropped.
+     */
+    void put(Entry entry) throws IOException {
+        File temp = write(entry);
+        synchronized (this) {
+            Entry current = mEntries.get(entry.url);
+            if (current != null && current.fetchedAtMillis > entry.fetchedAtMillis) {
+                temp.delete();
+                return;
+            }
+            File file = fileFor(entry.url);
+            // Replaces the previous entry only once the new one is complete.
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                throw new IOException("Could not write " + file);
+            }
+            mEntries.put(entry.url, entry);
+        }
+    }
+
+    /**
+     * Removes the pages of every url but the given ones, from memory and from disk, so that pages
+     * which are no longer requested do not stay in the cache forever.
+     *
+     * @param urls of the pages to keep.
+     */
+    synchronized void retainAll(Collection<String> urls) {
+        mEntries.keySet().retainAll(urls);
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Set<String> names = new HashSet<>();
+        for (String url : urls) {
+            names.add(fileFor(url).getName());
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(TEMP_SUFFIX) && name.length() > DIGEST_NAME_LENGTH) {
+                // A page being written, kept if it belongs to one of the urls.
+                name = name.substring(0, DIGEST_NAME_LENGTH);
+            }
+            if (!names.contains(name)) {
+                file.delete();
+            }
+        }
+    }
+
+    private Entry read(String url) {
+        File file = fileFor(url);
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in =
+                new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                return null;
+            }
+            if (!url.equals(in.readUTF())) {
+                // Another url with the same digest, treat as a miss.
+                return null;
+            }
+            String etag = readNullableUTF(in);
+            String lastModified = readNullableUTF(in);
+            long fetchedAtMillis = in.readLong();
+            // Lengths are checked against the file, so that a corrupt one cannot allocate more.
+            long fileLength = file.length();
+            int count = readLength(in, fileLength / 4);
+            List<Movie> movies = new ArrayList<>(count);
+            for (int index = 0; index < count; ++index) {
+                byte[] record = new byte[readLength(in, fileLength)];
+                in.readFully(record);
+                movies.add(BinaryRecordCodec.MOVIE.decode(record));
+            }
+            return new Entry(url, etag, lastModified, fetchedAtMillis, movies);
+        } catch (IOException | IllegalArgumentException e) {
+            // A corrupt entry is the same as no entry, it will be replaced by the next fetch.
+            file.delete();
+            return null;
+        }
+    }
+
+    /* Writes a page to a new temporary file, which is returned. */
+    private File write(Entry entry) throws IOException {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Could not create " + mDirectory);
+        }
+        // Unique, so that concurrent writers of the same url never share a file.
+        File temp = File.createTempFile(fileFor(entry.url).getName(), TEMP_SUFFIX, mDirectory);
+        boolean written = false;
+        try (DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeUTF(entry.url);
+            writeNullableUTF(out, entry.etag);
+            writeNullableUTF(out, entry.lastModified);
+            out.writeLong(entry.fetchedAtMillis);
+            out.writeInt(entry.movies.size());
+            for (Movie movie : entry.movies) {
+                byte[] record = BinaryRecordCodec.MOVIE.encode(movie);
+                out.writeInt(record.length);
+                out.write(record);
+            }
+            written = true;
+        } finally {
+            if (!written) {
+                temp.delete();
+            }
+        }
+        return temp;
+    }
+
+    private File fileFor(String url) {
+        try {
+            byte[] digest =
+                    MessageDigest.getInstance("SHA-1").digest(url.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xF, 16))
+                        .append(Character.forDigit(b & 0xF, 16));
+            }
+            return new File(mDirectory, name.toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /* Reads a length or a count, which cannot be negative nor go over the given maximum. */
+    private static int readLength(DataInputStream in, long max) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > max) {
+            throw new IOException("Corrupt length: " + length);
+        }
+        return length;
+    }
+
+    private static String readNullableUTF(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeNullableUTF(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.android.tv.recommendations.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable version of the catalog, as published by {@link MockMovieService}.
+ *
+ * <p>Every refresh that succeeds publishes a new snapshot with a higher version. The movies of a
+ * snapshot are shared by every reader and must not be modified; use {@link #copyMovies()} to get
+ * movies that can be.
+ */
+public final class CatalogSnapshot {
+
+    static final CatalogSnapshot EMPTY =
+            new CatalogSnapshot(0L, 0L, Collections.<Movie>emptyList());
+
+    private final long version;
+    private final long timestampMillis;
+    private final List<Movie> movies;
+
+    CatalogSnapshot(long version, long timestampMillis, List<Movie> movies) {
+        this.version = version;
+        this.timestampMillis = timestampMillis;
+        this.movies = Collections.unmodifiableList(new ArrayList<>(movies));
+    }
+
+    /** Returns the version of the catalog, 0 if it has never been fetched. */
+    public long getVersion() {
+        return version;
+    }
+
+    /** Returns when the catalog was fetched, in milliseconds since the epoch. */
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    /** Returns the movies of the catalog. The list and its movies must not be modified. */
+    public List<Movie> getMovies() {
+        return movies;
+    }
+
+    /** Returns true if the catalog has never been fetched successfully. */
+    public boolean isEmpty() {
+        return movies.isEmpty();
+    }
+
+    /** Returns copies of the movies of the catalog, which the caller is free to modify. */
+    public List<Movie> copyMovies() {
+        List<Movie> copy = new ArrayList<>(movies.size());
+        for (Movie movie : movies) {
+            copy.add(new Movie(movie));
+        }
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return "CatalogSnapshot{"
+                + "version="
+                + version
+                + ", timestampMillis="
+                + timestampMillis
+                + ", movies="
+                + movies.size()
+                + '}';
+    }
+}
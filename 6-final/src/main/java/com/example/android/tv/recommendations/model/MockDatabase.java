@@ -14,18 +14,31 @@
 package com.example.android.tv.recommendations.model;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 import androidx.annotation.DrawableRes;
 import androidx.annotation.Nullable;
 import androidx.annotation.StringRes;
 import com.example.android.tv.recommendations.R;
-import com.example.android.tv.recommendations.util.SharedPreferencesHelper;
+import com.example.android.tv.recommendations.util.DatabaseCache;
+import com.example.android.tv.recommendations.util.DatabaseHelper;
+import com.example.android.tv.recommendations.util.LongLongMap;
 import java.util.Collections;
 import java.util.List;
 
-/** Mock database stores data in {@link SharedPreferences}. */
+/**
+ * Mock database stores data in a SQLite database through {@link DatabaseHelper}. Reads are served
+ * from {@link DatabaseCache} when possible, and every write goes through to both.
+ */
 public final class MockDatabase {
 
+    /** Serializes writes, and reads that fill the cache, so the cache never goes stale. */
+    private static final Object sLock = new Object();
+
+    /*
+     * The movies of the Watch Next row are stored like the movies of a channel, under an id that
+     * no channel has, since the channel ids of the TV provider start at 1.
+     */
+    private static final long WATCH_NEXT_ID = 0L;
+
     private MockDatabase() {
         // Do nothing.
     }
@@ -33,7 +46,7 @@ public final class MockDatabase {
     /**
      * Returns a subscription to mock content representing tv shows.
      *
-     * @param context used for accessing shared preferences.
+     * @param context used for accessing the database.
      * @return a subscription with tv show data.
      */
     public static Subscription getSeriadosSubscription(Context context) {
@@ -57,174 +70,254 @@ public final class MockDatabase {
 
     @Nullable
     private static Subscription findSubscriptionByTitle(Context context, String title) {
-        for (Subscription subscription : getSubscriptions(context)) {
-            if (subscription.getName().equals(title)) {
-                return subscription;
-            }
-        }
-        return null;
+        return findSubscriptionByName(context, title);
     }
 
     /**
-     * Overrides the subscriptions stored in {@link SharedPreferences}.
+     * Overrides the subscriptions stored in the database.
      *
-     * @param context used for accessing shared preferences.
-     * @param subscriptions stored in shared preferences.
+     * @param context used for accessing the database.
+     * @param subscriptions stored in the database.
      */
     public static void saveSubscriptions(Context context, List<Subscription> subscriptions) {
-        SharedPreferencesHelper.storeSubscriptions(context, subscriptions);
+        synchronized (sLock) {
+            DatabaseHelper.storeSubscriptions(context, subscriptions);
+            DatabaseCache.putSubscriptions(subscriptions);
+        }
     }
 
     /**
-     * Adds the subscription to the list of persisted subscriptions in {@link SharedPreferences}.
-     * Will update the persisted subscription if it already exists.
+     * Adds the subscription to the persisted subscriptions. Will update the persisted subscription
+     * if it already exists.
      *
-     * @param context used for accessing shared preferences.
+     * @param context used for accessing the database.
      * @param subscription to be saved.
      */
     public static void saveSubscription(Context context, Subscription subscription) {
-        List<Subscription> subscriptions = getSubscriptions(context);
-        int index = findSubscription(subscriptions, subscription);
-        if (index == -1) {
-            subscriptions.add(subscription);
-        } else {
-            subscriptions.set(index, subscription);
-        }
-        saveSubscriptions(context, subscriptions);
-    }
-
-    private static int findSubscription(
-            List<Subscription> subscriptions, Subscription subscription) {
-        for (int index = 0; index < subscriptions.size(); ++index) {
-            Subscription current = subscriptions.get(index);
-            if (current.getName().equals(subscription.getName())) {
-                return index;
-            }
+        synchronized (sLock) {
+            DatabaseHelper.storeSubscription(context, subscription);
+            DatabaseCache.putSubscription(subscription);
         }
-        return -1;
     }
 
     /**
-     * Returns subscriptions stored in {@link SharedPreferences}.
+     * Returns subscriptions stored in the database.
      *
-     * @param context used for accessing shared preferences.
+     * @param context used for accessing the database.
      * @return a list of subscriptions or empty list if none exist.
      */
     public static List<Subscription> getSubscriptions(Context context) {
-        return SharedPreferencesHelper.readSubscriptions(context);
+        List<Subscription> subscriptions = DatabaseCache.getSubscriptions();
+        if (subscriptions != null) {
+            return subscriptions;
+        }
+        synchronized (sLock) {
+            subscriptions = DatabaseHelper.readSubscriptions(context);
+            DatabaseCache.putSubscriptions(subscriptions);
+            return subscriptions;
+        }
     }
 
     /**
      * Finds a subscription given a channel id that the subscription is associated with.
      *
-     * @param context used for accessing shared preferences.
+     * @param context used for accessing the database.
      * @param channelId of the channel that the subscription is associated with.
      * @return a subscription or null if none exist.
      */
     @Nullable
     public static Subscription findSubscriptionByChannelId(Context context, long channelId) {
-        for (Subscription subscription : getSubscriptions(context)) {
-            if (subscription.getChannelId() == channelId) {
-                return subscription;
-            }
+        Subscription subscription = DatabaseCache.findSubscriptionByChannelId(channelId);
+        if (subscription != null || DatabaseCache.hasSubscriptions()) {
+            return subscription;
         }
-        return null;
+        return DatabaseHelper.readSubscriptionByChannelId(context, channelId);
     }
 
     /**
      * Finds a subscription with the given name.
      *
-     * @param context used for accessing shared preferences.
+     * @param context used for accessing the database.
      * @param name of the subscription.
      * @return a subscription or null if none exist.
      */
     @Nullable
     public static Subscription findSubscriptionByName(Context context, String name) {
-        for (Subscription subscription : getSubscriptions(context)) {
-            if (subscription.getName().equals(name)) {
-                return subscription;
-            }
+        Subscription subscription = DatabaseCache.findSubscriptionByName(name);
+        if (subscription != null || DatabaseCache.hasSubscriptions()) {
+            return subscription;
         }
-        return null;
+        return DatabaseHelper.readSubscriptionByName(context, name);
     }
 
     /**
-     * Overrides the movies stored in {@link SharedPreferences} for a given subscription.
+     * Overrides the movies stored in the database for a given subscription.
      *
-     * @param context used for accessing shared preferences.
+     * @param context used for accessing the database.
      * @param channelId of the channel that the movies are associated with.
      * @param movies to be stored.
      */
     public static void saveMovies(Context context, long channelId, List<Movie> movies) {
-        SharedPreferencesHelper.storeMovies(context, channelId, movies);
+        synchronized (sLock) {
+            DatabaseHelper.storeMovies(context, channelId, movies);
+            DatabaseCache.putMovies(channelId, movies);
+        }
     }
 
     /**
-     * Removes the list of movies associated with a channel. Overrides the current list with an
-     * empty list in {@link SharedPreferences}.
+     * Removes the list of movies associated with a channel.
      *
-     * @param context used for accessing shared preferences.
+     * @param context used for accessing the database.
      * @param channelId of the channel that the movies are associated with.
      */
     public static void removeMovies(Context context, long channelId) {
-        saveMovies(context, channelId, Collections.<Movie>emptyList());
+        synchronized (sLock) {
+            DatabaseHelper.deleteMovies(context, channelId);
+            DatabaseCache.putMovies(channelId, Collections.<Movie>emptyList());
+        }
     }
 
     /**
      * Finds movie in subscriptions with channel id and updates it. Otherwise will add the new movie
      * to the subscription.
      *
-     * @param context to access shared preferences.
+     * @param context to access the database.
      * @param channelId of the subscription that the movie is associated with.
      * @param movie to be persisted or updated.
      */
     public static void saveMovie(Context context, long channelId, Movie movie) {
-        List<Movie> movies = getMovies(context, channelId);
-        int index = findMovie(movies, movie);
-        if (index == -1) {
-            movies.add(movie);
-        } else {
-            movies.set(index, movie);
+        synchronized (sLock) {
+            DatabaseHelper.storeMovie(context, channelId, movie);
+            DatabaseCache.putMovie(channelId, movie);
         }
-        saveMovies(context, channelId, movies);
     }
 
-    private static int findMovie(List<Movie> movies, Movie movie) {
-        for (int index = 0; index < movies.size(); ++index) {
-            Movie current = movies.get(index);
-            if (current.getId() == movie.getId()) {
-                return index;
-            }
+    /**
+     * Removes a single movie from the subscription with channel id.
+     *
+     * @param context to access the database.
+     * @param channelId of the subscription that the movie is associated with.
+     * @param movieId of the movie to be removed.
+     */
+    public static void removeMovie(Context context, long channelId, long movieId) {
+        synchronized (sLock) {
+            DatabaseHelper.deleteMovie(context, channelId, movieId);
+            DatabaseCache.removeMovie(channelId, movieId);
         }
-        return -1;
     }
 
     /**
-     * Returns movies stored in {@link SharedPreferences} for a given subscription.
+     * Saves and removes some movies of a subscription at once, leaving its other movies as they
+     * are.
      *
-     * @param context used for accessing shared preferences.
+     * @param context to access the database.
+     * @param channelId of the subscription that the movies are associated with.
+     * @param saved movies to be persisted or updated.
+     * @param removed movies to be removed.
+     */
+    public static void saveMovieChanges(
+            Context context, long channelId, List<Movie> saved, List<Movie> removed) {
+        synchronized (sLock) {
+            DatabaseHelper.storeMovieChanges(context, channelId, saved, removed);
+            DatabaseCache.putMovieChanges(channelId, saved, removed);
+        }
+    }
+
+    /**
+     * Returns movies stored in the database for a given subscription.
+     *
+     * @param context used for accessing the database.
      * @param channelId of the subscription that the movie is associated with.
      * @return a list of movies for a subscription
      */
     public static List<Movie> getMovies(Context context, long channelId) {
-        return SharedPreferencesHelper.readMovies(context, channelId);
+        List<Movie> movies = DatabaseCache.getMovies(channelId);
+        if (movies != null) {
+            return movies;
+        }
+        synchronized (sLock) {
+            movies = DatabaseHelper.readMovies(context, channelId);
+            DatabaseCache.putMovies(channelId, movies);
+            return movies;
+        }
+    }
+
+    /**
+     * Returns the program ids of the movies of a subscription, keyed by movie id. Movie ids are
+     * stable across fetches of the catalog, so this can be used to match fetched movies with the
+     * programs already published for them.
+     *
+     * @param context used for accessing the database.
+     * @param channelId of the subscription that the movies are associated with.
+     * @return a map from movie id to program id.
+     */
+    public static LongLongMap getProgramIds(Context context, long channelId) {
+        LongLongMap programIds = DatabaseCache.getProgramIds(channelId);
+        if (programIds != null) {
+            return programIds;
+        }
+        // Fills the cache.
+        getMovies(context, channelId);
+        programIds = DatabaseCache.getProgramIds(channelId);
+        return programIds != null ? programIds : new LongLongMap();
     }
 
     /**
      * Finds a movie in a subscription by its id.
      *
-     * @param context to access shared preferences.
+     * @param context to access the database.
      * @param channelId of the subscription that the movie is associated with.
      * @param movieId of the movie.
      * @return a movie or null if none exist.
      */
     @Nullable
     public static Movie findMovieById(Context context, long channelId, long movieId) {
-        for (Movie movie : getMovies(context, channelId)) {
-            if (movie.getId() == movieId) {
-                return movie;
-            }
+        Movie movie = DatabaseCache.findMovieById(channelId, movieId);
+        if (movie != null) {
+            return movie;
         }
-        return null;
+        return DatabaseHelper.readMovie(context, channelId, movieId);
+    }
+
+    /**
+     * Returns the movies published in the Watch Next row, with their Watch Next ids.
+     *
+     * @param context used for accessing the database.
+     * @return a list of movies.
+     */
+    public static List<Movie> getWatchNextMovies(Context context) {
+        return getMovies(context, WATCH_NEXT_ID);
+    }
+
+    /**
+     * Stores the movies published in the Watch Next row, replacing the previous ones.
+     *
+     * @param context used for accessing the database.
+     * @param movies to be stored, with their Watch Next ids.
+     */
+    public static void saveWatchNextMovies(Context context, List<Movie> movies) {
+        saveMovies(context, WATCH_NEXT_ID, movies);
+    }
+
+    /**
+     * Saves and removes some movies of the Watch Next row at once, leaving its other movies as
+     * they are.
+     *
+     * @param context used for accessing the database.
+     * @param saved movies to be persisted or updated, with their Watch Next ids.
+     * @param removed movies to be removed.
+     */
+    public static void saveWatchNextChanges(
+            Context context, List<Movie> saved, List<Movie> removed) {
+        saveMovieChanges(context, WATCH_NEXT_ID, saved, removed);
+    }
+
+    /**
+     * Returns how often reads were answered from memory instead of the database.
+     *
+     * @return a summary of the cache hits, misses and evictions.
+     */
+    public static String getCacheStats() {
+        return DatabaseCache.getStats();
     }
 }
@@ -13,40 +13,60 @@
  */
 package com.example.android.tv.recommendations.model;
 
-import android.app.ProgressDialog;
 import android.content.Context;
 import android.os.AsyncTask;
 import android.util.Log;
-
 import com.example.android.tv.recommendations.R;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
-
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
+import com.example.android.tv.recommendations.util.SyncMetrics;
+import java.io.File;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Mocks gathering movies from an external source.
  */
 public final class MockMovieService {
 
-    private static List<Movie> list;
-    private static long count = 0;
+    private static final String TAG = "MockMovieService";
+
+    private static final String DEFAULT_CATALOG_URL =
+            "https://api.themoviedb.org/3/trending/all/day?api_key=3eac9721452d5839bfc882cc266d5f8a&language=pt-BR&include_image_language=pt";
+    private static final int DEFAULT_PAGE_COUNT = 1;
+    private static final int MAX_CONCURRENT_PAGES = 4;
+    private static final long DEFAULT_CACHE_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final long DEFAULT_SNAPSHOT_MAX_AGE_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    private static final ThreadPoolExecutor sPageExecutor =
+            new ThreadPoolExecutor(
+                    MAX_CONCURRENT_PAGES,
+                    MAX_CONCURRENT_PAGES,
+                    30L,
+                    TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>());
+
+    static {
+        sPageExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    private static volatile String sCatalogUrl = DEFAULT_CATALOG_URL;
+    private static volatile int sPageCount = DEFAULT_PAGE_COUNT;
+    private static volatile long sCacheTtlMillis = DEFAULT_CACHE_TTL_MILLIS;
+    private static volatile long sSnapshotMaxAgeMillis = DEFAULT_SNAPSHOT_MAX_AGE_MILLIS;
+    private static volatile CatalogFetcher sFetcher;
+
+    private static final AtomicReference<CatalogSnapshot> sSnapshot =
+            new AtomicReference<>(CatalogSnapshot.EMPTY);
+    /** The refresh in flight, if any. Callers join it instead of starting another one. */
+    private static final AtomicReference<FutureTask<CatalogSnapshot>> sRefresh =
+            new AtomicReference<>();
 
     /**
      * Creates a list of subscriptions that every users should have.
@@ -67,114 +87,199 @@ public final class MockMovieService {
     }
 
     /**
-     * Creates and caches a list of movies.
+     * Sets the url of the catalog. The page number is appended as a {@code page} query parameter,
+     * so the url should already have a query. Useful to point the service to a local server.
      *
-     * @return a list of movies.
+     * @param catalogUrl of the first page of the catalog, without the page parameter.
+     */
+    public static void setCatalogUrl(String catalogUrl) {
+        sCatalogUrl = catalogUrl;
+    }
+
+    /**
+     * Sets how many pages of the catalog are fetched. Pages are fetched concurrently, by at most
+     * {@value #MAX_CONCURRENT_PAGES} at a time.
+     *
+     * @param pageCount the number of pages, each one holding up to 20 movies.
+     */
+    public static void setPageCount(int pageCount) {
+        sPageCount = Math.max(1, pageCount);
+    }
+
+    /** Returns how many pages of the catalog are fetched by a refresh. */
+    public static int getPageCount() {
+        return sPageCount;
+    }
+
+    /**
+     * Sets how long a fetched page is used without asking the server whether it has changed. Once
+     * expired, the page is revalidated with a conditional request.
+     *
+     * @param ttlMillis the time to live of a page, 0 to always revalidate.
+     */
+    public static void setCacheTtl(long ttlMillis) {
+        sCacheTtlMillis = ttlMillis;
+    }
+
+    /**
+     * Sets how old the published catalog can get before a read triggers a refresh in the
+     * background.
+     *
+     * @param maxAgeMillis the maximum age of the catalog.
+     */
+    public static void setSnapshotMaxAge(long maxAgeMillis) {
+        sSnapshotMaxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Cancels the pages that are being fetched. The fetch that they belong to returns an empty
+     * list.
      */
-    public static List<Movie> getList() {
-        if (list == null || list.isEmpty()) {
-            list = createMovieList();
+    public static void cancelFetches() {
+        CatalogFetcher fetcher = sFetcher;
+        if (fetcher != null) {
+            fetcher.cancel();
         }
-        return list;
     }
 
     /**
-     * Shuffles the list of movies to make the returned list appear to be a different list from
-     * {@link #getList()}.
+     * Returns the published catalog without waiting for the network, unless no catalog has been
+     * published yet. If the catalog is older than its maximum age, a refresh is started in the
+     * background; at most one refresh runs at a time.
      *
-     * @return a list of movies in random order.
+     * @param context used for accessing the response cache.
+     * @return the current catalog, empty if it could not be fetched.
      */
-    public static List<Movie> getFreshList() {
-        List<Movie> shuffledMovies = new ArrayList<>(getList());
-        Collections.shuffle(shuffledMovies);
-        return shuffledMovies;
+    public static CatalogSnapshot getSnapshot(Context context) {
+        CatalogSnapshot snapshot = sSnapshot.get();
+        if (snapshot.isEmpty()) {
+            return refresh(context);
+        }
+        if (System.currentTimeMillis() - snapshot.getTimestampMillis() > sSnapshotMaxAgeMillis) {
+            startRefresh(context);
+        }
+        return snapshot;
     }
 
-    private static List<Movie> createMovieList() {
-        List<Movie> list = new ArrayList<>();
+    /**
+     * Returns the published catalog, without fetching it or refreshing it.
+     *
+     * @return the current catalog, empty if none has been published yet.
+     */
+    public static CatalogSnapshot getPublishedSnapshot() {
+        return sSnapshot.get();
+    }
 
+    /**
+     * Refreshes the catalog and waits for the result. Joins the refresh in flight if there is one.
+     *
+     * @param context used for accessing the response cache.
+     * @return the catalog after the refresh, or the previous one if the refresh failed.
+     */
+    public static CatalogSnapshot refresh(Context context) {
+        FutureTask<CatalogSnapshot> refresh = startRefresh(context);
         try {
-            String resultado = findJSONFromUrl("https://api.themoviedb.org/3/trending/all/day?api_key=3eac9721452d5839bfc882cc266d5f8a&language=pt-BR&include_image_language=pt");
+            return refresh.get();
+        } catch (ExecutionException | CancellationException e) {
+            Log.e(TAG, "Could not refresh catalog.", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return sSnapshot.get();
+    }
 
-            JSONObject items = new JSONObject(resultado);
-            Iterator x = items.keys();
-            JSONArray jsonArray = new JSONArray();
+    /**
+     * Returns the movies of the current catalog, see {@link #getSnapshot(Context)}.
+     *
+     * @param context used for accessing the response cache.
+     * @return a list of movies that the caller is free to modify.
+     */
+    public static List<Movie> getList(Context context) {
+        return getSnapshot(context).copyMovies();
+    }
 
-            while (x.hasNext()) {
-                String key = (String) x.next();
-                if (key.equals("results")) {
-                    jsonArray.put(items.get(key));
-                }
+    private static FutureTask<CatalogSnapshot> startRefresh(Context context) {
+        final CatalogFetcher fetcher = getFetcher(context);
+        while (true) {
+            FutureTask<CatalogSnapshot> current = sRefresh.get();
+            if (current != null) {
+                return current;
             }
-
-            for (int i = 0; i < jsonArray.length(); i++) {
-                JSONArray a = jsonArray.getJSONArray(i);
-                for (int j = 0; j < a.length(); j++) {
-                    JSONObject result = a.getJSONObject(j);
-
-                    list.add(buildMovieInfo("category",
-                            result.getString("original_title"),
-                            result.getString("overview"),
-                            "https://image.tmdb.org/t/p/w500" + result.getString("poster_path"),
-                            "https://image.tmdb.org/t/p/w500" + result.getString("poster_path")));
-                }
+            final FutureTask<CatalogSnapshot> refresh =
+                    new FutureTask<>(
+                            new Callable<CatalogSnapshot>() {
+                                @Override
+                                public CatalogSnapshot call() {
+                                    List<Movie> movies;
+                                    long start =
+                                            SyncMetrics.beginSection(SyncMetrics.FETCH_CATALOG);
+                                    try {
+                                        movies =
+                                                fetcher.fetch(
+                                                        sCatalogUrl, sPageCount, sCacheTtlMillis);
+                                    } finally {
+                                        SyncMetrics.endSection(SyncMetrics.FETCH_CATALOG, start);
+                                    }
+                                    return publish(movies);
+                                }
+                            });
+            if (sRefresh.compareAndSet(null, refresh)) {
+                AsyncTask.THREAD_POOL_EXECUTOR.execute(
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                refresh.run();
+                                sRefresh.compareAndSet(refresh, null);
+                            }
+                        });
+                return refresh;
             }
-
-        } catch (Exception e) {
-            e.printStackTrace();
         }
-
-        return list;
     }
 
-    private static Movie buildMovieInfo(
-            String category,
-            String title,
-            String description,
-            String cardImageUrl,
-            String backgroundImageUrl) {
-        Movie movie = new Movie();
-        movie.setId(count);
-        incCount();
-        movie.setTitle(title);
-        movie.setDescription(description);
-        movie.setCategory(category);
-        movie.setCardImageUrl(cardImageUrl);
-        movie.setBackgroundImageUrl(backgroundImageUrl);
-        return movie;
+    /*
+     * Publishes a new snapshot, unless the fetch came back empty, in which case the previous
+     * snapshot stays in place.
+     */
+    private static CatalogSnapshot publish(List<Movie> movies) {
+        if (movies.isEmpty()) {
+            return sSnapshot.get();
+        }
+        // Refreshes are serialized, the version can be derived from the previous snapshot.
+        CatalogSnapshot snapshot =
+                new CatalogSnapshot(
+                        sSnapshot.get().getVersion() + 1, System.currentTimeMillis(), movies);
+        sSnapshot.set(snapshot);
+        Log.d(TAG, "Published " + snapshot);
+        return snapshot;
     }
 
-    private static void incCount() {
-        count++;
+    private static synchronized CatalogFetcher getFetcher(Context context) {
+        if (sFetcher == null) {
+            sFetcher =
+                    new CatalogFetcher(
+                            new File(context.getApplicationContext().getCacheDir(), "catalog"),
+                            sPageExecutor,
+                            new FetchLogger());
+        }
+        return sFetcher;
     }
 
-    private static String findJSONFromUrl(String url) {
-        String result = "";
-        try {
-            URL urls = new URL(url);
-            HttpURLConnection conn = (HttpURLConnection) urls.openConnection();
-            conn.setReadTimeout(15000); //milliseconds
-            conn.setConnectTimeout(1500); // milliseconds
-            conn.setRequestMethod("GET");
-            conn.connect();
-
-            if (conn.getResponseCode() == HttpURLConnection.HTTP_OK) {
-                BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8), 8);
-                StringBuilder sb = new StringBuilder();
-                String line = null;
-                while ((line = reader.readLine()) != null) {
-                    sb.append(line).append("\n");
-                }
-                result = sb.toString();
+    /* Logs the problems met by the fetches of the catalog. */
+    private static final class FetchLogger implements CatalogFetcher.Listener {
+
+        @Override
+        public void onPageFailed(String url, Throwable error, boolean cached) {
+            if (cached) {
+                Log.w(TAG, "Could not fetch " + url + ", using its cache", error);
             } else {
-                return "error";
+                Log.e(TAG, "Refresh failed, could not fetch " + url, error);
             }
-        } catch (Exception e) {
-            return "error";
         }
 
-        return result;
+        @Override
+        public void onItemsSkipped(String url, int count) {
+            Log.w(TAG, "Skipped " + count + " items without title or poster.");
+        }
     }
-
 }
-
@@ -30,12 +30,39 @@ public class Movie implements Serializable {
     private String bgImageUrl;
     private String cardImageUrl;
     private String category;
+    // Id and media type ("movie" or "tv") of the item in TMDB.
+    private long tmdbId;
+    private String mediaType;
     // Program id / Watch Next id returned from the TV Provider.
     private long programId;
     private long watchNextId;
+    // Fingerprint of the content of the program published for the movie, 0 if unknown.
+    private long programFingerprint;
+    // Watch state, shown in the Watch Next row. 0 if the movie has not been watched.
+    private long lastPlaybackPositionMillis;
+    private long durationMillis;
+    private long lastEngagementTimeMillis;
 
     public Movie() {}
 
+    /** Creates a copy of the given movie. */
+    public Movie(Movie other) {
+        this.id = other.id;
+        this.title = other.title;
+        this.description = other.description;
+        this.bgImageUrl = other.bgImageUrl;
+        this.cardImageUrl = other.cardImageUrl;
+        this.category = other.category;
+        this.tmdbId = other.tmdbId;
+        this.mediaType = other.mediaType;
+        this.programId = other.programId;
+        this.watchNextId = other.watchNextId;
+        this.programFingerprint = other.programFingerprint;
+        this.lastPlaybackPositionMillis = other.lastPlaybackPositionMillis;
+        this.durationMillis = other.durationMillis;
+        this.lastEngagementTimeMillis = other.lastEngagementTimeMillis;
+    }
+
     public long getProgramId() {
         return programId;
     }
@@ -44,6 +71,38 @@ public class Movie implements Serializable {
         this.programId = programId;
     }
 
+    public long getProgramFingerprint() {
+        return programFingerprint;
+    }
+
+    public void setProgramFingerprint(long programFingerprint) {
+        this.programFingerprint = programFingerprint;
+    }
+
+    public long getLastPlaybackPositionMillis() {
+        return lastPlaybackPositionMillis;
+    }
+
+    public void setLastPlaybackPositionMillis(long lastPlaybackPositionMillis) {
+        this.lastPlaybackPositionMillis = lastPlaybackPositionMillis;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public void setDurationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+
+    public long getLastEngagementTimeMillis() {
+        return lastEngagementTimeMillis;
+    }
+
+    public void setLastEngagementTimeMillis(long lastEngagementTimeMillis) {
+        this.lastEngagementTimeMillis = lastEngagementTimeMillis;
+    }
+
     public long getWatchNextId() {
         return watchNextId;
     }
@@ -100,6 +159,22 @@ public class Movie implements Serializable {
         this.category = category;
     }
 
+    public long getTmdbId() {
+        return tmdbId;
+    }
+
+    public void setTmdbId(long tmdbId) {
+        this.tmdbId = tmdbId;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    public void setMediaType(String mediaType) {
+        this.mediaType = mediaType;
+    }
+
     @Override
     public String toString() {
         return "Movie{"
@@ -108,9 +183,16 @@ public class Movie implements Serializable {
                 + ", programId='"
                 + programId
                 + '\''
+                + ", tmdbId="
+                + tmdbId
+                + ", mediaType='"
+                + mediaType
+                + '\''
                 + ", watchNextId='"
                 + watchNextId
                 + '\''
+                + ", lastPlaybackPositionMillis="
+                + lastPlaybackPositionMillis
                 + ", title='"
                 + title
                 + '\''
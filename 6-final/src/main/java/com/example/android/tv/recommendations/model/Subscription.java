@@ -30,6 +30,16 @@ public class Subscription {
 
     }
 
+    /**
+     * Creates a copy of the given subscription.
+     */
+    public Subscription(Subscription other) {
+        this.channelId = other.channelId;
+        this.name = other.name;
+        this.description = other.description;
+        this.channelLogo = other.channelLogo;
+    }
+
     private Subscription(String name, String description, int channelLogo) {
         this.name = name;
         this.description = description;
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.android.tv.recommendations.model;
+
+import com.example.android.tv.recommendations.util.Fnv1a;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Streams the {@code results} of a TMDB list response into {@link Movie}s.
+ *
+ * <p>Items are read and handed to a {@link Listener} one at a time, so memory use does not grow
+ * with the size of the response. Fields that are not needed are skipped without being parsed. An
+ * item without a usable title or poster is skipped instead of failing the whole response; TV
+ * results, which have {@code name} instead of {@code title}, are supported.
+ *
+ * <p>The id of each movie is derived from its TMDB id and media type, see {@link
+ * #createMovieId(String, long, String)}, so the same item gets the same id on every fetch.
+ */
+public final class TmdbCatalogParser {
+
+    public static final String IMAGE_BASE_URL = "https://image.tmdb.org/t/p/w500";
+
+    /** Receives the movies as they are parsed. */
+    public interface Listener {
+
+        /**
+         * Called for each item of the response that could be converted into a movie.
+         *
+         * @param movie parsed from the item.
+         */
+        void onMovie(Movie movie);
+    }
+
+    private static final long MEDIA_TYPE_MOVIE = 1L;
+    private static final long MEDIA_TYPE_TV = 2L;
+    private static final long MEDIA_TYPE_OTHER = 3L;
+    private static final long MEDIA_TYPE_UNKNOWN = 0x7FL;
+    private static final long TMDB_ID_MASK = 0x00FFFFFFFFFFFFFFL;
+
+    private TmdbCatalogParser() {
+        // Do nothing.
+    }
+
+    /**
+     * Derives a stable movie id from a TMDB item. Movies and tv shows have separate id spaces in
+     * TMDB, so the media type is kept in the top byte of the id and the TMDB id in the rest. An
+     * item without a TMDB id gets an id hashed from its content instead.
+     *
+     * @param mediaType of the item, "movie" or "tv".
+     * @param tmdbId of the item, 0 if unknown.
+     * @param content identifying the item when it has no TMDB id, such as its title.
+     * @return a positive id that is the same every time the item is fetched.
+     */
+    public static long createMovieId(String mediaType, long tmdbId, String content) {
+        if (tmdbId <= 0L) {
+            return (MEDIA_TYPE_UNKNOWN << 56)
+                    | (Fnv1a.mix(Fnv1a.OFFSET_BASIS, content) & TMDB_ID_MASK);
+        }
+        long type;
+        if ("movie".equals(mediaType)) {
+            type = MEDIA_TYPE_MOVIE;
+        } else if ("tv".equals(mediaType)) {
+            type = MEDIA_TYPE_TV;
+        } else {
+            type = MEDIA_TYPE_OTHER;
+        }
+        return (type << 56) | (tmdbId & TMDB_ID_MASK);
+    }
+
+    /**
+     * Parses a TMDB list response.
+     *
+     * @param in the response body.
+     * @param listener notified of every movie, in the order of the response.
+     * @return the number of items that were skipped because they could not be used.
+     * @throws IOException if the response cannot be read or is not a JSON object.
+     */
+    public static int parse(Reader in, Listener listener) throws IOException {
+        int skipped = 0;
+        JsonReader reader = new JsonReader(in);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!reader.nextName().equals("results") || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                Movie movie = readItem(reader);
+                if (movie != null) {
+                    listener.onMovie(movie);
+                } else {
+                    skipped++;
+                }
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+        return skipped;
+    }
+
+    private static Movie readItem(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+
+        String originalTitle = null;
+        String title = null;
+        String originalName = null;
+        String name = null;
+        String overview = null;
+        String posterPath = null;
+        long tmdbId = 0L;
+        String mediaType = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    tmdbId = nextLong(reader);
+                    break;
+                case "media_type":
+                    mediaType = nextString(reader);
+                    break;
+                case "original_title":
+                    originalTitle = nextString(reader);
+                    break;
+                case "title":
+                    title = nextString(reader);
+                    break;
+                case "original_name":
+                    originalName = nextString(reader);
+                    break;
+                case "name":
+                    name = nextString(reader);
+                    break;
+                case "overview":
+                    overview = nextString(reader);
+                    break;
+                case "poster_path":
+                    posterPath = nextString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        String movieTitle = firstNonEmpty(originalTitle, title, originalName, name);
+        if (movieTitle == null || posterPath == null || posterPath.isEmpty()) {
+            return null;
+        }
+
+        String imageUrl = IMAGE_BASE_URL + posterPath;
+        Movie movie = new Movie();
+        movie.setId(createMovieId(mediaType, tmdbId, movieTitle + '\n' + posterPath));
+        movie.setTmdbId(tmdbId);
+        movie.setMediaType(mediaType);
+        movie.setTitle(movieTitle);
+        movie.setDescription(overview != null ? overview : "");
+        movie.setCategory("category");
+        movie.setCardImageUrl(imageUrl);
+        movie.setBackgroundImageUrl(imageUrl);
+        return movie;
+    }
+
+    /* Reads a string value, or returns null for any other kind of value. */
+    private static String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.STRING) {
+            reader.skipValue();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    /* Reads a whole number, or returns 0 for any other kind of value. */
+    private static long nextLong(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.NUMBER) {
+            reader.skipValue();
+            return 0L;
+        }
+        try {
+            return reader.nextLong();
+        } catch (NumberFormatException e) {
+            // Not a whole number, the value is still pending.
+            reader.skipValue();
+            return 0L;
+        }
+    }
+
+    private static String firstNonEmpty(String... values) {
+        for (String value : values) {
+            if (value != null && !value.isEmpty()) {
+                return value;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2017 Google Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.example.android.tv.recommendations.util;
+
+import com.example.android.tv.recommendations.model.Movie;
+import com.example.android.tv.recommendations.model.Subscription;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Compact, reflection free {@link RecordCodec}s for {@link Movie} and {@link Subscription}.
+ *
+ * <p>A record starts with a header byte holding the format version, followed by the fields in a
+ * fixed order. Numbers are written as zig-zag variable length integers and strings as a variable
+ * length byte count followed by their UTF-8 bytes. Image urls are written as the index of a known
+ * prefix followed by the rest of the url, and the background image of a movie is written as a
+ * single byte when it is the same as its card image.
+ *
+ * <p>The header byte always has its high bit set, so a record can never be mistaken for the JSON
+ * written by {@link GsonRecordCodec}.
+ *
+ * @param <T> the type of the items.
+ */
+public abstract class BinaryRecordCodec<T> implements RecordCodec<T> {
+
+    public static final RecordCodec<Movie> MOVIE =
+            new BinaryRecordCodec<Movie>() {
+                @Override
+                void write(Writer writer, Movie movie) {
+                    writer.writeLong(movie.getId());
+                    writer.writeLong(movie.getProgramId());
+                    writer.writeLong(movie.getWatchNextId());
+                    writer.writeString(movie.getTitle());
+                    writer.writeString(movie.getDescription());
+                    writer.writeString(movie.getCategory());
+                    writer.writeUrl(movie.getCardImageUrl());
+                    if (movie.getBackgroundImageUrl() != null
+                            && movie.getBackgroundImageUrl().equals(movie.getCardImageUrl())) {
+                        writer.writeByte(SAME_AS_PREVIOUS_URL);
+                    } else {
+                        writer.writeUrl(movie.getBackgroundImageUrl());
+                    }
+                    writer.writeLong(movie.getTmdbId());
+                    writer.writeString(movie.getMediaType());
+                    writer.writeLong(movie.getProgramFingerprint());
+                    writer.writeLong(movie.getLastPlaybackPositionMillis());
+                    writer.writeLong(movie.getDurationMillis());
+                    writer.writeLong(movie.getLastEngagementTimeMillis());
+                }
+
+                @Override
+                Movie read(Reader reader, int version) {
+                    Movie movie = new Movie();
+                    movie.setId(reader.readLong());
+                    movie.setProgramId(reader.readLong());
+                    movie.setWatchNextId(reader.readLong());
+                    movie.setTitle(reader.readString());
+                    movie.setDescription(reader.readString());
+                    movie.setCategory(reader.readString());
+                    String cardImageUrl = reader.readUrl(null);
+                    movie.setCardImageUrl(cardImageUrl);
+                    movie.setBackgroundImageUrl(reader.readUrl(cardImageUrl));
+                    if (version >= 2) {
+                        movie.setTmdbId(reader.readLong());
+                        movie.setMediaType(reader.readString());
+                    }
+                    if (version >= 3) {
+                        movie.setProgramFingerprint(reader.readLong());
+                    }
+                    if (version >= 4) {
+                        movie.setLastPlaybackPositionMillis(reader.readLong());
+                        movie.setDurationMillis(reader.readLong());
+                        movie.setLastEngagementTimeMillis(reader.readLong());
+                    }
+                    return movie;
+                }
+            };
+
+    public static final RecordCodec<Subscription> SUBSCRIPTION =
+            new BinaryRecordCodec<Subscription>() {
+                @Override
+                void write(Writer writer, Subscription subscription) {
+                    writer.writeLong(subscription.getChannelId());
+                    writer.writeString(subscription.getName());
+                    writer.writeString(subscription.getDescription());
+                    writer.writeLong(subscription.getChannelLogo());
+                }
+
+                @Override
+                Subscription read(Reader reader, int version) {
+                    Subscription subscription = new Subscription();
+                    subscription.setChannelId(reader.readLong());
+                    subscription.setName(reader.readString());
+                    subscription.setDescription(reader.readString());
+                    subscription.setChannelLogo((int) reader.readLong());
+                    return subscription;
+                }
+            };
+
+    /*
+     * Version 1: initial format.
+     * Version 2: adds the TMDB id and media type of movies.
+     * Version 3: adds the program fingerprint of movies.
+     * Version 4: adds the watch state of movies.
+     */
+    private static final int VERSION = 4;
+    private static final int HEADER_FLAG = 0x80;
+
+    private static final int NULL_URL = 0xFF;
+    private static final int SAME_AS_PREVIOUS_URL = 0xFE;
+
+    /**
+     * Known url prefixes, most specific first. The index in this array is written instead of the
+     * prefix, so entries may only be appended.
+     */
+    private static final String[] URL_PREFIXES = {
+        "",
+        "https://image.tmdb.org/t/p/w500/",
+        "https://image.tmdb.org/t/p/",
+        "https://",
+        "http://",
+    };
+
+    private static final byte[][] URL_PREFIX_BYTES = new byte[URL_PREFIXES.length][];
+
+    static {
+        for (int index = 0; index < URL_PREFIXES.length; ++index) {
+            URL_PREFIX_BYTES[index] = URL_PREFIXES[index].getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    BinaryRecordCodec() {}
+
+    /**
+     * Returns true if the data was written by one of these codecs.
+     *
+     * @param data read from the database.
+     */
+    public static boolean isBinary(byte[] data) {
+        return data.length > 0 && (data[0] & HEADER_FLAG) != 0;
+    }
+
+    abstract void write(Writer writer, T item);
+
+    /**
+     * Reads the fields of an item.
+     *
+     * @param reader positioned after the header byte.
+     * @param version of the format the item was written with, at most {@link #VERSION}.
+     */
+    abstract T read(Reader reader, int version);
+
+    @Override
+    public final byte[] encode(T item) {
+        Writer writer = new Writer();
+        writer.writeByte(HEADER_FLAG | VERSION);
+        write(writer, item);
+        return writer.toByteArray();
+    }
+
+    @Override
+    public final T decode(byte[] data) {
+        int version = data.length > 0 ? data[0] & ~HEADER_FLAG & 0xFF : 0;
+        if (!isBinary(data) || version < 1 || version > VERSION) {
+            throw new IllegalArgumentException(
+                    "Unsupported record header: " + (data.length == 0 ? "none" : data[0]));
+        }
+        Reader reader = new Reader(data);
+        try {
+            return read(reader, version);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated record.", e);
+        }
+    }
+
+    static final class Writer {
+
+        private byte[] mBuffer = new byte[256];
+        private int mPosition;
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            mBuffer[mPosition++] = (byte) value;
+        }
+
+        void writeLong(long value) {
+            ensureCapacity(10);
+            long zigZag = (value << 1) ^ (value >> 63);
+            while ((zigZag & ~0x7FL) != 0) {
+                mBuffer[mPosition++] = (byte) ((zigZag & 0x7F) | 0x80);
+                zigZag >>>= 7;
+            }
+            mBuffer[mPosition++] = (byte) zigZag;
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeLong(-1L);
+                return;
+            }
+            writeBytes(value.getBytes(StandardCharsets.UTF_8), 0);
+        }
+
+        void writeUrl(String url) {
+            if (url == null) {
+                writeByte(NULL_URL);
+                return;
+            }
+            byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+            int prefix = 0;
+            for (int index = 1; index < URL_PREFIX_BYTES.length; ++index) {
+                if (startsWith(bytes, URL_PREFIX_BYTES[index])) {
+                    prefix = index;
+                    break;
+                }
+            }
+            writeByte(prefix);
+            writeBytes(bytes, URL_PREFIX_BYTES[prefix].length);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(mBuffer, mPosition);
+        }
+
+        private void writeBytes(byte[] bytes, int offset) {
+            int length = bytes.length - offset;
+            writeLong(length);
+            ensureCapacity(length);
+            System.arraycopy(bytes, offset, mBuffer, mPosition, length);
+            mPosition += length;
+        }
+
+        private void ensureCapacity(int length) {
+            if (mPosition + length > mBuffer.length) {
+                mBuffer = Arrays.copyOf(mBuffer, Math.max(mBuffer.length * 2, mPosition + length));
+            }
+        }
+
+        private static boolean startsWith(byte[] bytes, byte[] prefix) {
+            if (bytes.length < prefix.length) {
+                return false;
+            }
+            for (int index = 0; index < prefix.length; ++index) {
+                if (bytes[index] != prefix[index]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    static final class Reader {
+
+        private final byte[] mData;
+        // Skips the header byte.
+        private int mPosition = 1;
+
+        Reader(byte[] data) {
+            this.mData = data;
+        }
+
+        long readLong() {
+            long zigZag = 0;
+            int shift = 0;
+            byte current;
+            do {
+                current = mData[mPosition++];
+                zigZag |= (long) (current & 0x7F) << shift;
+                shift += 7;
+            } while ((current & 0x80) != 0);
+            return (zigZag >>> 1) ^ -(zigZag & 1);
+        }
+
+        String readString() {
+            long length = readLong();
+            if (length == -1L) {
+                return null;
+            }
+            return readUtf8(length);
+        }
+
+        String readUrl(String previousUrl) {
+            int prefix = mData[mPosition++] & 0xFF;
+            if (prefix == NULL_URL) {
+                return null;
+            }
+            if (prefix == SAME_AS_PREVIOUS_URL) {
+                return previousUrl;
+            }
+            if (prefix >= URL_PREFIXES.length) {
+                throw new IllegalArgumentException("Unknown url prefix: " + prefix);
+            }
+            String rest = readUtf8(readLong());
+            return prefix == 0 ? rest : URL_PREFIXES[prefix].concat(rest);
+        }
+
+        /* A corrupt length is rejected here, decode() only turns index errors into IAEs. */
+        private String readUtf8(long length) {
+            if (length < 0L) {
+                throw new IllegalArgumentException("Negative length: " + length);
+            }
+            if (length > mData.length - mPosition) {
+                throw new IllegalArgumentException("Truncated record.");
+            }
+            String value = new String(mData, mPosition, (int) length, StandardCharsets.UTF_8);
+            mPosition += (int) length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2017 Google Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.example.android.tv.recommendations.util;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import com.example.android.tv.recommendations.model.CatalogSnapshot;
+import com.example.android.tv.recommendations.model.MockMovieService;
+import com.example.android.tv.recommendations.model.Movie;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules periodic refreshes of the catalog, at an interval that follows how often the catalog
+ * actually changes.
+ *
+ * <p>After each refresh, a signature of the catalog is compared with the one of the previous
+ * refresh. The interval is halved when the catalog changed and grows by half when it did not,
+ * within the bounds set by {@link #setIntervalBounds(long, long)}. Pages that the server reports
+ * as not modified produce the same signature, so a quiet catalog backs the refreshes off. The
+ * interval, the signature and the number of refreshes that saw a change are kept in shared
+ * preferences, since each refresh usually runs in a new process.
+ *
+ * <p>Refreshes that fetch many pages are heavy: they wait for an unmetered network while the device
+ * is idle and charging, for at most one more interval.
+ */
+public class CatalogRefreshScheduler {
+
+    private static final String TAG = "CatalogRefreshScheduler";
+
+    private static final String PREFS_NAME = "catalog_refresh";
+    private static final String KEY_INTERVAL = "interval_millis";
+    private static final String KEY_SIGNATURE = "signature";
+    private static final String KEY_REFRESHES = "refreshes";
+    private static final String KEY_CHANGES = "changes";
+
+    // JobScheduler does not run periodic work more often than every 15 minutes either.
+    private static final long DEFAULT_MIN_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(15);
+    private static final long DEFAULT_MAX_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(6);
+    private static final long INITIAL_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final int HEAVY_PAGE_COUNT = 3;
+
+    private static volatile long sMinIntervalMillis = DEFAULT_MIN_INTERVAL_MILLIS;
+    private static volatile long sMaxIntervalMillis = DEFAULT_MAX_INTERVAL_MILLIS;
+
+    private CatalogRefreshScheduler() {
+        // Do nothing.
+    }
+
+    /**
+     * Sets the bounds of the refresh interval.
+     *
+     * @param minIntervalMillis the interval while the catalog keeps changing.
+     * @param maxIntervalMillis the interval while the catalog does not change.
+     */
+    public static void setIntervalBounds(long minIntervalMillis, long maxIntervalMillis) {
+        if (minIntervalMillis <= 0L || maxIntervalMillis < minIntervalMillis) {
+            throw new IllegalArgumentException(
+                    "Invalid interval bounds: " + minIntervalMillis + ", " + maxIntervalMillis);
+        }
+        sMinIntervalMillis = minIntervalMillis;
+        sMaxIntervalMillis = maxIntervalMillis;
+    }
+
+    /**
+     * Schedules the next refresh of the catalog at the current interval, unless one is already
+     * scheduled.
+     *
+     * @param context used for accessing shared preferences and the job scheduler.
+     */
+    public static void schedule(Context context) {
+        if (TvUtil.isRefreshingCatalogScheduled(context)) {
+            return;
+        }
+        TvUtil.scheduleRefreshingCatalog(context, getIntervalMillis(context), isHeavy());
+    }
+
+    /**
+     * Returns the current refresh interval.
+     *
+     * @param context used for accessing shared preferences.
+     */
+    public static long getIntervalMillis(Context context) {
+        long interval = getPreferences(context).getLong(KEY_INTERVAL, INITIAL_INTERVAL_MILLIS);
+        return clamp(interval, sMinIntervalMillis, sMaxIntervalMillis);
+    }
+
+    /**
+     * Adapts the interval to the outcome of a refresh and schedules the next one.
+     *
+     * @param context used for accessing shared preferences and the job scheduler.
+     * @param previous catalog published before the refresh.
+     * @param current catalog published after the refresh.
+     * @return true if the catalog changed since the last refresh, and programs should be synced.
+     */
+    public static boolean onRefreshed(
+            Context context, CatalogSnapshot previous, CatalogSnapshot current) {
+        SharedPreferences prefs = getPreferences(context);
+        long interval = getIntervalMillis(context);
+        if (current.isEmpty() || current.getVersion() == previous.getVersion()) {
+            // The fetch failed, which says nothing about the catalog.
+            Log.d(TAG, "Refresh failed, retrying in " + interval + " ms");
+            TvUtil.scheduleRefreshingCatalog(context, interval, isHeavy());
+            return false;
+        }
+
+        long signature = signature(current.getMovies());
+        boolean known = prefs.contains(KEY_SIGNATURE);
+        boolean changed = !known || prefs.getLong(KEY_SIGNATURE, 0L) != signature;
+        int refreshes = prefs.getInt(KEY_REFRESHES, 0) + 1;
+        int changes = prefs.getInt(KEY_CHANGES, 0) + (changed ? 1 : 0);
+        if (known) {
+            interval = adaptInterval(interval, changed, sMinIntervalMillis, sMaxIntervalMillis);
+        }
+        prefs.edit()
+                .putLong(KEY_SIGNATURE, signature)
+                .putLong(KEY_INTERVAL, interval)
+                .putInt(KEY_REFRESHES, refreshes)
+                .putInt(KEY_CHANGES, changes)
+                .apply();
+        Log.d(
+                TAG,
+                "Catalog changed: "
+                        + changed
+                        + ", "
+                        + changes
+                        + " changes in "
+                        + refreshes
+                        + " refreshes, next refresh in "
+                        + interval
+                        + " ms");
+
+        TvUtil.scheduleRefreshingCatalog(context, interval, isHeavy());
+        return changed;
+    }
+
+    /**
+     * Returns the interval after a refresh: halved if the catalog changed, and half as long again
+     * if it did not, within bounds.
+     *
+     * @param interval before the refresh.
+     * @param changed true if the refresh saw a change.
+     * @param minInterval lower bound of the interval.
+     * @param maxInterval upper bound of the interval.
+     */
+    static long adaptInterval(long interval, boolean changed, long minInterval, long maxInterval) {
+        long next = changed ? interval / 2 : interval + interval / 2;
+        return clamp(next, minInterval, maxInterval);
+    }
+
+    private static long clamp(long value, long min, long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private static boolean isHeavy() {
+        return MockMovieService.getPageCount() >= HEAVY_PAGE_COUNT;
+    }
+
+    /* Hashes the ids and program content of the movies, in order. */
+    private static long signature(List<Movie> movies) {
+        long hash = Fnv1a.OFFSET_BASIS;
+        for (Movie movie : movies) {
+            // Whole values per step, as the signatures stored by earlier versions were.
+            hash = Fnv1a.step(hash, movie.getId());
+            hash = Fnv1a.step(hash, ProgramFingerprint.of(movie, 0, 0));
+        }
+        return hash;
+    }
+
+    private static SharedPreferences getPreferences(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
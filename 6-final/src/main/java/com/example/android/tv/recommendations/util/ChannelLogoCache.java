@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2017 Google Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.example.android.tv.recommendations.util;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.util.Log;
+import android.util.LruCache;
+import androidx.annotation.WorkerThread;
+import androidx.tvprovider.media.tv.TvContractCompat;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Renders, caches and stores the logos of channels.
+ *
+ * <p>A logo is rendered once at the size it is shown at, instead of the intrinsic size of its
+ * drawable, and cached as the PNG written to the TV provider, keyed by resource id and size. The
+ * hash of the last logo stored for each channel is kept in shared preferences, so a logo that has
+ * not changed is never written again.
+ */
+public class ChannelLogoCache {
+
+    private static final String TAG = "ChannelLogoCache";
+
+    private static final String PREFS_NAME = "channel_logos";
+    private static final String PREFS_HASH_PREFIX = "logo_hash_";
+
+    // Large enough for the launcher's channel logos, which are shown at 80dp at most.
+    private static final int LOGO_SIZE_DP = 80;
+    private static final int MAX_CACHE_BYTES = 512 * 1024;
+
+    private static final LruCache<String, byte[]> sLogos =
+            new LruCache<String, byte[]>(MAX_CACHE_BYTES) {
+                @Override
+                protected int sizeOf(String key, byte[] logo) {
+                    return logo.length;
+                }
+            };
+
+    private ChannelLogoCache() {
+        // Do nothing.
+    }
+
+    /**
+     * Stores the logo of a channel in the TV provider, unless the same logo is already stored.
+     *
+     * @param context used for accessing resources and a content resolver.
+     * @param channelId of the channel.
+     * @param resourceId of the drawable of the logo.
+     * @return true if the logo was written.
+     */
+    @WorkerThread
+    public static boolean storeLogo(Context context, long channelId, int resourceId) {
+        int size = Math.round(LOGO_SIZE_DP * context.getResources().getDisplayMetrics().density);
+        byte[] logo = getLogo(context, resourceId, size);
+        if (logo == null) {
+            return false;
+        }
+
+        long hash = Fnv1a.mix(Fnv1a.OFFSET_BASIS, logo);
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String key = PREFS_HASH_PREFIX + channelId;
+        if (prefs.contains(key) && prefs.getLong(key, 0L) == hash) {
+            if (Log.isLoggable(TAG, Log.DEBUG)) {
+                Log.d(TAG, "Logo of channel " + channelId + " has not changed");
+            }
+            return false;
+        }
+
+        try (OutputStream out =
+                context.getContentResolver()
+                        .openOutputStream(TvContractCompat.buildChannelLogoUri(channelId))) {
+            if (out == null) {
+                return false;
+            }
+            out.write(logo);
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Failed to store the logo of channel " + channelId, e);
+            return false;
+        }
+        prefs.edit().putLong(key, hash).apply();
+        return true;
+    }
+
+    /**
+     * Forgets the logo stored for a channel, so that it is written again on the next call to
+     * {@link #storeLogo(Context, long, int)}.
+     *
+     * @param context used for accessing shared preferences.
+     * @param channelId of the channel.
+     */
+    public static void forgetLogo(Context context, long channelId) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .edit()
+                .remove(PREFS_HASH_PREFIX + channelId)
+                .apply();
+    }
+
+    /* Returns the logo encoded as PNG, rendering it if it is not cached. */
+    private static byte[] getLogo(Context context, int resourceId, int size) {
+        String key = resourceId + ":" + size;
+        byte[] logo = sLogos.get(key);
+        if (logo != null) {
+            return logo;
+        }
+        Bitmap bitmap = render(context, resourceId, size);
+        if (bitmap == null) {
+            return null;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+        bitmap.recycle();
+        logo = out.toByteArray();
+        sLogos.put(key, logo);
+        return logo;
+    }
+
+    /* Renders a drawable so that it fits in a square of the given size. */
+    private static Bitmap render(Context context, int resourceId, int size) {
+        Drawable drawable = context.getDrawable(resourceId);
+        if (drawable == null) {
+            return null;
+        }
+        if (drawable instanceof BitmapDrawable) {
+            return decode(context, resourceId, size);
+        }
+        int width = drawable.getIntrinsicWidth() > 0 ? drawable.getIntrinsicWidth() : size;
+        int height = drawable.getIntrinsicHeight() > 0 ? drawable.getIntrinsicHeight() : size;
+        float scale = Math.min((float) size / width, (float) size / height);
+        Bitmap bitmap =
+                Bitmap.createBitmap(
+                        Math.max(1, Math.round(width * scale)),
+                        Math.max(1, Math.round(height * scale)),
+                        Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        drawable.setBounds(0, 0, canvas.getWidth(), canvas.getHeight());
+        drawable.draw(canvas);
+        return bitmap;
+    }
+
+    /* Decodes a bitmap resource, skipping pixels that would be scaled away. */
+    private static Bitmap decode(Context context, int resourceId, int size) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(context.getResources(), resourceId, options);
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= size
+                && options.outHeight / (sampleSize * 2) >= size) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        return BitmapFactory.decodeResource(context.getResources(), resourceId, options);
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright (c) 2017 Google Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.example.android.tv.recommendations.util;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import androidx.tvprovider.media.tv.TvContractCompat;
+import com.example.android.tv.recommendations.model.Subscription;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The channels of the app in the TV provider, indexed by display name and by internal provider id.
+ *
+ * <p>The channels are read with a single query when the registry is loaded, so looking up the
+ * channel of a subscription does not query the provider again. Channels created for subscriptions
+ * have the name of the subscription as their internal provider id, which identifies them even if
+ * their display name is changed.
+ *
+ * <p>{@link #get(Context)} returns a registry shared by the whole process. It is loaded once and
+ * reloaded in the background whenever a {@link ContentObserver} sees the channels change, so
+ * counting channels, finding one or checking whether it is browsable never queries the provider.
+ */
+public class ChannelRegistry {
+
+    private static final String TAG = "ChannelRegistry";
+
+    private static final long RELOAD_DELAY_MILLIS = 500L;
+
+    /** Notified on the main thread when the shared registry has been reloaded. */
+    public interface Listener {
+
+        /**
+         * Called after the channels changed.
+         *
+         * @param registry holding the current channels.
+         */
+        void onChannelsChanged(ChannelRegistry registry);
+    }
+
+    private static final Object sLock = new Object();
+    private static final List<Listener> sListeners = new CopyOnWriteArrayList<>();
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+    private static volatile ChannelRegistry sShared;
+
+    /** A channel of the app. */
+    public static final class Entry {
+
+        private final long mId;
+        private final String mDisplayName;
+        private final String mInternalProviderId;
+        private final boolean mBrowsable;
+
+        Entry(long id, String displayName, String internalProviderId, boolean browsable) {
+            this.mId = id;
+            this.mDisplayName = displayName;
+            this.mInternalProviderId = internalProviderId;
+            this.mBrowsable = browsable;
+        }
+
+        public long getId() {
+            return mId;
+        }
+
+        public String getDisplayName() {
+            return mDisplayName;
+        }
+
+        public String getInternalProviderId() {
+            return mInternalProviderId;
+        }
+
+        public boolean isBrowsable() {
+            return mBrowsable;
+        }
+    }
+
+    // Concurrent, since channels created through the shared registry are added while others read.
+    private final Map<Long, Entry> mById = new ConcurrentHashMap<>();
+    private final Map<String, Entry> mByDisplayName = new ConcurrentHashMap<>();
+    private final Map<String, Entry> mByInternalProviderId = new ConcurrentHashMap<>();
+
+    private ChannelRegistry() {}
+
+    /**
+     * Returns the registry shared by the process, loading it and starting to observe the channels
+     * on the first call.
+     *
+     * @param context used for accessing a content resolver.
+     * @return the current channels.
+     */
+    @WorkerThread
+    public static ChannelRegistry get(Context context) {
+        ChannelRegistry registry = sShared;
+        if (registry != null) {
+            return registry;
+        }
+        synchronized (sLock) {
+            if (sShared == null) {
+                Context applicationContext = context.getApplicationContext();
+                // Observes first, so that no change is missed while loading.
+                observeChannels(applicationContext);
+                sShared = load(applicationContext);
+            }
+            return sShared;
+        }
+    }
+
+    /**
+     * Returns the registry shared by the process without loading it.
+     *
+     * @return the current channels, or null if the registry has not been loaded yet.
+     */
+    @Nullable
+    public static ChannelRegistry peek() {
+        return sShared;
+    }
+
+    /**
+     * Adds a listener notified whenever the shared registry is reloaded.
+     *
+     * @param listener to be added.
+     */
+    public static void addListener(Listener listener) {
+        sListeners.add(listener);
+    }
+
+    /**
+     * Removes a listener added with {@link #addListener(Listener)}.
+     *
+     * @param listener to be removed.
+     */
+    public static void removeListener(Listener listener) {
+        sListeners.remove(listener);
+    }
+
+    private static void observeChannels(final Context context) {
+        HandlerThread thread = new HandlerThread(TAG);
+        thread.start();
+        final Handler handler = new Handler(thread.getLooper());
+        final Runnable reload =
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        final ChannelRegistry registry = load(context);
+                        sShared = registry;
+                        Log.d(TAG, "Reloaded " + registry.size() + " channels");
+                        sMainHandler.post(
+                                new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        for (Listener listener : sListeners) {
+                                            listener.onChannelsChanged(registry);
+                                        }
+                                    }
+                                });
+                    }
+                };
+        context.getContentResolver()
+                .registerContentObserver(
+                        TvContractCompat.Channels.CONTENT_URI,
+                        true,
+                        new ContentObserver(handler) {
+                            @Override
+                            public void onChange(boolean selfChange) {
+                                onChange(selfChange, null);
+                            }
+
+                            @Override
+                            public void onChange(boolean selfChange, Uri uri) {
+                                if (uri != null && uri.getPathSegments().size() > 2) {
+                                    // Below a channel, such as its logo, not a column we keep.
+                                    return;
+                                }
+                                // Reloads once for a burst of changes.
+                                handler.removeCallbacks(reload);
+                                handler.postDelayed(reload, RELOAD_DELAY_MILLIS);
+                            }
+                        });
+    }
+
+    /**
+     * Reads the channels of the app from the TV provider.
+     *
+     * @param context used for accessing a content resolver.
+     * @return the channels, empty if the provider could not be queried.
+     */
+    @WorkerThread
+    public static ChannelRegistry load(Context context) {
+        ChannelRegistry registry = new ChannelRegistry();
+        List<Map<String, Object>> rows =
+                SyncEngine.queryChannels(new ContentResolverTvProvider(context));
+        if (rows == null) {
+            return registry;
+        }
+        for (Map<String, Object> row : rows) {
+            Object browsable = row.get(ProviderRows.COLUMN_BROWSABLE);
+            registry.add(
+                    new Entry(
+                            ((Number) row.get(ProviderRows.COLUMN_ID)).longValue(),
+                            (String) row.get(ProviderRows.COLUMN_DISPLAY_NAME),
+                            (String) row.get(ProviderRows.COLUMN_INTERNAL_PROVIDER_ID),
+                            browsable instanceof Number && ((Number) browsable).intValue() == 1));
+        }
+        return registry;
+    }
+
+    /**
+     * Returns true if a channel exists and is browsable.
+     *
+     * @param channelId of the channel.
+     */
+    public boolean isBrowsable(long channelId) {
+        Entry entry = mById.get(channelId);
+        return entry != null && entry.isBrowsable();
+    }
+
+    /** Returns the number of channels. */
+    public int size() {
+        return mById.size();
+    }
+
+    /**
+     * Finds a channel by id.
+     *
+     * @param channelId of the channel.
+     * @return the channel or null if it does not exist.
+     */
+    @Nullable
+    public Entry findById(long channelId) {
+        return mById.get(channelId);
+    }
+
+    /**
+     * Finds the channel of a subscription, by internal provider id first and then by display name
+     * for channels created before they had one.
+     *
+     * @param subscription of the channel.
+     * @return the channel or null if it does not exist.
+     */
+    @Nullable
+    public Entry findBySubscription(Subscription subscription) {
+        Entry entry = mByInternalProviderId.get(subscription.getName());
+        return entry != null ? entry : mByDisplayName.get(subscription.getName());
+    }
+
+    /**
+     * Returns the channel of each subscription, creating the missing ones in a single batch. The
+     * registry is updated with the created channels.
+     *
+     * @param context used for accessing a content resolver.
+     * @param subscriptions to be converted to channels.
+     * @return the id of the channel of each subscription, in the same order, or -1 for a channel
+     *     that could not be created.
+     */
+    @WorkerThread
+    public long[] createChannels(Context context, List<Subscription> subscriptions) {
+        long[] channelIds = new long[subscriptions.size()];
+        List<Map<String, Object>> channels = new ArrayList<>();
+        List<Integer> indexes = new ArrayList<>();
+        boolean debug = Log.isLoggable(TAG, Log.DEBUG);
+        for (int index = 0; index < subscriptions.size(); ++index) {
+            Subscription subscription = subscriptions.get(index);
+            Entry entry = findBySubscription(subscription);
+            if (entry != null) {
+                if (debug) {
+                    Log.d(TAG, "Channel already exists: " + entry.getId());
+                }
+                channelIds[index] = entry.getId();
+                // Only written if the logo changed.
+                ChannelLogoCache.storeLogo(context, entry.getId(), subscription.getChannelLogo());
+                continue;
+            }
+            if (debug) {
+                Log.d(TAG, "Creating channel: " + subscription.getName());
+            }
+            channels.add(ProviderRows.buildChannel(subscription));
+            indexes.add(index);
+        }
+        if (channels.isEmpty()) {
+            return channelIds;
+        }
+
+        long[] insertedIds =
+                SyncEngine.insertChannels(new ContentResolverTvProvider(context), channels);
+        for (int operation = 0; operation < insertedIds.length; ++operation) {
+            int index = indexes.get(operation);
+            Subscription subscription = subscriptions.get(index);
+            long channelId = insertedIds[operation];
+            if (channelId <= 0L) {
+                Log.e(TAG, "Failed to create channel: " + subscription.getName());
+                channelIds[index] = -1L;
+                continue;
+            }
+            channelIds[index] = channelId;
+            add(new Entry(channelId, subscription.getName(), subscription.getName(), false));
+            // A new channel has no logo yet, whatever was stored for a channel with the same id.
+            ChannelLogoCache.forgetLogo(context, channelId);
+            ChannelLogoCache.storeLogo(context, channelId, subscription.getChannelLogo());
+        }
+        return channelIds;
+    }
+
+    private void add(Entry entry) {
+        mById.put(entry.getId(), entry);
+        if (entry.getDisplayName() != null) {
+            mByDisplayName.put(entry.getDisplayName(), entry);
+        }
+        if (entry.getInternalProviderId() != null) {
+            mByInternalProviderId.put(entry.getInternalProviderId(), entry);
+        }
+    }
+}
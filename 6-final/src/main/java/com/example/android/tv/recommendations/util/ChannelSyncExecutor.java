@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2017 Google Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.example.android.tv.recommendations.util;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.annotation.MainThread;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs the program syncs of channels on a dedicated, bounded thread pool.
+ *
+ * <p>Syncs of different channels run in parallel, up to a global limit, so that a slow channel does
+ * not hold back the others or the tasks on the {@link android.os.AsyncTask} executors. Syncs of the
+ * same channel never overlap: a sync waits for the previous one of its channel to finish. Every
+ * sync has a time budget, after which it is interrupted and reported as not finished so that the
+ * job can be rescheduled. A sync that already started is only reported once its thread has left
+ * it, so that the next sync of its channel does not wait for a sync that was reported as over.
+ */
+public class ChannelSyncExecutor {
+
+    private static final String TAG = "ChannelSyncExecutor";
+
+    private static final int DEFAULT_MAX_CONCURRENT_SYNCS = 3;
+    private static final long DEFAULT_TIME_BUDGET_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    /** Receives the outcome of a sync, on the main thread. */
+    public interface Callback {
+
+        /**
+         * Called once when the sync completes, fails, is cancelled or runs out of time.
+         *
+         * @param finished true if the sync completed, false if it has to be retried.
+         */
+        void onSyncFinished(boolean finished);
+    }
+
+    private static final ThreadPoolExecutor sExecutor =
+            new ThreadPoolExecutor(
+                    DEFAULT_MAX_CONCURRENT_SYNCS,
+                    DEFAULT_MAX_CONCURRENT_SYNCS,
+                    30L,
+                    TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>());
+
+    static {
+        sExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /* Locks of the channels with a sync running or waiting, guarded by itself. */
+    private static final Map<Long, ChannelLock> sChannelLocks = new HashMap<>();
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    private static volatile long sTimeBudgetMillis = DEFAULT_TIME_BUDGET_MILLIS;
+
+    private ChannelSyncExecutor() {
+        // Do nothing.
+    }
+
+    /**
+     * Sets the number of syncs that may run at the same time.
+     *
+     * @param maxConcurrentSyncs a positive number of syncs.
+     */
+    public static synchronized void setMaxConcurrentSyncs(int maxConcurrentSyncs) {
+        if (maxConcurrentSyncs <= 0) {
+            throw new IllegalArgumentException("Invalid limit: " + maxConcurrentSyncs);
+        }
+        // The maximum size may never be below the core size.
+        if (maxConcurrentSyncs > sExecutor.getMaximumPoolSize()) {
+            sExecutor.setMaximumPoolSize(maxConcurrentSyncs);
+            sExecutor.setCorePoolSize(maxConcurrentSyncs);
+        } else {
+            sExecutor.setCorePoolSize(maxConcurrentSyncs);
+            sExecutor.setMaximumPoolSize(maxConcurrentSyncs);
+        }
+    }
+
+    /**
+     * Sets how long a sync may run, including the time spent waiting for the previous sync of its
+     * channel, before it is interrupted.
+     *
+     * @param timeBudgetMillis a positive duration in milliseconds.
+     */
+    public static void setTimeBudget(long timeBudgetMillis) {
+        if (timeBudgetMillis <= 0L) {
+            throw new IllegalArgumentException("Invalid time budget: " + timeBudgetMillis);
+        }
+        sTimeBudgetMillis = timeBudgetMillis;
+    }
+
+    /**
+     * Submits the sync of a channel.
+     *
+     * @param channelId of the channel to sync.
+     * @param sync the work, returning true if it completed. It should stop early once its thread
+     *     is interrupted.
+     * @param callback notified of the outcome on the main thread.
+     * @return a handle to cancel the sync.
+     */
+    @MainThread
+    public static Handle submit(long channelId, Callable<Boolean> sync, Callback callback) {
+        final Handle handle = new Handle(channelId, sync, callback, sTimeBudgetMillis);
+        handle.mFuture = sExecutor.submit(handle.mTask);
+        sMainHandler.postDelayed(handle.mTimeout, handle.mTimeBudgetMillis);
+        return handle;
+    }
+
+    /** A submitted sync. */
+    public static final class Handle {
+
+        private final long mChannelId;
+        private final Callable<Boolean> mSync;
+        private final Callback mCallback;
+        private final long mTimeBudgetMillis;
+        private final long mDeadlineMillis;
+        private final AtomicBoolean mStarted = new AtomicBoolean();
+        private final AtomicBoolean mReported = new AtomicBoolean();
+        private volatile Future<?> mFuture;
+
+        private final Runnable mTask =
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!mStarted.compareAndSet(false, true)) {
+                            return;
+                        }
+                        boolean finished = false;
+                        try {
+                            finished = runLocked();
+                        } finally {
+                            report(finished);
+                        }
+                    }
+                };
+
+        private final Runnable mTimeout =
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        Log.w(TAG, "Sync of channel " + mChannelId + " ran out of time");
+                        cancel();
+                    }
+                };
+
+        private Handle(
+                long channelId, Callable<Boolean> sync, Callback callback, long timeBudgetMillis) {
+            this.mChannelId = channelId;
+            this.mSync = sync;
+            this.mCallback = callback;
+            this.mTimeBudgetMillis = timeBudgetMillis;
+            this.mDeadlineMillis = SystemClock.elapsedRealtime() + timeBudgetMillis;
+        }
+
+        /**
+         * Interrupts the sync, which is reported as not finished. A sync that has not started yet
+         * is reported right away, one that is running once it stops.
+         */
+        public void cancel() {
+            Future<?> future = mFuture;
+            if (future != null) {
+                future.cancel(true);
+            }
+            if (mStarted.compareAndSet(false, true)) {
+                report(false);
+            }
+        }
+
+        private boolean runLocked() {
+            ChannelLock lock = acquireLock(mChannelId);
+            try {
+                try {
+                    long remainingMillis = mDeadlineMillis - SystemClock.elapsedRealtime();
+                    if (!lock.lock.tryLock(remainingMillis, TimeUnit.MILLISECONDS)) {
+                        Log.w(TAG, "Channel " + mChannelId + " is still syncing, giving up");
+                        return false;
+                    }
+                } catch (InterruptedException e) {
+                    return false;
+                }
+                try {
+                    return Boolean.TRUE.equals(mSync.call());
+                } catch (Exception e) {
+                    Log.e(TAG, "Sync of channel " + mChannelId + " failed", e);
+                    return false;
+                } finally {
+                    lock.lock.unlock();
+                }
+            } finally {
+                releaseLock(mChannelId, lock);
+            }
+        }
+
+        /* Returns the lock of a channel, counting the caller among its users. */
+        private static ChannelLock acquireLock(long channelId) {
+            synchronized (sChannelLocks) {
+                ChannelLock lock = sChannelLocks.get(channelId);
+                if (lock == null) {
+                    lock = new ChannelLock();
+                    sChannelLocks.put(channelId, lock);
+                }
+                lock.mUsers++;
+                return lock;
+            }
+        }
+
+        /* Forgets the lock of a channel once no sync uses it, deleted channels included. */
+        private static void releaseLock(long channelId, ChannelLock lock) {
+            synchronized (sChannelLocks) {
+                if (--lock.mUsers == 0) {
+                    sChannelLocks.remove(channelId);
+                }
+            }
+        }
+
+        private void report(final boolean finished) {
+            if (!mReported.compareAndSet(false, true)) {
+                return;
+            }
+            sMainHandler.removeCallbacks(mTimeout);
+            sMainHandler.post(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            mCallback.onSyncFinished(finished);
+                        }
+                    });
+        }
+    }
+
+    /* The lock of a channel, with the number of syncs holding it or waiting for it. */
+    private static final class ChannelLock {
+
+        final ReentrantLock lock = new ReentrantLock();
+        private int mUsers;
+    }
+}
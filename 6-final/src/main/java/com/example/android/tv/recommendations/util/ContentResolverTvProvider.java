@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2017 Google Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.example.android.tv.recommendations.util;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.RemoteException;
+import android.util.Log;
+import androidx.tvprovider.media.tv.TvContractCompat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@link TvProvider} of the device, accessed through a {@link ContentResolver}.
+ *
+ * <p>Each call is one binder transaction, counted in {@link SyncMetrics#PROVIDER_CALLS}; queries
+ * and batches are also timed. Rows are converted from and to {@link ContentValues}; text columns
+ * holding a uri, such as the poster art, are passed as they are, the same as {@code
+ * PreviewProgram} does.
+ */
+public class ContentResolverTvProvider implements TvProvider {
+
+    private static final String TAG = "ContentResolverTvProvdr";
+
+    private final ContentResolver mContentResolver;
+
+    /**
+     * Creates a provider that reads and writes the TV provider of the device.
+     *
+     * @param context used for accessing a content resolver.
+     */
+    public ContentResolverTvProvider(Context context) {
+        this.mContentResolver = context.getApplicationContext().getContentResolver();
+    }
+
+    @Override
+    public long insert(int table, Map<String, Object> values) {
+        SyncMetrics.count(SyncMetrics.PROVIDER_CALLS, 1L);
+        Uri uri = mContentResolver.insert(getContentUri(table), toContentValues(values));
+        return uri != null ? ContentUris.parseId(uri) : -1L;
+    }
+
+    @Override
+    public int update(int table, long id, Map<String, Object> values) {
+        SyncMetrics.count(SyncMetrics.PROVIDER_CALLS, 1L);
+        return mContentResolver.update(buildUri(table, id), toContentValues(values), null, null);
+    }
+
+    @Override
+    public int delete(int table, long id) {
+        SyncMetrics.count(SyncMetrics.PROVIDER_CALLS, 1L);
+        return mContentResolver.delete(buildUri(table, id), null, null);
+    }
+
+    @Override
+    public List<Map<String, Object>> query(
+            int table, String[] projection, String column, long value) {
+        Uri uri;
+        String selection = null;
+        String[] selectionArgs = null;
+        if (column == null) {
+            uri = getContentUri(table);
+        } else if (table == PREVIEW_PROGRAMS && ProviderRows.COLUMN_CHANNEL_ID.equals(column)) {
+            uri = TvContractCompat.buildPreviewProgramsUriForChannel(value);
+        } else {
+            uri = getContentUri(table);
+            selection = column + "=?";
+            selectionArgs = new String[] {String.valueOf(value)};
+        }
+        SyncMetrics.count(SyncMetrics.PROVIDER_CALLS, 1L);
+        long start = SyncMetrics.beginSection(SyncMetrics.PROVIDER_QUERY);
+        try (Cursor cursor =
+                mContentResolver.query(uri, projection, selection, selectionArgs, null)) {
+            if (cursor == null) {
+                return null;
+            }
+            List<Map<String, Object>> rows = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                rows.add(toRow(cursor));
+            }
+            return rows;
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Could not query " + uri, e);
+            return null;
+        } finally {
+            SyncMetrics.endSection(SyncMetrics.PROVIDER_QUERY, start);
+        }
+    }
+
+    @Override
+    public Result[] applyBatch(List<Operation> operations) throws BatchException {
+        ArrayList<ContentProviderOperation> batch = new ArrayList<>(operations.size());
+        for (Operation operation : operations) {
+            batch.add(toContentProviderOperation(operation));
+        }
+        SyncMetrics.count(SyncMetrics.PROVIDER_CALLS, 1L);
+        SyncMetrics.count(SyncMetrics.PROVIDER_OPERATIONS, batch.size());
+        ContentProviderResult[] results;
+        long start = SyncMetrics.beginSection(SyncMetrics.PROVIDER_BATCH);
+        try {
+            results = mContentResolver.applyBatch(TvContractCompat.AUTHORITY, batch);
+        } catch (RemoteException | OperationApplicationException | RuntimeException e) {
+            Log.w(TAG, "Batch of " + batch.size() + " operations failed", e);
+            throw new BatchException(e);
+        } finally {
+            SyncMetrics.endSection(SyncMetrics.PROVIDER_BATCH, start);
+        }
+        Result[] converted = new Result[results.length];
+        for (int index = 0; index < results.length; ++index) {
+            ContentProviderResult result = results[index];
+            converted[index] =
+                    new Result(
+                            result.uri != null ? ContentUris.parseId(result.uri) : -1L,
+                            result.count != null ? result.count : 0);
+        }
+        return converted;
+    }
+
+    private static ContentProviderOperation toContentProviderOperation(Operation operation) {
+        switch (operation.getKind()) {
+            case Operation.INSERT:
+                return ContentProviderOperation.newInsert(getContentUri(operation.getTable()))
+                        .withValues(toContentValues(operation.getValues()))
+                        .build();
+            case Operation.UPDATE:
+                return ContentProviderOperation.newUpdate(
+                                buildUri(operation.getTable(), operation.getId()))
+                        .withValues(toContentValues(operation.getValues()))
+                        .build();
+            default:
+                return ContentProviderOperation.newDelete(
+                                buildUri(operation.getTable(), operation.getId()))
+                        .build();
+        }
+    }
+
+    private static Uri getContentUri(int table) {
+        switch (table) {
+            case CHANNELS:
+                return TvContractCompat.Channels.CONTENT_URI;
+            case PREVIEW_PROGRAMS:
+                return TvContractCompat.PreviewPrograms.CONTENT_URI;
+            case WATCH_NEXT_PROGRAMS:
+                return TvContractCompat.WatchNextPrograms.CONTENT_URI;
+            default:
+                throw new IllegalArgumentException("Unknown table: " + table);
+        }
+    }
+
+    private static Uri buildUri(int table, long id) {
+        switch (table) {
+            case CHANNELS:
+                return TvContractCompat.buildChannelUri(id);
+            case PREVIEW_PROGRAMS:
+                return TvContractCompat.buildPreviewProgramUri(id);
+            case WATCH_NEXT_PROGRAMS:
+                return TvContractCompat.buildWatchNextProgramUri(id);
+            default:
+                throw new IllegalArgumentException("Unknown table: " + table);
+        }
+    }
+
+    private static ContentValues toContentValues(Map<String, Object> values) {
+        ContentValues contentValues = new ContentValues(values.size());
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            Object value = entry.getValue();
+            if (value == null) {
+                contentValues.putNull(entry.getKey());
+            } else if (value instanceof String) {
+                contentValues.put(entry.getKey(), (String) value);
+            } else if (value instanceof Integer) {
+                contentValues.put(entry.getKey(), (Integer) value);
+            } else if (value instanceof Long) {
+                contentValues.put(entry.getKey(), (Long) value);
+            } else if (value instanceof Boolean) {
+                contentValues.put(entry.getKey(), (Boolean) value ? 1 : 0);
+            } else if (value instanceof byte[]) {
+                contentValues.put(entry.getKey(), (byte[]) value);
+            } else {
+                contentValues.put(entry.getKey(), value.toString());
+            }
+        }
+        return contentValues;
+    }
+
+    /* Integers are read as longs, whatever the declared type of the column. */
+    private static Map<String, Object> toRow(Cursor cursor) {
+        Map<String, Object> row = new HashMap<>();
+        for (int index = 0; index < cursor.getColumnCount(); ++index) {
+            Object value;
+            switch (cursor.getType(index)) {
+                case Cursor.FIELD_TYPE_INTEGER:
+                    value = cursor.getLong(index);
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT:
+                    value = cursor.getDouble(index);
+                    break;
+                case Cursor.FIELD_TYPE_BLOB:
+                    value = cursor.getBlob(index);
+                    break;
+                case Cursor.FIELD_TYPE_NULL:
+                    value = null;
+                    break;
+                default:
+                    value = cursor.getString(index);
+                    break;
+            }
+            row.put(cursor.getColumnName(index), value);
+        }
+        return row;
+    }
+}
@@ -0,0 +1,466 @@
+/*
+ * Copyright (c) 2017 Google Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.example.android.tv.recommendations.util;
+
+import com.example.android.tv.recommendations.model.Movie;
+import com.example.android.tv.recommendations.model.Subscription;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Process-wide cache of the {@link Subscription}s and {@link Movie}s persisted by {@link
+ * DatabaseHelper}.
+ *
+ * <p>The cache holds immutable snapshots: items are copied when they are put in the cache and
+ * copied again when they are handed out, so callers can modify what they read without affecting
+ * other readers. Movies are cached per channel and evicted in least recently used order once the
+ * total number of cached movies goes over {@link #DEFAULT_MAX_MOVIES} or the size set through
+ * {@link #setMaxMovies(int)}.
+ *
+ * <p>A channel with more movies than that bound would be evicted as soon as it is put, and every
+ * read of its sync would go back to the database. The last such channel is kept in a slot of its
+ * own instead, outside of the bound, so that a single large channel is still read from memory.
+ *
+ * <p>The class does not depend on the Android framework, so that the load test can measure it.
+ *
+ * <p>This class only holds data. Keeping it consistent with the database is the responsibility of
+ * the caller, which should update it whenever it writes to the database.
+ */
+public final class DatabaseCache {
+
+    public static final int DEFAULT_MAX_MOVIES = 2000;
+
+    private static final Object sLock = new Object();
+
+    /* Movies by channel id, in access order. Guarded by sLock, as are the fields below. */
+    private static final LinkedHashMap<Long, ChannelMovies> sMovies =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private static int sMaxMovies = DEFAULT_MAX_MOVIES;
+    private static int sCachedMovies;
+    private static long sLargeChannelId;
+    private static ChannelMovies sLargeChannel;
+    private static int sMovieHitCount;
+    private static int sMovieMissCount;
+    private static int sEvictionCount;
+
+    private static List<Subscription> sSubscriptions;
+    private static int sSubscriptionHitCount;
+    private static int sSubscriptionMissCount;
+
+    private DatabaseCache() {
+        // Do nothing.
+    }
+
+    /**
+     * Returns a copy of the cached subscriptions.
+     *
+     * @return the subscriptions or null if they have not been cached.
+     */
+    public static List<Subscription> getSubscriptions() {
+        synchronized (sLock) {
+            if (sSubscriptions == null) {
+                sSubscriptionMissCount++;
+                return null;
+            }
+            sSubscriptionHitCount++;
+            return copySubscriptions(sSubscriptions);
+        }
+    }
+
+    /**
+     * Finds a cached subscription associated with a channel.
+     *
+     * @param channelId of the channel that the subscription is associated with.
+     * @return a copy of the subscription, or null if it does not exist or the subscriptions have
+     *     not been cached. Use {@link #hasSubscriptions()} to tell both cases apart.
+     */
+    public static Subscription findSubscriptionByChannelId(long channelId) {
+        synchronized (sLock) {
+            if (sSubscriptions == null) {
+                sSubscriptionMissCount++;
+                return null;
+            }
+            sSubscriptionHitCount++;
+            for (Subscription subscription : sSubscriptions) {
+                if (subscription.getChannelId() == channelId) {
+                    return new Subscription(subscription);
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Finds a cached subscription with the given name.
+     *
+     * @param name of the subscription.
+     * @return a copy of the subscription, or null if it does not exist or the subscriptions have
+     *     not been cached. Use {@link #hasSubscriptions()} to tell both cases apart.
+     */
+    public static Subscription findSubscriptionByName(String name) {
+        synchronized (sLock) {
+            if (sSubscriptions == null) {
+                sSubscriptionMissCount++;
+                return null;
+            }
+            sSubscriptionHitCount++;
+            for (Subscription subscription : sSubscriptions) {
+                if (subscription.getName().equals(name)) {
+                    return new Subscription(subscription);
+                }
+            }
+            return null;
+        }
+    }
+
+    /** Returns true if the subscriptions have been cached. */
+    public static boolean hasSubscriptions() {
+        synchronized (sLock) {
+            return sSubscriptions != null;
+        }
+    }
+
+    /**
+     * Replaces the cached subscriptions.
+     *
+     * @param subscriptions as they are stored in the database.
+     */
+    public static void putSubscriptions(List<Subscription> subscriptions) {
+        synchronized (sLock) {
+            sSubscriptions = Collections.unmodifiableList(copySubscriptions(subscriptions));
+        }
+    }
+
+    /**
+     * Adds or replaces a subscription, keyed by its name. Does nothing if the subscriptions have
+     * not been cached yet.
+     *
+     * @param subscription as it is stored in the database.
+     */
+    public static void putSubscription(Subscription subscription) {
+        synchronized (sLock) {
+            if (sSubscriptions == null) {
+                return;
+            }
+            List<Subscription> subscriptions = new ArrayList<>(sSubscriptions);
+            boolean replaced = false;
+            for (int index = 0; index < subscriptions.size(); ++index) {
+                if (subscriptions.get(index).getName().equals(subscription.getName())) {
+                    subscriptions.set(index, new Subscription(subscription));
+                    replaced = true;
+                    break;
+                }
+            }
+            if (!replaced) {
+                subscriptions.add(new Subscription(subscription));
+            }
+            sSubscriptions = Collections.unmodifiableList(subscriptions);
+        }
+    }
+
+    /**
+     * Returns a copy of the cached movies of a channel.
+     *
+     * @param channelId of the channel that the movies are associated with.
+     * @return the movies or null if they have not been cached.
+     */
+    public static List<Movie> getMovies(long channelId) {
+        ChannelMovies channelMovies = get(channelId);
+        return channelMovies != null ? copyMovies(channelMovies.movies) : null;
+    }
+
+    /**
+     * Returns the program ids of the cached movies of a channel, keyed by movie id.
+     *
+     * @param channelId of the channel that the movies are associated with.
+     * @return a new map, or null if the movies of the channel have not been cached.
+     */
+    public static LongLongMap getProgramIds(long channelId) {
+        ChannelMovies channelMovies = get(channelId);
+        if (channelMovies == null) {
+            return null;
+        }
+        LongLongMap programIds = new LongLongMap(channelMovies.movies.size());
+        for (Movie movie : channelMovies.movies) {
+            programIds.put(movie.getId(), movie.getProgramId());
+        }
+        return programIds;
+    }
+
+    /**
+     * Finds a cached movie of a channel.
+     *
+     * @param channelId of the channel that the movie is associated with.
+     * @param movieId of the movie.
+     * @return a copy of the movie, or null if it does not exist or the movies of the channel have
+     *     not been cached.
+     */
+    public static Movie findMovieById(long channelId, long movieId) {
+        ChannelMovies channelMovies = get(channelId);
+        if (channelMovies == null) {
+            return null;
+        }
+        int index = channelMovies.indexOf(movieId);
+        return index != -1 ? new Movie(channelMovies.movies.get(index)) : null;
+    }
+
+    /**
+     * Replaces the cached movies of a channel.
+     *
+     * @param channelId of the channel that the movies are associated with.
+     * @param movies as they are stored in the database.
+     */
+    public static void putMovies(long channelId, List<Movie> movies) {
+        ChannelMovies channelMovies = new ChannelMovies(copyMovies(movies));
+        synchronized (sLock) {
+            put(channelId, channelMovies);
+        }
+    }
+
+    /**
+     * Adds or replaces a movie of a channel, keyed by its id. Does nothing if the movies of the
+     * channel have not been cached.
+     *
+     * @param channelId of the channel that the movie is associated with.
+     * @param movie as it is stored in the database.
+     */
+    public static void putMovie(long channelId, Movie movie) {
+        synchronized (sLock) {
+            ChannelMovies cached = get(channelId);
+            if (cached == null) {
+                return;
+            }
+            List<Movie> movies = new ArrayList<>(cached.movies);
+            int index = cached.indexOf(movie.getId());
+            if (index != -1) {
+                movies.set(index, new Movie(movie));
+            } else {
+                movies.add(new Movie(movie));
+            }
+            put(channelId, new ChannelMovies(movies));
+        }
+    }
+
+    /**
+     * Stores and removes some movies of a channel, if its movies are cached.
+     *
+     * @param channelId of the channel that the movies are associated with.
+     * @param stored movies to be added or replaced.
+     * @param removed movies to be removed.
+     */
+    public static void putMovieChanges(long channelId, List<Movie> stored, List<Movie> removed) {
+        synchronized (sLock) {
+            ChannelMovies cached = get(channelId);
+            if (cached == null) {
+                return;
+            }
+            LongLongMap removedIds = new LongLongMap(removed.size());
+            for (Movie movie : removed) {
+                removedIds.put(movie.getId(), 1L);
+            }
+            List<Movie> movies = new ArrayList<>(cached.movies.size() + stored.size());
+            for (Movie movie : cached.movies) {
+                if (!removedIds.containsKey(movie.getId())) {
+                    movies.add(movie);
+                }
+            }
+            LongLongMap positions = new LongLongMap(movies.size());
+            for (int index = 0; index < movies.size(); ++index) {
+                positions.put(movies.get(index).getId(), index);
+            }
+            for (Movie movie : stored) {
+                int index = (int) positions.get(movie.getId(), -1L);
+                if (index != -1) {
+                    movies.set(index, new Movie(movie));
+                } else {
+                    positions.put(movie.getId(), movies.size());
+                    movies.add(new Movie(movie));
+                }
+            }
+            put(channelId, new ChannelMovies(movies));
+        }
+    }
+
+    /**
+     * Removes a movie of a channel. Does nothing if the movies of the channel have not been cached.
+     *
+     * @param channelId of the channel that the movie is associated with.
+     * @param movieId of the movie.
+     */
+    public static void removeMovie(long channelId, long movieId) {
+        synchronized (sLock) {
+            ChannelMovies cached = get(channelId);
+            if (cached == null || cached.indexOf(movieId) == -1) {
+                return;
+            }
+            List<Movie> movies = new ArrayList<>(cached.movies);
+            movies.remove(cached.indexOf(movieId));
+            put(channelId, new ChannelMovies(movies));
+        }
+    }
+
+    /**
+     * Changes the maximum number of movies kept in the cache, evicting channels if needed.
+     *
+     * @param maxMovies the new maximum, summed over every channel.
+     */
+    public static void setMaxMovies(int maxMovies) {
+        synchronized (sLock) {
+            sMaxMovies = maxMovies;
+            trimToSize();
+        }
+    }
+
+    /** Drops everything that is cached. */
+    public static void clear() {
+        synchronized (sLock) {
+            sSubscriptions = null;
+            sMovies.clear();
+            sCachedMovies = 0;
+            sLargeChannel = null;
+        }
+    }
+
+    /** Returns the number of reads that were answered by the cache. */
+    public static int getHitCount() {
+        synchronized (sLock) {
+            return sSubscriptionHitCount + sMovieHitCount;
+        }
+    }
+
+    /** Returns the number of reads that had to go to the database. */
+    public static int getMissCount() {
+        synchronized (sLock) {
+            return sSubscriptionMissCount + sMovieMissCount;
+        }
+    }
+
+    /** Returns a summary of the cache usage, suitable for logging. */
+    public static String getStats() {
+        synchronized (sLock) {
+            return "DatabaseCache{"
+                    + "subscriptionHits="
+                    + sSubscriptionHitCount
+                    + ", subscriptionMisses="
+                    + sSubscriptionMissCount
+                    + ", movieHits="
+                    + sMovieHitCount
+                    + ", movieMisses="
+                    + sMovieMissCount
+                    + ", movieEvictions="
+                    + sEvictionCount
+                    + ", cachedMovies="
+                    + sCachedMovies
+                    + "/"
+                    + sMaxMovies
+                    + ", largeChannelMovies="
+                    + (sLargeChannel != null ? sLargeChannel.movies.size() : 0)
+                    + '}';
+        }
+    }
+
+    /* Returns the movies of a channel, counting the hit or miss. */
+    private static ChannelMovies get(long channelId) {
+        synchronized (sLock) {
+            ChannelMovies channelMovies =
+                    sLargeChannel != null && sLargeChannelId == channelId
+                            ? sLargeChannel
+                            : sMovies.get(channelId);
+            if (channelMovies != null) {
+                sMovieHitCount++;
+            } else {
+                sMovieMissCount++;
+            }
+            return channelMovies;
+        }
+    }
+
+    /* Replaces the movies of a channel, in the slot of large channels if they do not fit. */
+    private static void put(long channelId, ChannelMovies channelMovies) {
+        ChannelMovies previous = sMovies.remove(channelId);
+        if (previous != null) {
+            sCachedMovies -= sizeOf(previous);
+        }
+        if (sLargeChannel != null && sLargeChannelId == channelId) {
+            sLargeChannel = null;
+        }
+        if (sizeOf(channelMovies) > sMaxMovies) {
+            if (sLargeChannel != null) {
+                sEvictionCount++;
+            }
+            sLargeChannelId = channelId;
+            sLargeChannel = channelMovies;
+            return;
+        }
+        sMovies.put(channelId, channelMovies);
+        sCachedMovies += sizeOf(channelMovies);
+        trimToSize();
+    }
+
+    /* Evicts the least recently used channels until the movies fit. */
+    private static void trimToSize() {
+        Iterator<Map.Entry<Long, ChannelMovies>> iterator = sMovies.entrySet().iterator();
+        while (sCachedMovies > sMaxMovies && iterator.hasNext()) {
+            sCachedMovies -= sizeOf(iterator.next().getValue());
+            iterator.remove();
+            sEvictionCount++;
+        }
+    }
+
+    private static int sizeOf(ChannelMovies channelMovies) {
+        // An empty channel still takes an entry.
+        return Math.max(1, channelMovies.movies.size());
+    }
+
+    /** An immutable list of movies, indexed by movie id. */
+    private static final class ChannelMovies {
+
+        final List<Movie> movies;
+        private final LongLongMap mPositions;
+
+        ChannelMovies(List<Movie> movies) {
+            this.movies = Collections.unmodifiableList(movies);
+            this.mPositions = new LongLongMap(movies.size());
+            for (int index = 0; index < movies.size(); ++index) {
+                mPositions.put(movies.get(index).getId(), index);
+            }
+        }
+
+        int indexOf(long movieId) {
+            return (int) mPositions.get(movieId, -1L);
+        }
+    }
+
+    private static List<Subscription> copySubscriptions(List<Subscription> subscriptions) {
+        List<Subscription> copy = new ArrayList<>(subscriptions.size());
+        for (Subscription subscription : subscriptions) {
+            copy.add(new Subscription(subscription));
+        }
+        return copy;
+    }
+
+    private static List<Movie> copyMovies(List<Movie> movies) {
+        List<Movie> copy = new ArrayList<>(movies.size());
+        for (Movie movie : movies) {
+            copy.add(new Movie(movie));
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,759 @@
+/*
+ * Copyright (c) 2017 Google Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.example.android.tv.recommendations.util;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.AsyncTask;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import com.example.android.tv.recommendations.model.Movie;
+import com.example.android.tv.recommendations.model.Subscription;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Helper class to store {@link Subscription}s and {@link Movie}s in a SQLite database.
+ *
+ * <p>Each subscription and movie is stored as its own row. The columns used for lookups (channel
+ * id, movie id and program id) are indexed so that finding a single item reads a single row instead
+ * of unmarshalling every item of a channel. The remaining fields are kept in a {@code data} column,
+ * marshalled by a {@link RecordCodec} that can be replaced through {@link #setCodecs(RecordCodec,
+ * RecordCodec)}. Rows are read back with the codec that wrote them, so changing codecs does not
+ * require migrating the stored data.
+ *
+ * <p>The database uses write-ahead logging, so updating or removing a single movie appends that
+ * row to the log instead of rewriting the movies of its channel. The log is folded back into the
+ * database in the background once enough rows have been written since the last checkpoint, or once
+ * it grows past a size threshold. See {@link #setCheckpointThresholds(int, long)}.
+ *
+ * <p>When the database is created, the data previously persisted by {@link
+ * SharedPreferencesHelper} is migrated into it and removed from {@code SharedPreferences}.
+ *
+ * <p>The methods of this class should not be called on the UI thread.
+ */
+public final class DatabaseHelper {
+
+    private static final String TAG = "DatabaseHelper";
+
+    private static final String DATABASE_NAME = "recommendations.db";
+    private static final int DATABASE_VERSION = 1;
+
+    private static final String TABLE_SUBSCRIPTIONS = "subscriptions";
+    private static final String TABLE_MOVIES = "movies";
+
+    private static final String COLUMN_NAME = "name";
+    private static final String COLUMN_CHANNEL_ID = "channel_id";
+    private static final String COLUMN_MOVIE_ID = "movie_id";
+    private static final String COLUMN_PROGRAM_ID = "program_id";
+    private static final String COLUMN_POSITION = "position";
+    private static final String COLUMN_DATA = "data";
+
+    private static final String[] SUBSCRIPTION_PROJECTION = {
+        COLUMN_NAME, COLUMN_POSITION, COLUMN_DATA
+    };
+    private static final String[] MOVIE_PROJECTION = {
+        COLUMN_MOVIE_ID, COLUMN_PROGRAM_ID, COLUMN_POSITION, COLUMN_DATA
+    };
+
+    private static final RecordCodec<Movie> JSON_MOVIE_CODEC = new GsonRecordCodec<>(Movie.class);
+    private static final RecordCodec<Subscription> JSON_SUBSCRIPTION_CODEC =
+            new GsonRecordCodec<>(Subscription.class);
+
+    private static volatile RecordCodec<Movie> sMovieCodec = BinaryRecordCodec.MOVIE;
+    private static volatile RecordCodec<Subscription> sSubscriptionCodec =
+            BinaryRecordCodec.SUBSCRIPTION;
+
+    private static final int DEFAULT_CHECKPOINT_ROWS = 1000;
+    private static final long DEFAULT_CHECKPOINT_BYTES = 1024 * 1024;
+
+    private static final AtomicInteger sRowsSinceCheckpoint = new AtomicInteger();
+    private static final AtomicBoolean sCheckpointPending = new AtomicBoolean();
+    private static volatile int sCheckpointRows = DEFAULT_CHECKPOINT_ROWS;
+    private static volatile long sCheckpointBytes = DEFAULT_CHECKPOINT_BYTES;
+
+    private static OpenHelper sOpenHelper;
+
+    private DatabaseHelper() {
+        // Do nothing.
+    }
+
+    /**
+     * Sets the codecs used to marshal the rows written from now on. Defaults to the {@link
+     * BinaryRecordCodec}s.
+     *
+     * @param movieCodec used for the movies.
+     * @param subscriptionCodec used for the subscriptions.
+     */
+    public static void setCodecs(
+            RecordCodec<Movie> movieCodec, RecordCodec<Subscription> subscriptionCodec) {
+        sMovieCodec = movieCodec;
+        sSubscriptionCodec = subscriptionCodec;
+    }
+
+    /**
+     * Sets when the write-ahead log is checkpointed. A checkpoint is started in the background as
+     * soon as either threshold is reached.
+     *
+     * @param rows written since the last checkpoint.
+     * @param bytes the size of the write-ahead log.
+     */
+    public static void setCheckpointThresholds(int rows, long bytes) {
+        sCheckpointRows = rows;
+        sCheckpointBytes = bytes;
+    }
+
+    /**
+     * Reads all subscriptions from the database.
+     *
+     * @param context used for opening the database.
+     * @return a list of subscriptions or an empty list if none exist.
+     */
+    @WorkerThread
+    public static List<Subscription> readSubscriptions(Context context) {
+        try (Cursor cursor =
+                getDatabase(context)
+                        .query(
+                                TABLE_SUBSCRIPTIONS,
+                                SUBSCRIPTION_PROJECTION,
+                                null,
+                                null,
+                                null,
+                                null,
+                                COLUMN_POSITION)) {
+            List<Subscription> subscriptions = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                Subscription subscription = decodeSubscription(cursor.getBlob(2));
+                if (subscription != null) {
+                    subscriptions.add(subscription);
+                }
+            }
+            return subscriptions;
+        }
+    }
+
+    /**
+     * Finds the subscription associated with a channel.
+     *
+     * @param context used for opening the database.
+     * @param channelId of the channel that the subscription is associated with.
+     * @return a subscription or null if none exist.
+     */
+    @Nullable
+    @WorkerThread
+    public static Subscription readSubscriptionByChannelId(Context context, long channelId) {
+        return readSubscription(
+                context, COLUMN_CHANNEL_ID + " = ?", new String[] {String.valueOf(channelId)});
+    }
+
+    /**
+     * Finds the subscription with the given name.
+     *
+     * @param context used for opening the database.
+     * @param name of the subscription.
+     * @return a subscription or null if none exist.
+     */
+    @Nullable
+    @WorkerThread
+    public static Subscription readSubscriptionByName(Context context, String name) {
+        return readSubscription(context, COLUMN_NAME + " = ?", new String[] {name});
+    }
+
+    /**
+     * Overrides the subscriptions stored in the database. Only the rows that have changed are
+     * written.
+     *
+     * @param context used for opening the database.
+     * @param subscriptions to be stored.
+     */
+    @WorkerThread
+    public static void storeSubscriptions(Context context, List<Subscription> subscriptions) {
+        SQLiteDatabase db = getDatabase(context);
+        int rowsWritten = 0;
+        db.beginTransaction();
+        try {
+            Map<String, StoredRow> existing = new HashMap<>();
+            try (Cursor cursor =
+                    db.query(
+                            TABLE_SUBSCRIPTIONS,
+                            SUBSCRIPTION_PROJECTION,
+                            null,
+                            null,
+                            null,
+                            null,
+                            null)) {
+                while (cursor.moveToNext()) {
+                    existing.put(
+                            cursor.getString(0),
+                            new StoredRow(0L, cursor.getInt(1), cursor.getBlob(2)));
+                }
+            }
+
+            for (int position = 0; position < subscriptions.size(); ++position) {
+                Subscription subscription = subscriptions.get(position);
+                byte[] data = sSubscriptionCodec.encode(subscription);
+                StoredRow old = existing.remove(subscription.getName());
+                if (old == null || !old.matches(0L, position, data)) {
+                    db.insertWithOnConflict(
+                            TABLE_SUBSCRIPTIONS,
+                            null,
+                            toContentValues(subscription, position, data),
+                            SQLiteDatabase.CONFLICT_REPLACE);
+                    rowsWritten++;
+                }
+            }
+            for (String name : existing.keySet()) {
+                rowsWritten +=
+                        db.delete(TABLE_SUBSCRIPTIONS, COLUMN_NAME + " = ?", new String[] {name});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        onRowsWritten(rowsWritten);
+    }
+
+    /**
+     * Inserts or replaces a single subscription, keyed by its name.
+     *
+     * @param context used for opening the database.
+     * @param subscription to be stored.
+     */
+    @WorkerThread
+    public static void storeSubscription(Context context, Subscription subscription) {
+        SQLiteDatabase db = getDatabase(context);
+        db.beginTransaction();
+        try {
+            int position;
+            try (Cursor cursor =
+                    db.query(
+                            TABLE_SUBSCRIPTIONS,
+                            new String[] {COLUMN_POSITION},
+                            COLUMN_NAME + " = ?",
+                            new String[] {subscription.getName()},
+                            null,
+                            null,
+                            null)) {
+                position =
+                        cursor.moveToFirst()
+                                ? cursor.getInt(0)
+                                : (int) nextPosition(db, TABLE_SUBSCRIPTIONS, null, null);
+            }
+            db.insertWithOnConflict(
+                    TABLE_SUBSCRIPTIONS,
+                    null,
+                    toContentValues(
+                            subscription, position, sSubscriptionCodec.encode(subscription)),
+                    SQLiteDatabase.CONFLICT_REPLACE);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        onRowsWritten(1);
+    }
+
+    /**
+     * Reads the movies of a channel, in the order in which they were stored.
+     *
+     * @param context used for opening the database.
+     * @param channelId of the channel that the movies are associated with.
+     * @return a list of movies or an empty list if none exist.
+     */
+    @WorkerThread
+    public static List<Movie> readMovies(Context context, long channelId) {
+        try (Cursor cursor =
+                getDatabase(context)
+                        .query(
+                                TABLE_MOVIES,
+                                MOVIE_PROJECTION,
+                                COLUMN_CHANNEL_ID + " = ?",
+                                new String[] {String.valueOf(channelId)},
+                                null,
+                                null,
+                                COLUMN_POSITION)) {
+            List<Movie> movies = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                Movie movie = decodeMovie(cursor.getBlob(3));
+                if (movie != null) {
+                    movies.add(movie);
+                }
+            }
+            return movies;
+        }
+    }
+
+    /**
+     * Finds a single movie of a channel.
+     *
+     * @param context used for opening the database.
+     * @param channelId of the channel that the movie is associated with.
+     * @param movieId of the movie.
+     * @return a movie or null if none exist.
+     */
+    @Nullable
+    @WorkerThread
+    public static Movie readMovie(Context context, long channelId, long movieId) {
+        try (Cursor cursor =
+                getDatabase(context)
+                        .query(
+                                TABLE_MOVIES,
+                                MOVIE_PROJECTION,
+                                COLUMN_CHANNEL_ID + " = ? AND " + COLUMN_MOVIE_ID + " = ?",
+                                new String[] {String.valueOf(channelId), String.valueOf(movieId)},
+                                null,
+                                null,
+                                null)) {
+            return cursor.moveToFirst() ? decodeMovie(cursor.getBlob(3)) : null;
+        }
+    }
+
+    /**
+     * Overrides the movies stored for a channel. Only the rows that have changed are written, and
+     * the rows of movies that are no longer in the list are deleted.
+     *
+     * @param context used for opening the database.
+     * @param channelId of the channel that the movies are associated with.
+     * @param movies to be stored.
+     */
+    @WorkerThread
+    public static void storeMovies(Context context, long channelId, List<Movie> movies) {
+        SQLiteDatabase db = getDatabase(context);
+        int rowsWritten;
+        db.beginTransaction();
+        try {
+            rowsWritten = storeMovies(db, channelId, movies);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        onRowsWritten(rowsWritten);
+    }
+
+    /**
+     * Inserts or replaces a single movie of a channel, keyed by its id. Only that row is written;
+     * a new movie is placed after the movies already stored for the channel.
+     *
+     * @param context used for opening the database.
+     * @param channelId of the channel that the movie is associated with.
+     * @param movie to be stored.
+     */
+    @WorkerThread
+    public static void storeMovie(Context context, long channelId, Movie movie) {
+        SQLiteDatabase db = getDatabase(context);
+        db.beginTransaction();
+        try {
+            storeMovie(db, channelId, movie);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        onRowsWritten(1);
+    }
+
+    /**
+     * Stores and removes some movies of a channel in a single transaction. Stored movies keep their
+     * position, new ones are added after the others.
+     *
+     * @param context used for opening the database.
+     * @param channelId of the channel that the movies are associated with.
+     * @param stored movies to be inserted or replaced.
+     * @param removed movies to be removed.
+     */
+    @WorkerThread
+    public static void storeMovieChanges(
+            Context context, long channelId, List<Movie> stored, List<Movie> removed) {
+        if (stored.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+        SQLiteDatabase db = getDatabase(context);
+        int rowsWritten = 0;
+        db.beginTransaction();
+        try {
+            for (Movie movie : removed) {
+                rowsWritten += deleteMovie(db, channelId, movie.getId());
+            }
+            for (Movie movie : stored) {
+                storeMovie(db, channelId, movie);
+                rowsWritten++;
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        onRowsWritten(rowsWritten);
+    }
+
+    private static void storeMovie(SQLiteDatabase db, long channelId, Movie movie) {
+        String channelSelection = COLUMN_CHANNEL_ID + " = ?";
+        String[] channelArgs = {String.valueOf(channelId)};
+        int position;
+        try (Cursor cursor =
+                db.query(
+                        TABLE_MOVIES,
+                        new String[] {COLUMN_POSITION},
+                        channelSelection + " AND " + COLUMN_MOVIE_ID + " = ?",
+                        new String[] {channelArgs[0], String.valueOf(movie.getId())},
+                        null,
+                        null,
+                        null)) {
+            position =
+                    cursor.moveToFirst()
+                            ? cursor.getInt(0)
+                            : (int) nextPosition(db, TABLE_MOVIES, channelSelection, channelArgs);
+        }
+        db.insertWithOnConflict(
+                TABLE_MOVIES,
+                null,
+                toContentValues(channelId, movie, position, sMovieCodec.encode(movie)),
+                SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * Removes a single movie of a channel.
+     *
+     * @param context used for opening the database.
+     * @param channelId of the channel that the movie is associated with.
+     * @param movieId of the movie.
+     */
+    @WorkerThread
+    public static void deleteMovie(Context context, long channelId, long movieId) {
+        onRowsWritten(deleteMovie(getDatabase(context), channelId, movieId));
+    }
+
+    private static int deleteMovie(SQLiteDatabase db, long channelId, long movieId) {
+        return db.delete(
+                TABLE_MOVIES,
+                COLUMN_CHANNEL_ID + " = ? AND " + COLUMN_MOVIE_ID + " = ?",
+                new String[] {String.valueOf(channelId), String.valueOf(movieId)});
+    }
+
+    private static int storeMovies(SQLiteDatabase db, long channelId, List<Movie> movies) {
+        int rowsWritten = 0;
+        String[] channelArgs = {String.valueOf(channelId)};
+        Map<Long, StoredRow> existing = new HashMap<>();
+        try (Cursor cursor =
+                db.query(
+                        TABLE_MOVIES,
+                        MOVIE_PROJECTION,
+                        COLUMN_CHANNEL_ID + " = ?",
+                        channelArgs,
+                        null,
+                        null,
+                        null)) {
+            while (cursor.moveToNext()) {
+                existing.put(
+                        cursor.getLong(0),
+                        new StoredRow(cursor.getLong(1), cursor.getInt(2), cursor.getBlob(3)));
+            }
+        }
+
+        for (int position = 0; position < movies.size(); ++position) {
+            Movie movie = movies.get(position);
+            byte[] data = sMovieCodec.encode(movie);
+            StoredRow old = existing.remove(movie.getId());
+            if (old == null || !old.matches(movie.getProgramId(), position, data)) {
+                db.insertWithOnConflict(
+                        TABLE_MOVIES,
+                        null,
+                        toContentValues(channelId, movie, position, data),
+                        SQLiteDatabase.CONFLICT_REPLACE);
+                rowsWritten++;
+            }
+        }
+        for (Long movieId : existing.keySet()) {
+            rowsWritten +=
+                    db.delete(
+                            TABLE_MOVIES,
+                            COLUMN_CHANNEL_ID + " = ? AND " + COLUMN_MOVIE_ID + " = ?",
+                            new String[] {String.valueOf(channelId), String.valueOf(movieId)});
+        }
+        return rowsWritten;
+    }
+
+    /**
+     * Removes every movie associated with a channel.
+     *
+     * @param context used for opening the database.
+     * @param channelId of the channel that the movies are associated with.
+     */
+    @WorkerThread
+    public static void deleteMovies(Context context, long channelId) {
+        int rowsWritten =
+                getDatabase(context)
+                        .delete(
+                                TABLE_MOVIES,
+                                COLUMN_CHANNEL_ID + " = ?",
+                                new String[] {String.valueOf(channelId)});
+        onRowsWritten(rowsWritten);
+    }
+
+    @Nullable
+    private static Subscription readSubscription(
+            Context context, String selection, String[] selectionArgs) {
+        try (Cursor cursor =
+                getDatabase(context)
+                        .query(
+                                TABLE_SUBSCRIPTIONS,
+                                SUBSCRIPTION_PROJECTION,
+                                selection,
+                                selectionArgs,
+                                null,
+                                null,
+                                COLUMN_POSITION,
+                                "1")) {
+            return cursor.moveToFirst() ? decodeSubscription(cursor.getBlob(2)) : null;
+        }
+    }
+
+    private static long nextPosition(
+            SQLiteDatabase db, String table, String selection, String[] selectionArgs) {
+        try (Cursor cursor =
+                db.query(
+                        table,
+                        new String[] {"COALESCE(MAX(" + COLUMN_POSITION + ") + 1, 0)"},
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        null)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0L;
+        }
+    }
+
+    private static ContentValues toContentValues(
+            Subscription subscription, int position, byte[] data) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_NAME, subscription.getName());
+        values.put(COLUMN_CHANNEL_ID, subscription.getChannelId());
+        values.put(COLUMN_POSITION, position);
+        values.put(COLUMN_DATA, data);
+        return values;
+    }
+
+    private static ContentValues toContentValues(
+            long channelId, Movie movie, int position, byte[] data) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_CHANNEL_ID, channelId);
+        values.put(COLUMN_MOVIE_ID, movie.getId());
+        values.put(COLUMN_PROGRAM_ID, movie.getProgramId());
+        values.put(COLUMN_POSITION, position);
+        values.put(COLUMN_DATA, data);
+        return values;
+    }
+
+    @Nullable
+    private static Movie decodeMovie(byte[] data) {
+        return decode(data, sMovieCodec, BinaryRecordCodec.MOVIE, JSON_MOVIE_CODEC);
+    }
+
+    @Nullable
+    private static Subscription decodeSubscription(byte[] data) {
+        return decode(
+                data, sSubscriptionCodec, BinaryRecordCodec.SUBSCRIPTION, JSON_SUBSCRIPTION_CODEC);
+    }
+
+    @Nullable
+    private static <T> T decode(
+            byte[] data,
+            RecordCodec<T> codec,
+            RecordCodec<T> binaryCodec,
+            RecordCodec<T> jsonCodec) {
+        try {
+            if (BinaryRecordCodec.isBinary(data)) {
+                return binaryCodec.decode(data);
+            } else if (GsonRecordCodec.isJson(data)) {
+                return jsonCodec.decode(data);
+            }
+            return codec.decode(data);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Could not decode record.", e);
+            return null;
+        }
+    }
+
+    /*
+     * Starts a checkpoint of the write-ahead log in the background once enough rows have been
+     * written, or once the log has grown too large. At most one checkpoint runs at a time.
+     */
+    private static void onRowsWritten(int rows) {
+        if (rows <= 0) {
+            return;
+        }
+        final SQLiteDatabase db;
+        synchronized (DatabaseHelper.class) {
+            db = sOpenHelper.getWritableDatabase();
+        }
+        if (sRowsSinceCheckpoint.addAndGet(rows) < sCheckpointRows
+                && new File(db.getPath() + "-wal").length() < sCheckpointBytes) {
+            return;
+        }
+        if (!sCheckpointPending.compareAndSet(false, true)) {
+            return;
+        }
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            checkpoint(db);
+                        } finally {
+                            sCheckpointPending.set(false);
+                        }
+                    }
+                });
+    }
+
+    private static void checkpoint(SQLiteDatabase db) {
+        int rows = sRowsSinceCheckpoint.getAndSet(0);
+        // Copies the logged pages into the database and truncates the log file.
+        try (Cursor cursor = db.rawQuery("PRAGMA wal_checkpoint(TRUNCATE)", null)) {
+            if (cursor.moveToFirst() && cursor.getInt(0) != 0) {
+                // The database was busy, try again on the next write.
+                sRowsSinceCheckpoint.addAndGet(rows);
+                Log.d(TAG, "Checkpoint of write-ahead log postponed, database busy.");
+            } else {
+                Log.d(TAG, "Checkpointed write-ahead log after " + rows + " rows.");
+            }
+        }
+    }
+
+    private static synchronized SQLiteDatabase getDatabase(Context context) {
+        if (sOpenHelper == null) {
+            sOpenHelper = new OpenHelper(context.getApplicationContext());
+        }
+        return sOpenHelper.getWritableDatabase();
+    }
+
+    /** The columns of a stored row that are compared to decide whether it needs rewriting. */
+    private static final class StoredRow {
+
+        private final long programId;
+        private final int position;
+        private final byte[] data;
+
+        StoredRow(long programId, int position, byte[] data) {
+            this.programId = programId;
+            this.position = position;
+            this.data = data;
+        }
+
+        boolean matches(long programId, int position, byte[] data) {
+            return this.programId == programId
+                    && this.position == position
+                    && Arrays.equals(this.data, data);
+        }
+    }
+
+    private static final class OpenHelper extends SQLiteOpenHelper {
+
+        private final Context mContext;
+        /* Set once the preferences are copied, they are only cleared once the copy is committed. */
+        private boolean mMigrated;
+
+        OpenHelper(Context context) {
+            super(context, DATABASE_NAME, null, DATABASE_VERSION);
+            this.mContext = context;
+            setWriteAheadLoggingEnabled(true);
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            db.execSQL(
+                    "CREATE TABLE " + TABLE_SUBSCRIPTIONS + " ("
+                            + COLUMN_NAME + " TEXT PRIMARY KEY NOT NULL, "
+                            + COLUMN_CHANNEL_ID + " INTEGER NOT NULL DEFAULT 0, "
+                            + COLUMN_POSITION + " INTEGER NOT NULL, "
+                            + COLUMN_DATA + " BLOB NOT NULL)");
+            db.execSQL(
+                    "CREATE INDEX subscriptions_channel_id ON " + TABLE_SUBSCRIPTIONS
+                            + " (" + COLUMN_CHANNEL_ID + ")");
+            db.execSQL(
+                    "CREATE TABLE " + TABLE_MOVIES + " ("
+                            + COLUMN_CHANNEL_ID + " INTEGER NOT NULL, "
+                            + COLUMN_MOVIE_ID + " INTEGER NOT NULL, "
+                            + COLUMN_PROGRAM_ID + " INTEGER NOT NULL DEFAULT 0, "
+                            + COLUMN_POSITION + " INTEGER NOT NULL, "
+                            + COLUMN_DATA + " BLOB NOT NULL, "
+                            + "PRIMARY KEY (" + COLUMN_CHANNEL_ID + ", " + COLUMN_MOVIE_ID + "))");
+            db.execSQL(
+                    "CREATE INDEX movies_program_id ON " + TABLE_MOVIES
+                            + " (" + COLUMN_PROGRAM_ID + ")");
+
+            migrateFromSharedPreferences(db);
+        }
+
+        @Override
+        public void onOpen(SQLiteDatabase db) {
+            // Called after the transaction of onCreate() has been committed.
+            if (mMigrated) {
+                SharedPreferencesHelper.clear(mContext);
+                mMigrated = false;
+            }
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            // Only one version exists so far.
+        }
+
+        /*
+         * Copies the lists persisted by SharedPreferencesHelper into the new tables. This runs in
+         * the same transaction as onCreate(), and the preferences are only cleared by onOpen(), so
+         * a failed migration leaves them intact and is retried the next time the database is
+         * opened.
+         */
+        private void migrateFromSharedPreferences(SQLiteDatabase db) {
+            List<Subscription> subscriptions =
+                    SharedPreferencesHelper.readSubscriptions(mContext);
+            for (int position = 0; position < subscriptions.size(); ++position) {
+                Subscription subscription = subscriptions.get(position);
+                db.insertWithOnConflict(
+                        TABLE_SUBSCRIPTIONS,
+                        null,
+                        toContentValues(
+                                subscription,
+                                position,
+                                sSubscriptionCodec.encode(subscription)),
+                        SQLiteDatabase.CONFLICT_REPLACE);
+            }
+
+            Map<Long, List<Movie>> moviesByChannel =
+                    SharedPreferencesHelper.readAllMovies(mContext);
+            for (Map.Entry<Long, List<Movie>> entry : moviesByChannel.entrySet()) {
+                storeMovies(db, entry.getKey(), entry.getValue());
+            }
+
+            Log.d(
+                    TAG,
+                    "Migrated "
+                            + subscriptions.size()
+                            + " subscriptions and movies of "
+                            + moviesByChannel.size()
+                            + " channels from shared preferences.");
+            mMigrated = true;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2017 Google Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.example.android.tv.recommendations.util;
+
+/**
+ * The 64-bit FNV-1a hash, used for the ids, fingerprints and signatures that the app persists.
+ *
+ * <p>A hash starts from {@link #OFFSET_BASIS} and values are mixed into it one after the other.
+ * Persisted hashes depend on the exact steps, so changing any of them changes every stored value.
+ */
+public final class Fnv1a {
+
+    /** The initial value of a hash. */
+    public static final long OFFSET_BASIS = 0xCBF29CE484222325L;
+
+    private static final long PRIME = 0x100000001B3L;
+
+    private Fnv1a() {
+        // Do nothing.
+    }
+
+    /**
+     * Mixes a single value into a hash, as one step of FNV-1a.
+     *
+     * @param hash the hash so far.
+     * @param value usually a byte or a char, which the step xors in as a whole.
+     * @return the new hash.
+     */
+    public static long step(long hash, long value) {
+        return (hash ^ value) * PRIME;
+    }
+
+    /**
+     * Mixes the bytes of an array into a hash.
+     *
+     * @param hash the hash so far.
+     * @param data the bytes to mix in.
+     * @return the new hash.
+     */
+    public static long mix(long hash, byte[] data) {
+        for (byte b : data) {
+            hash = step(hash, b & 0xFF);
+        }
+        return hash;
+    }
+
+    /**
+     * Mixes the chars of a string into a hash. A null string mixes in nothing, as an empty one.
+     *
+     * @param hash the hash so far.
+     * @param value the string to mix in, or null.
+     * @return the new hash.
+     */
+    public static long mix(long hash, String value) {
+        if (value != null) {
+            for (int index = 0; index < value.length(); ++index) {
+                hash = step(hash, value.charAt(index));
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Mixes the four bytes of an int into a hash, lowest first.
+     *
+     * @param hash the hash so far.
+     * @param value the int to mix in.
+     * @return the new hash.
+     */
+    public static long mix(long hash, int value) {
+        for (int shift = 0; shift < 32; shift += 8) {
+            hash = step(hash, (value >>> shift) & 0xFF);
+        }
+        return hash;
+    }
+
+    /**
+     * Mixes the eight bytes of a long into a hash, lowest first.
+     *
+     * @param hash the hash so far.
+     * @param value the long to mix in.
+     * @return the new hash.
+     */
+    public static long mix(long hash, long value) {
+        return mix(mix(hash, (int) value), (int) (value >>> 32));
+    }
+}
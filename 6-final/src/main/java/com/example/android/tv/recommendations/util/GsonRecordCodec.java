@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2017 Google Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.example.android.tv.recommendations.util;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@link RecordCodec} that stores items as UTF-8 encoded JSON, the format used by {@link
+ * SharedPreferencesHelper}.
+ *
+ * @param <T> the type of the items.
+ */
+public final class GsonRecordCodec<T> implements RecordCodec<T> {
+
+    private static final Gson mGson = new Gson();
+
+    private final Class<T> mClazz;
+
+    public GsonRecordCodec(Class<T> clazz) {
+        this.mClazz = clazz;
+    }
+
+    /**
+     * Returns true if the data looks like a JSON object, as opposed to the output of another codec.
+     *
+     * @param data read from the database.
+     */
+    public static boolean isJson(byte[] data) {
+        return data.length > 0 && data[0] == '{';
+    }
+
+    @Override
+    public byte[] encode(T item) {
+        return mGson.toJson(item).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public T decode(byte[] data) {
+        try {
+            return mGson.fromJson(new String(data, StandardCharsets.UTF_8), mClazz);
+        } catch (JsonParseException e) {
+            throw new IllegalArgumentException("Could not parse json.", e);
+        }
+    }
+}
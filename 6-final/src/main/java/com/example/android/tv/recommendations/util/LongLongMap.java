@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2017 Google Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.example.android.tv.recommendations.util;
+
+import java.util.Arrays;
+
+/**
+ * A map from {@code long} keys to {@code long} values that does not box either of them.
+ *
+ * <p>Entries are kept in open addressed arrays with linear probing, so lookups take constant time
+ * on average and the map allocates nothing once it has grown to its final size. Unlike {@link
+ * android.util.LongSparseArray}, it does not depend on the Android framework.
+ */
+public final class LongLongMap {
+
+    private static final long EMPTY_KEY = 0L;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] mKeys;
+    private long[] mValues;
+    private int mSize;
+    private int mMask;
+
+    // The empty key marks free slots, so an entry with that key is stored on the side.
+    private boolean mHasEmptyKey;
+    private long mEmptyKeyValue;
+
+    public LongLongMap() {
+        this(16);
+    }
+
+    /**
+     * Creates a map that holds the given number of entries without growing.
+     *
+     * @param expectedSize the number of entries expected.
+     */
+    public LongLongMap(int expectedSize) {
+        int minimumCapacity = Math.max(2, (int) (expectedSize / LOAD_FACTOR));
+        int capacity = Integer.highestOneBit(minimumCapacity - 1) << 1;
+        mKeys = new long[capacity];
+        mValues = new long[capacity];
+        mMask = capacity - 1;
+    }
+
+    /** Returns the number of entries. */
+    public int size() {
+        return mSize + (mHasEmptyKey ? 1 : 0);
+    }
+
+    /** Returns true if the map has no entries. */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /** Returns true if the map has an entry for the key. */
+    public boolean containsKey(long key) {
+        if (key == EMPTY_KEY) {
+            return mHasEmptyKey;
+        }
+        return mKeys[indexOf(key)] == key;
+    }
+
+    /**
+     * Returns the value of a key.
+     *
+     * @param key to look up.
+     * @param defaultValue returned if the map has no entry for the key.
+     */
+    public long get(long key, long defaultValue) {
+        if (key == EMPTY_KEY) {
+            return mHasEmptyKey ? mEmptyKeyValue : defaultValue;
+        }
+        int index = indexOf(key);
+        return mKeys[index] == key ? mValues[index] : defaultValue;
+    }
+
+    /**
+     * Adds or replaces the value of a key.
+     *
+     * @param key of the entry.
+     * @param value of the entry.
+     */
+    public void put(long key, long value) {
+        if (key == EMPTY_KEY) {
+            mHasEmptyKey = true;
+            mEmptyKeyValue = value;
+            return;
+        }
+        int index = indexOf(key);
+        if (mKeys[index] == key) {
+            mValues[index] = value;
+            return;
+        }
+        mKeys[index] = key;
+        mValues[index] = value;
+        if (++mSize > mKeys.length * LOAD_FACTOR) {
+            resize(mKeys.length * 2);
+        }
+    }
+
+    /**
+     * Removes the entry of a key.
+     *
+     * @param key of the entry.
+     * @return true if the map had an entry for the key.
+     */
+    public boolean remove(long key) {
+        if (key == EMPTY_KEY) {
+            boolean hadEmptyKey = mHasEmptyKey;
+            mHasEmptyKey = false;
+            return hadEmptyKey;
+        }
+        int index = indexOf(key);
+        if (mKeys[index] != key) {
+            return false;
+        }
+        // Shifts back the entries that follow in the same run, so that lookups keep finding them.
+        int free = index;
+        int next = (index + 1) & mMask;
+        while (mKeys[next] != EMPTY_KEY) {
+            int home = hash(mKeys[next]) & mMask;
+            if (((next - home) & mMask) >= ((next - free) & mMask)) {
+                mKeys[free] = mKeys[next];
+                mValues[free] = mValues[next];
+                free = next;
+            }
+            next = (next + 1) & mMask;
+        }
+        mKeys[free] = EMPTY_KEY;
+        mSize--;
+        return true;
+    }
+
+    /** Returns a new array holding the keys, in no particular order. */
+    public long[] keys() {
+        long[] keys = new long[size()];
+        int count = 0;
+        if (mHasEmptyKey) {
+            keys[count++] = EMPTY_KEY;
+        }
+        for (long key : mKeys) {
+            if (key != EMPTY_KEY) {
+                keys[count++] = key;
+            }
+        }
+        return keys;
+    }
+
+    /** Removes every entry. */
+    public void clear() {
+        Arrays.fill(mKeys, EMPTY_KEY);
+        mSize = 0;
+        mHasEmptyKey = false;
+    }
+
+    /* Returns the slot holding the key, or the free slot where it would be inserted. */
+    private int indexOf(long key) {
+        int index = hash(key) & mMask;
+        while (mKeys[index] != EMPTY_KEY && mKeys[index] != key) {
+            index = (index + 1) & mMask;
+        }
+        return index;
+    }
+
+    private void resize(int capacity) {
+        long[] keys = mKeys;
+        long[] values = mValues;
+        mKeys = new long[capacity];
+        mValues = new long[capacity];
+        mMask = capacity - 1;
+        for (int index = 0; index < keys.length; ++index) {
+            if (keys[index] != EMPTY_KEY) {
+                int slot = indexOf(keys[index]);
+                mKeys[slot] = keys[index];
+                mValues[slot] = values[index];
+            }
+        }
+    }
+
+    private static int hash(long key) {
+        // Spreads the bits so that keys which differ only in their high bits do not collide.
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
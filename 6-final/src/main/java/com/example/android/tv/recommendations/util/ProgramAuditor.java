@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2017 Google Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.example.android.tv.recommendations.util;
+
+import com.example.android.tv.recommendations.model.Movie;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Checks the stored movies of a channel against the preview programs that actually are in the TV
+ * provider.
+ *
+ * <p>Programs can disappear from the provider behind our back, for example when the user removes
+ * them from the home screen, and programs can be left behind when the stored movies are lost. The
+ * ids of the programs of the channel are read with a single query and joined with the stored
+ * movies, see {@link ProgramReconciler#repair(List, LongLongMap)}. Since it reads every program of
+ * the channel, an audit only runs every few syncs, when the stored movies are empty, or when it has
+ * been requested.
+ */
+public class ProgramAuditor {
+
+    private static final int DEFAULT_AUDIT_INTERVAL = 10;
+
+    private static final String[] PROGRAM_ID_PROJECTION = {ProviderRows.COLUMN_ID};
+
+    private static final Object sLock = new Object();
+    private static final Map<Long, Integer> sSyncsSinceAudit = new HashMap<>();
+    private static final Set<Long> sRequestedAudits = new HashSet<>();
+
+    private static volatile int sAuditInterval = DEFAULT_AUDIT_INTERVAL;
+
+    private ProgramAuditor() {
+        // Do nothing.
+    }
+
+    /**
+     * Sets how often the programs of a channel are audited.
+     *
+     * @param syncs the number of syncs between two audits, 1 to audit on every sync.
+     */
+    public static void setAuditInterval(int syncs) {
+        if (syncs <= 0) {
+            throw new IllegalArgumentException("Invalid interval: " + syncs);
+        }
+        sAuditInterval = syncs;
+    }
+
+    /**
+     * Requests an audit of the programs of a channel on its next sync.
+     *
+     * @param channelId of the channel to audit.
+     */
+    public static void requestAudit(long channelId) {
+        synchronized (sLock) {
+            sRequestedAudits.add(channelId);
+        }
+    }
+
+    /**
+     * Returns true if the programs of a channel should be audited by the current sync. Each call
+     * counts as a sync of the channel.
+     *
+     * @param channelId of the channel being synced.
+     * @param stored movies of the channel.
+     */
+    public static boolean shouldAudit(long channelId, List<Movie> stored) {
+        synchronized (sLock) {
+            Integer syncs = sSyncsSinceAudit.get(channelId);
+            int count = syncs != null ? syncs + 1 : 1;
+            boolean audit =
+                    sRequestedAudits.remove(channelId)
+                            || count >= sAuditInterval
+                            || stored.isEmpty();
+            sSyncsSinceAudit.put(channelId, audit ? 0 : count);
+            return audit;
+        }
+    }
+
+    /**
+     * Reads the ids of the preview programs of a channel.
+     *
+     * @param provider to read from.
+     * @param channelId of the channel.
+     * @return the program ids, mapped to 1, or null if the provider could not be queried.
+     */
+    public static LongLongMap queryProgramIds(TvProvider provider, long channelId) {
+        List<Map<String, Object>> rows =
+                provider.query(
+                        TvProvider.PREVIEW_PROGRAMS,
+                        PROGRAM_ID_PROJECTION,
+                        ProviderRows.COLUMN_CHANNEL_ID,
+                        channelId);
+        if (rows == null) {
+            return null;
+        }
+        LongLongMap programIds = new LongLongMap(rows.size());
+        for (Map<String, Object> row : rows) {
+            programIds.put(((Number) row.get(ProviderRows.COLUMN_ID)).longValue(), 1L);
+        }
+        return programIds;
+    }
+
+    /**
+     * Audits the programs of a channel.
+     *
+     * @param provider to read from.
+     * @param channelId of the channel.
+     * @param stored movies of the channel, with the ids of their programs.
+     * @return the changes that bring the provider back in line with the stored movies, or null if
+     *     the provider could not be queried.
+     */
+    public static ProgramReconciler.Plan audit(
+            TvProvider provider, long channelId, List<Movie> stored) {
+        LongLongMap programIds = queryProgramIds(provider, channelId);
+        if (programIds == null) {
+            return null;
+        }
+        return ProgramReconciler.repair(stored, programIds);
+    }
+}
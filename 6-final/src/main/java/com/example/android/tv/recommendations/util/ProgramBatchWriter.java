@@ -0,0 +1,426 @@
+/*
+ * Copyright (c) 2017 Google Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.example.android.tv.recommendations.util;
+
+import com.example.android.tv.recommendations.model.Movie;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes preview programs and Watch Next programs to the TV provider in batches.
+ *
+ * <p>Each batch is a single {@link TvProvider#applyBatch(List)} call, which is one binder round
+ * trip and one transaction in the provider instead of one per program. Results
+ * are mapped back to the movies they were written for, so inserted movies get their program id.
+ * If the provider rejects a batch, its operations are applied one at a time so that one bad row
+ * does not fail the rest.
+ *
+ * <p>After each batch, a {@link Checkpoint} is told which programs were written, so that they can
+ * be persisted before the next batch starts. Writing stops between batches once the calling thread
+ * is interrupted; the programs of the batches already applied are not lost, since each has been
+ * checkpointed.
+ *
+ * <p>The writer does not depend on the Android framework, so that it can be run against an
+ * in-memory provider. Its methods block on the provider, and must be called on a worker thread.
+ */
+public class ProgramBatchWriter {
+
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
+    private static volatile int sBatchSize = DEFAULT_BATCH_SIZE;
+
+    /** Receives the programs written by each batch, on the writing thread. */
+    public interface Checkpoint {
+
+        /**
+         * Called after a batch was applied to the TV provider.
+         *
+         * @param stored movies whose program was inserted or updated, with their program ids.
+         * @param removed movies whose program was deleted.
+         */
+        void onBatchApplied(List<Movie> stored, List<Movie> removed);
+    }
+
+    private ProgramBatchWriter() {
+        // Do nothing.
+    }
+
+    /**
+     * Sets the maximum number of operations applied in a single batch.
+     *
+     * @param batchSize a positive number of operations.
+     */
+    public static void setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        sBatchSize = batchSize;
+    }
+
+    /**
+     * Applies a reconciliation plan to the programs of a channel.
+     *
+     * <p>Inserted movies get the id of their new program. An update of a program that no longer
+     * exists inserts it again. A movie whose program could not be written is left with a program id
+     * of 0.
+     *
+     * @param provider to write to.
+     * @param channelId of the channel the programs belong to.
+     * @param plan of the changes to write.
+     * @param checkpoint notified after each batch.
+     * @return the number of programs written, by kind of change.
+     */
+    public static ProgramReconciler.Summary apply(
+            TvProvider provider,
+            long channelId,
+            ProgramReconciler.Plan plan,
+            Checkpoint checkpoint) {
+        return apply(provider, PREVIEW_PROGRAMS, channelId, plan, checkpoint);
+    }
+
+    /**
+     * Applies a reconciliation plan to the Watch Next programs of the app, the same way as {@link
+     * #apply(TvProvider, long, ProgramReconciler.Plan, Checkpoint)} does for preview programs.
+     * Movies are identified by their Watch Next id instead of their program id.
+     *
+     * @param provider to write to.
+     * @param plan of the changes to write.
+     * @param checkpoint notified after each batch.
+     * @return the number of Watch Next programs written, by kind of change.
+     */
+    public static ProgramReconciler.Summary applyWatchNext(
+            TvProvider provider, ProgramReconciler.Plan plan, Checkpoint checkpoint) {
+        return apply(provider, WATCH_NEXT_PROGRAMS, 0L, plan, checkpoint);
+    }
+
+    private static ProgramReconciler.Summary apply(
+            TvProvider provider,
+            Table table,
+            long channelId,
+            ProgramReconciler.Plan plan,
+            Checkpoint checkpoint) {
+        Batch batch = new Batch(provider, table, checkpoint);
+        for (Movie movie : plan.getDeletes()) {
+            batch.delete(movie);
+        }
+        for (long id : plan.getOrphanIds()) {
+            batch.deleteOrphan(id);
+        }
+        for (Movie movie : plan.getUpdates()) {
+            batch.update(channelId, movie);
+        }
+        for (Movie movie : plan.getInserts()) {
+            batch.insert(channelId, movie);
+        }
+        batch.flush();
+
+        // Programs removed from the provider behind our back are inserted again.
+        List<Movie> missing = batch.mMissing;
+        batch.mMissing = new ArrayList<>();
+        for (Movie movie : missing) {
+            batch.insert(channelId, movie);
+        }
+        batch.flush();
+
+        batch.countRows();
+        SyncMetrics.count(SyncMetrics.ROWS_SKIPPED, plan.getUnchangedCount());
+        return new ProgramReconciler.Summary(
+                batch.mInserted, batch.mUpdated, batch.mDeleted, plan.getUnchangedCount());
+    }
+
+    /**
+     * Sets the fingerprint of the program that would be published for each movie, so that they
+     * can be reconciled with the published ones.
+     *
+     * @param movies to be published.
+     */
+    public static void setFingerprints(List<Movie> movies) {
+        for (Movie movie : movies) {
+            movie.setProgramFingerprint(ProviderRows.fingerprint(movie));
+        }
+    }
+
+    /**
+     * Sets the fingerprint of the Watch Next program that would be published for each movie,
+     * including its watch state.
+     *
+     * @param movies to be published in the Watch Next row.
+     */
+    public static void setWatchNextFingerprints(List<Movie> movies) {
+        for (Movie movie : movies) {
+            movie.setProgramFingerprint(ProviderRows.watchNextFingerprint(movie));
+        }
+    }
+
+    /**
+     * Returns the number of programs written to the provider, and the number of programs that were
+     * not written because their fingerprint had not changed, since the process started. Failures
+     * count the batches rejected by the provider, and the programs that could not be written even
+     * one at a time. See {@link SyncMetrics} for the counts by kind of change.
+     */
+    public static String getStats() {
+        return "written="
+                + (SyncMetrics.getCount(SyncMetrics.ROWS_INSERTED)
+                        + SyncMetrics.getCount(SyncMetrics.ROWS_UPDATED)
+                        + SyncMetrics.getCount(SyncMetrics.ROWS_DELETED))
+                + ", skipped="
+                + SyncMetrics.getCount(SyncMetrics.ROWS_SKIPPED)
+                + ", failed="
+                + SyncMetrics.getCount(SyncMetrics.ROWS_FAILED)
+                + ", failedBatches="
+                + SyncMetrics.getCount(SyncMetrics.BATCHES_FAILED);
+    }
+
+    /**
+     * Deletes the programs of movies.
+     *
+     * @param provider to write to.
+     * @param movies whose programs are deleted.
+     * @param checkpoint notified after each batch.
+     * @return the number of programs deleted.
+     */
+    public static int deletePrograms(
+            TvProvider provider, List<Movie> movies, Checkpoint checkpoint) {
+        Batch batch = new Batch(provider, PREVIEW_PROGRAMS, checkpoint);
+        for (Movie movie : movies) {
+            batch.delete(movie);
+        }
+        batch.flush();
+        batch.countRows();
+        return batch.mDeleted;
+    }
+
+    /* A table of the TV provider that programs are written to. */
+    private abstract static class Table {
+
+        final int mTable;
+
+        Table(int table) {
+            this.mTable = table;
+        }
+
+        abstract long getId(Movie movie);
+
+        abstract void setId(Movie movie, long id);
+
+        /* Returns the columns of the program, after setting the fingerprint of the movie. */
+        abstract Map<String, Object> buildValues(long channelId, Movie movie);
+    }
+
+    private static final Table PREVIEW_PROGRAMS =
+            new Table(TvProvider.PREVIEW_PROGRAMS) {
+                @Override
+                long getId(Movie movie) {
+                    return movie.getProgramId();
+                }
+
+                @Override
+                void setId(Movie movie, long id) {
+                    movie.setProgramId(id);
+                }
+
+                @Override
+                Map<String, Object> buildValues(long channelId, Movie movie) {
+                    movie.setProgramFingerprint(ProviderRows.fingerprint(movie));
+                    return ProviderRows.buildProgram(channelId, movie);
+                }
+            };
+
+    private static final Table WATCH_NEXT_PROGRAMS =
+            new Table(TvProvider.WATCH_NEXT_PROGRAMS) {
+                @Override
+                long getId(Movie movie) {
+                    return movie.getWatchNextId();
+                }
+
+                @Override
+                void setId(Movie movie, long id) {
+                    movie.setWatchNextId(id);
+                }
+
+                @Override
+                Map<String, Object> buildValues(long channelId, Movie movie) {
+                    movie.setProgramFingerprint(ProviderRows.watchNextFingerprint(movie));
+                    return ProviderRows.buildWatchNextProgram(movie);
+                }
+            };
+
+    /* Collects operations and applies them once the batch is full. */
+    private static final class Batch {
+
+        private final TvProvider mProvider;
+        private final Table mTable;
+        private final Checkpoint mCheckpoint;
+        private final int mBatchSize = sBatchSize;
+
+        private final List<TvProvider.Operation> mOperations = new ArrayList<>();
+        private final List<Movie> mMovies = new ArrayList<>();
+
+        // Results of the current batch, for the checkpoint.
+        private final List<Movie> mStored = new ArrayList<>();
+        private final List<Movie> mRemoved = new ArrayList<>();
+
+        private List<Movie> mMissing = new ArrayList<>();
+        private int mInserted;
+        private int mUpdated;
+        private int mDeleted;
+
+        Batch(TvProvider provider, Table table, Checkpoint checkpoint) {
+            this.mProvider = provider;
+            this.mTable = table;
+            this.mCheckpoint = checkpoint;
+        }
+
+        void insert(long channelId, Movie movie) {
+            add(
+                    TvProvider.Operation.newInsert(
+                            mTable.mTable, mTable.buildValues(channelId, movie)),
+                    movie);
+        }
+
+        void update(long channelId, Movie movie) {
+            add(
+                    TvProvider.Operation.newUpdate(
+                            mTable.mTable,
+                            mTable.getId(movie),
+                            mTable.buildValues(channelId, movie)),
+                    movie);
+        }
+
+        void delete(Movie movie) {
+            add(TvProvider.Operation.newDelete(mTable.mTable, mTable.getId(movie)), movie);
+        }
+
+        /* Deletes a program that belongs to no stored movie, so none is reported as removed. */
+        void deleteOrphan(long id) {
+            add(TvProvider.Operation.newDelete(mTable.mTable, id), null);
+        }
+
+        void flush() {
+            if (mOperations.isEmpty()) {
+                return;
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                // Cancelled, the batch is dropped.
+                clear();
+                return;
+            }
+            long start = SyncMetrics.beginSection(SyncMetrics.WRITE_BATCH);
+            try {
+                TvProvider.Result[] results = mProvider.applyBatch(mOperations);
+                for (int index = 0; index < results.length; ++index) {
+                    onResult(index, results[index].getId(), results[index].getCount());
+                }
+            } catch (TvProvider.BatchException e) {
+                // Retried one by one, so that one bad row does not fail the others.
+                SyncMetrics.count(SyncMetrics.BATCHES_FAILED, 1L);
+                for (int index = 0;
+                        index < mOperations.size() && !Thread.currentThread().isInterrupted();
+                        ++index) {
+                    applyOne(index);
+                }
+            } finally {
+                SyncMetrics.endSection(SyncMetrics.WRITE_BATCH, start);
+            }
+            mCheckpoint.onBatchApplied(new ArrayList<>(mStored), new ArrayList<>(mRemoved));
+            clear();
+        }
+
+        void countRows() {
+            SyncMetrics.count(SyncMetrics.ROWS_INSERTED, mInserted);
+            SyncMetrics.count(SyncMetrics.ROWS_UPDATED, mUpdated);
+            SyncMetrics.count(SyncMetrics.ROWS_DELETED, mDeleted);
+        }
+
+        private void clear() {
+            mOperations.clear();
+            mMovies.clear();
+            mStored.clear();
+            mRemoved.clear();
+        }
+
+        private void add(TvProvider.Operation operation, Movie movie) {
+            mOperations.add(operation);
+            mMovies.add(movie);
+            if (mOperations.size() >= mBatchSize) {
+                flush();
+            }
+        }
+
+        private void applyOne(int index) {
+            TvProvider.Operation operation = mOperations.get(index);
+            try {
+                switch (operation.getKind()) {
+                    case TvProvider.Operation.INSERT:
+                        onResult(
+                                index,
+                                mProvider.insert(operation.getTable(), operation.getValues()),
+                                0);
+                        break;
+                    case TvProvider.Operation.UPDATE:
+                        onResult(
+                                index,
+                                -1L,
+                                mProvider.update(
+                                        operation.getTable(),
+                                        operation.getId(),
+                                        operation.getValues()));
+                        break;
+                    default:
+                        onResult(
+                                index,
+                                -1L,
+                                mProvider.delete(operation.getTable(), operation.getId()));
+                        break;
+                }
+            } catch (RuntimeException e) {
+                onResult(index, -1L, 0);
+            }
+        }
+
+        private void onResult(int index, long id, int count) {
+            Movie movie = mMovies.get(index);
+            switch (mOperations.get(index).getKind()) {
+                case TvProvider.Operation.INSERT:
+                    if (id > 0L) {
+                        mTable.setId(movie, id);
+                        mStored.add(movie);
+                        mInserted++;
+                    } else {
+                        SyncMetrics.count(SyncMetrics.ROWS_FAILED, 1L);
+                        mTable.setId(movie, 0L);
+                    }
+                    break;
+                case TvProvider.Operation.UPDATE:
+                    if (count > 0) {
+                        mStored.add(movie);
+                        mUpdated++;
+                    } else {
+                        mMissing.add(movie);
+                    }
+                    break;
+                default:
+                    // Gone either way, whether it was deleted now or before.
+                    if (movie != null) {
+                        mRemoved.add(movie);
+                    }
+                    mDeleted += count;
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2017 Google Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.example.android.tv.recommendations.util;
+
+import com.example.android.tv.recommendations.model.Movie;
+
+/**
+ * Computes a 64-bit fingerprint of the content of the program published for a movie.
+ *
+ * <p>The fingerprint covers every column written for the program: title, description, poster
+ * uri, type and poster aspect ratio. Two programs with the same fingerprint are the same for the
+ * TV provider, so a program whose stored fingerprint matches does not have to be written again.
+ * The fingerprint is never 0, which stands for an unknown fingerprint. It is hashed with {@link
+ * Fnv1a}.
+ */
+public final class ProgramFingerprint {
+
+    private ProgramFingerprint() {
+        // Do nothing.
+    }
+
+    /**
+     * Computes the fingerprint of the program of a movie.
+     *
+     * @param movie to be published.
+     * @param type of the program.
+     * @param posterAspectRatio of the program.
+     * @return a non zero fingerprint.
+     */
+    public static long of(Movie movie, int type, int posterAspectRatio) {
+        long hash = Fnv1a.OFFSET_BASIS;
+        hash = mix(hash, movie.getTitle());
+        hash = mix(hash, movie.getDescription());
+        hash = mix(hash, movie.getCardImageUrl());
+        hash = Fnv1a.mix(hash, type);
+        hash = Fnv1a.mix(hash, posterAspectRatio);
+        return hash != 0L ? hash : 1L;
+    }
+
+    /**
+     * Computes the fingerprint of the Watch Next program of a movie, which also covers its watch
+     * state.
+     *
+     * @param movie to be published, with its watch state.
+     * @param type of the program.
+     * @param watchNextType of the program.
+     * @param posterAspectRatio of the program.
+     * @return a non zero fingerprint.
+     */
+    public static long ofWatchNext(
+            Movie movie, int type, int watchNextType, int posterAspectRatio) {
+        long hash = of(movie, type, posterAspectRatio);
+        hash = Fnv1a.mix(hash, watchNextType);
+        hash = Fnv1a.mix(hash, movie.getLastPlaybackPositionMillis());
+        hash = Fnv1a.mix(hash, movie.getDurationMillis());
+        hash = Fnv1a.mix(hash, movie.getLastEngagementTimeMillis());
+        return hash != 0L ? hash : 1L;
+    }
+
+    /* Mixes the chars of a value, followed by a marker telling null and "" apart. */
+    private static long mix(long hash, String value) {
+        return Fnv1a.step(Fnv1a.mix(hash, value), value != null ? 0xFFFF : 0xFFFE);
+    }
+}
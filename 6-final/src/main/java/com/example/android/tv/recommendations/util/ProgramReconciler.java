@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) 2017 Google Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.example.android.tv.recommendations.util;
+
+import com.example.android.tv.recommendations.model.Movie;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Computes the changes needed to turn the programs published for a channel into the programs of a
+ * new catalog.
+ *
+ * <p>Movies are matched by id, which is stable across fetches of the catalog. A movie of the
+ * catalog without a published program is inserted, a published program whose movie is no longer in
+ * the catalog is deleted, and a matched program is only updated if its content changed. Matched
+ * movies keep the program id and Watch Next id of their published program, whatever their
+ * position in either list.
+ *
+ * <p>Content is compared by {@link ProgramFingerprint} when both movies have one, which is a
+ * single comparison instead of one per field. Published movies stored before fingerprints existed
+ * are compared field by field.
+ */
+public final class ProgramReconciler {
+
+    /** The changes between the published programs and a catalog. */
+    public static final class Plan {
+
+        private final List<Movie> mMovies;
+        private final List<Movie> mInserts;
+        private final List<Movie> mUpdates;
+        private final List<Movie> mDeletes;
+        private final long[] mOrphanIds;
+        private final int mUnchanged;
+
+        Plan(
+                List<Movie> movies,
+                List<Movie> inserts,
+                List<Movie> updates,
+                List<Movie> deletes,
+                long[] orphanIds,
+                int unchanged) {
+            this.mMovies = Collections.unmodifiableList(movies);
+            this.mInserts = Collections.unmodifiableList(inserts);
+            this.mUpdates = Collections.unmodifiableList(updates);
+            this.mDeletes = Collections.unmodifiableList(deletes);
+            this.mOrphanIds = orphanIds;
+            this.mUnchanged = unchanged;
+        }
+
+        /**
+         * Returns the movies of the catalog, in its order. Movies that matched a published program
+         * carry its program id, the others have a program id of 0 until they are inserted.
+         */
+        public List<Movie> getMovies() {
+            return mMovies;
+        }
+
+        /** Returns the movies of the catalog that have no published program. */
+        public List<Movie> getInserts() {
+            return mInserts;
+        }
+
+        /** Returns the movies of the catalog whose published program is out of date. */
+        public List<Movie> getUpdates() {
+            return mUpdates;
+        }
+
+        /** Returns the published movies that are no longer in the catalog. */
+        public List<Movie> getDeletes() {
+            return mDeletes;
+        }
+
+        /**
+         * Returns the ids of the programs in the provider that belong to no stored movie. They are
+         * deleted from the provider only, there is nothing stored to remove. The array must not be
+         * modified.
+         */
+        public long[] getOrphanIds() {
+            return mOrphanIds;
+        }
+
+        /** Returns the number of published programs that are already up to date. */
+        public int getUnchangedCount() {
+            return mUnchanged;
+        }
+
+        /** Returns true if no program has to be written. */
+        public boolean isEmpty() {
+            return mInserts.isEmpty()
+                    && mUpdates.isEmpty()
+                    && mDeletes.isEmpty()
+                    && mOrphanIds.length == 0;
+        }
+    }
+
+    /** The number of programs written by a sync, by kind of change. */
+    public static final class Summary {
+
+        private final int mInserted;
+        private final int mUpdated;
+        private final int mDeleted;
+        private final int mUnchanged;
+
+        public Summary(int inserted, int updated, int deleted, int unchanged) {
+            this.mInserted = inserted;
+            this.mUpdated = updated;
+            this.mDeleted = deleted;
+            this.mUnchanged = unchanged;
+        }
+
+        public int getInserted() {
+            return mInserted;
+        }
+
+        public int getUpdated() {
+            return mUpdated;
+        }
+
+        public int getDeleted() {
+            return mDeleted;
+        }
+
+        public int getUnchanged() {
+            return mUnchanged;
+        }
+
+        /** Returns the number of programs that were written to the TV provider. */
+        public int getWritten() {
+            return mInserted + mUpdated + mDeleted;
+        }
+
+        @Override
+        public String toString() {
+            return "Summary{"
+                    + "inserted="
+                    + mInserted
+                    + ", updated="
+                    + mUpdated
+                    + ", deleted="
+                    + mDeleted
+                    + ", unchanged="
+                    + mUnchanged
+                    + '}';
+        }
+    }
+
+    private ProgramReconciler() {
+        // Do nothing.
+    }
+
+    /**
+     * Computes the changes between the published programs of a channel and a catalog. Neither list
+     * is modified, the movies of the plan are copies.
+     *
+     * @param published movies whose programs are in the TV provider, with their program ids.
+     * @param catalog movies that the channel should show, in order.
+     * @return the changes to apply.
+     */
+    public static Plan reconcile(List<Movie> published, List<Movie> catalog) {
+        LongLongMap publishedIndexes = new LongLongMap(published.size());
+        for (int index = 0; index < published.size(); ++index) {
+            publishedIndexes.put(published.get(index).getId(), index);
+        }
+
+        boolean[] matched = new boolean[published.size()];
+        LongLongMap catalogIds = new LongLongMap(catalog.size());
+        List<Movie> movies = new ArrayList<>(catalog.size());
+        List<Movie> inserts = new ArrayList<>();
+        List<Movie> updates = new ArrayList<>();
+        int unchanged = 0;
+        for (Movie item : catalog) {
+            if (catalogIds.containsKey(item.getId())) {
+                // Only the first occurrence of a movie gets a program.
+                continue;
+            }
+            catalogIds.put(item.getId(), 1L);
+
+            Movie movie = new Movie(item);
+            int index = (int) publishedIndexes.get(movie.getId(), -1L);
+            if (index == -1) {
+                movie.setProgramId(0L);
+                inserts.add(movie);
+            } else {
+                Movie previous = published.get(index);
+                matched[index] = true;
+                movie.setProgramId(previous.getProgramId());
+                movie.setWatchNextId(previous.getWatchNextId());
+                if (isUpToDate(previous, movie)) {
+                    if (movie.getProgramFingerprint() == 0L) {
+                        movie.setProgramFingerprint(previous.getProgramFingerprint());
+                    }
+                    unchanged++;
+                } else {
+                    updates.add(movie);
+                }
+            }
+            movies.add(movie);
+        }
+
+        List<Movie> deletes = new ArrayList<>();
+        for (int index = 0; index < published.size(); ++index) {
+            if (!matched[index]) {
+                deletes.add(new Movie(published.get(index)));
+            }
+        }
+        return new Plan(movies, inserts, updates, deletes, new long[0], unchanged);
+    }
+
+    /**
+     * Computes the changes that bring the TV provider back in line with the stored movies of a
+     * channel, by joining them on program id. A program in the provider without a stored movie is
+     * an orphan and is deleted; a stored movie whose program is missing from the provider is
+     * inserted again.
+     *
+     * @param stored movies of the channel, with the ids of their programs.
+     * @param programIds of the programs of the channel in the provider, mapped to any value.
+     * @return the changes to apply, with the orphans as orphan ids.
+     */
+    public static Plan repair(List<Movie> stored, LongLongMap programIds) {
+        LongLongMap storedProgramIds = new LongLongMap(stored.size());
+        List<Movie> movies = new ArrayList<>(stored.size());
+        List<Movie> inserts = new ArrayList<>();
+        int unchanged = 0;
+        for (Movie item : stored) {
+            Movie movie = new Movie(item);
+            if (movie.getProgramId() != 0L
+                    && programIds.containsKey(movie.getProgramId())
+                    && !storedProgramIds.containsKey(movie.getProgramId())) {
+                storedProgramIds.put(movie.getProgramId(), 1L);
+                unchanged++;
+            } else {
+                movie.setProgramId(0L);
+                inserts.add(movie);
+            }
+            movies.add(movie);
+        }
+
+        LongLongMap orphanIds = new LongLongMap();
+        for (long programId : programIds.keys()) {
+            if (!storedProgramIds.containsKey(programId)) {
+                orphanIds.put(programId, 1L);
+            }
+        }
+        return new Plan(
+                movies,
+                inserts,
+                Collections.<Movie>emptyList(),
+                Collections.<Movie>emptyList(),
+                orphanIds.keys(),
+                unchanged);
+    }
+
+    /* Returns true if the program published for previous needs no update to show movie. */
+    private static boolean isUpToDate(Movie previous, Movie movie) {
+        if (previous.getProgramFingerprint() != 0L && movie.getProgramFingerprint() != 0L) {
+            return previous.getProgramFingerprint() == movie.getProgramFingerprint();
+        }
+        return hasSameContent(previous, movie);
+    }
+
+    /**
+     * Returns true if the two movies would be published as the same program.
+     *
+     * @param a a movie.
+     * @param b another movie.
+     */
+    public static boolean hasSameContent(Movie a, Movie b) {
+        return equals(a.getTitle(), b.getTitle())
+                && equals(a.getDescription(), b.getDescription())
+                && equals(a.getCategory(), b.getCategory())
+                && equals(a.getCardImageUrl(), b.getCardImageUrl())
+                && equals(a.getBackgroundImageUrl(), b.getBackgroundImageUrl())
+                && a.getTmdbId() == b.getTmdbId()
+                && equals(a.getMediaType(), b.getMediaType());
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
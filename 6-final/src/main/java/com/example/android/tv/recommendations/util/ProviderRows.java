@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2017 Google Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.example.android.tv.recommendations.util;
+
+import com.example.android.tv.recommendations.model.Movie;
+import com.example.android.tv.recommendations.model.Subscription;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds the rows of the TV provider published for subscriptions and movies.
+ *
+ * <p>The column names and values are those of {@code TvContractCompat}, which is not available on
+ * a plain JVM. Each constant is preceded by the {@code TvContractCompat} constants it copies, and
+ * must be kept equal to them. Rows hold the same columns as the {@code Channel}, {@code
+ * PreviewProgram} and {@code WatchNextProgram} builders would set.
+ */
+public final class ProviderRows {
+
+    // Channels._ID, PreviewPrograms._ID and WatchNextPrograms._ID
+    public static final String COLUMN_ID = "_id";
+    // Channels.COLUMN_TYPE, PreviewPrograms.COLUMN_TYPE and WatchNextPrograms.COLUMN_TYPE
+    public static final String COLUMN_TYPE = "type";
+    // Channels.COLUMN_INTERNAL_PROVIDER_ID and WatchNextPrograms.COLUMN_INTERNAL_PROVIDER_ID
+    public static final String COLUMN_INTERNAL_PROVIDER_ID = "internal_provider_id";
+
+    // Channels.COLUMN_DISPLAY_NAME
+    public static final String COLUMN_DISPLAY_NAME = "display_name";
+    // Channels.COLUMN_DESCRIPTION
+    public static final String COLUMN_DESCRIPTION = "description";
+    // Channels.COLUMN_BROWSABLE
+    public static final String COLUMN_BROWSABLE = "browsable";
+    // Channels.COLUMN_APP_LINK_INTENT_URI
+    public static final String COLUMN_APP_LINK_INTENT_URI = "app_link_intent_uri";
+
+    // PreviewPrograms.COLUMN_CHANNEL_ID
+    public static final String COLUMN_CHANNEL_ID = "channel_id";
+    // PreviewPrograms.COLUMN_TITLE and WatchNextPrograms.COLUMN_TITLE
+    public static final String COLUMN_TITLE = "title";
+    // PreviewPrograms.COLUMN_SHORT_DESCRIPTION and WatchNextPrograms.COLUMN_SHORT_DESCRIPTION
+    public static final String COLUMN_SHORT_DESCRIPTION = "short_description";
+    // PreviewPrograms.COLUMN_POSTER_ART_URI and WatchNextPrograms.COLUMN_POSTER_ART_URI
+    public static final String COLUMN_POSTER_ART_URI = "poster_art_uri";
+    // PreviewPrograms.COLUMN_POSTER_ART_ASPECT_RATIO and
+    // WatchNextPrograms.COLUMN_POSTER_ART_ASPECT_RATIO
+    public static final String COLUMN_POSTER_ART_ASPECT_RATIO = "poster_art_aspect_ratio";
+    // PreviewPrograms.COLUMN_INTENT_URI and WatchNextPrograms.COLUMN_INTENT_URI
+    public static final String COLUMN_INTENT_URI = "intent_uri";
+    // WatchNextPrograms.COLUMN_WATCH_NEXT_TYPE
+    public static final String COLUMN_WATCH_NEXT_TYPE = "watch_next_type";
+    // WatchNextPrograms.COLUMN_LAST_ENGAGEMENT_TIME_UTC_MILLIS
+    public static final String COLUMN_LAST_ENGAGEMENT_TIME_UTC_MILLIS =
+            "last_engagement_time_utc_millis";
+    // WatchNextPrograms.COLUMN_LAST_PLAYBACK_POSITION_MILLIS
+    public static final String COLUMN_LAST_PLAYBACK_POSITION_MILLIS =
+            "last_playback_position_millis";
+    // WatchNextPrograms.COLUMN_DURATION_MILLIS
+    public static final String COLUMN_DURATION_MILLIS = "duration_millis";
+
+    // Channels.TYPE_PREVIEW
+    public static final String CHANNEL_TYPE_PREVIEW = "TYPE_PREVIEW";
+    // PreviewPrograms.TYPE_MOVIE and WatchNextPrograms.TYPE_MOVIE
+    public static final int PROGRAM_TYPE_MOVIE = 0;
+    // PreviewPrograms.ASPECT_RATIO_MOVIE_POSTER
+    public static final int ASPECT_RATIO_MOVIE_POSTER = 5;
+    // WatchNextPrograms.WATCH_NEXT_TYPE_CONTINUE
+    public static final int WATCH_NEXT_TYPE_CONTINUE = 0;
+    // WatchNextPrograms.WATCH_NEXT_TYPE_WATCHLIST
+    public static final int WATCH_NEXT_TYPE_WATCHLIST = 3;
+
+    private ProviderRows() {
+        // Do nothing.
+    }
+
+    /**
+     * Builds the channel of a subscription. The name of the subscription is its internal provider
+     * id, which identifies the channel even if its display name changes.
+     *
+     * @param subscription to be converted.
+     * @return the row of the channel.
+     */
+    public static Map<String, Object> buildChannel(Subscription subscription) {
+        Map<String, Object> values = new HashMap<>();
+        values.put(COLUMN_TYPE, CHANNEL_TYPE_PREVIEW);
+        values.put(COLUMN_DISPLAY_NAME, subscription.getName());
+        values.put(COLUMN_DESCRIPTION, subscription.getDescription());
+        values.put(COLUMN_INTERNAL_PROVIDER_ID, subscription.getName());
+        values.put(COLUMN_APP_LINK_INTENT_URI, null);
+        return values;
+    }
+
+    /**
+     * Builds the preview program published for a movie.
+     *
+     * @param channelId of the channel the program belongs to.
+     * @param movie to be converted.
+     * @return the row of the program.
+     */
+    public static Map<String, Object> buildProgram(long channelId, Movie movie) {
+        Map<String, Object> values = new HashMap<>();
+        values.put(COLUMN_CHANNEL_ID, channelId);
+        values.put(COLUMN_TYPE, PROGRAM_TYPE_MOVIE);
+        values.put(COLUMN_TITLE, movie.getTitle());
+        values.put(COLUMN_SHORT_DESCRIPTION, movie.getDescription());
+        values.put(COLUMN_POSTER_ART_URI, movie.getCardImageUrl());
+        values.put(COLUMN_POSTER_ART_ASPECT_RATIO, ASPECT_RATIO_MOVIE_POSTER);
+        values.put(COLUMN_INTENT_URI, null);
+        return values;
+    }
+
+    /**
+     * Builds the Watch Next program published for a movie. Movies that have been partly watched
+     * are shown to be continued, the others as added to the watchlist.
+     *
+     * @param movie to be converted, with its watch state.
+     * @return the row of the program.
+     */
+    public static Map<String, Object> buildWatchNextProgram(Movie movie) {
+        Map<String, Object> values = new HashMap<>();
+        values.put(COLUMN_TYPE, PROGRAM_TYPE_MOVIE);
+        values.put(COLUMN_WATCH_NEXT_TYPE, getWatchNextType(movie));
+        values.put(COLUMN_LAST_ENGAGEMENT_TIME_UTC_MILLIS, movie.getLastEngagementTimeMillis());
+        values.put(
+                COLUMN_LAST_PLAYBACK_POSITION_MILLIS, (int) movie.getLastPlaybackPositionMillis());
+        values.put(COLUMN_DURATION_MILLIS, (int) movie.getDurationMillis());
+        values.put(COLUMN_TITLE, movie.getTitle());
+        values.put(COLUMN_SHORT_DESCRIPTION, movie.getDescription());
+        values.put(COLUMN_POSTER_ART_URI, movie.getCardImageUrl());
+        values.put(COLUMN_POSTER_ART_ASPECT_RATIO, ASPECT_RATIO_MOVIE_POSTER);
+        values.put(COLUMN_INTERNAL_PROVIDER_ID, String.valueOf(movie.getId()));
+        values.put(COLUMN_INTENT_URI, null);
+        return values;
+    }
+
+    /* Must cover every column set by buildProgram, other than the channel id. */
+    static long fingerprint(Movie movie) {
+        return ProgramFingerprint.of(movie, PROGRAM_TYPE_MOVIE, ASPECT_RATIO_MOVIE_POSTER);
+    }
+
+    /* Must cover every column set by buildWatchNextProgram, other than the internal id. */
+    static long watchNextFingerprint(Movie movie) {
+        return ProgramFingerprint.ofWatchNext(
+                movie, PROGRAM_TYPE_MOVIE, getWatchNextType(movie), ASPECT_RATIO_MOVIE_POSTER);
+    }
+
+    private static int getWatchNextType(Movie movie) {
+        return movie.getLastPlaybackPositionMillis() > 0L
+                ? WATCH_NEXT_TYPE_CONTINUE
+                : WATCH_NEXT_TYPE_WATCHLIST;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2017 Google Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.example.android.tv.recommendations.util;
+
+/**
+ * Converts items to and from the bytes stored by {@link DatabaseHelper}.
+ *
+ * @param <T> the type of the items.
+ */
+public interface RecordCodec<T> {
+
+    /**
+     * Marshals an item.
+     *
+     * @param item to be marshalled.
+     * @return the bytes representing the item.
+     */
+    byte[] encode(T item);
+
+    /**
+     * Unmarshals an item.
+     *
+     * @param data produced by {@link #encode(Object)}.
+     * @return the item.
+     * @throws IllegalArgumentException if the data cannot be unmarshalled by this codec.
+     */
+    T decode(byte[] data);
+}
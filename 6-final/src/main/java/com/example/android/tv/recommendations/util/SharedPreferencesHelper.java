@@ -24,9 +24,11 @@ import com.google.gson.Gson;
 import com.google.gson.JsonSyntaxException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -36,6 +38,9 @@ import java.util.Set;
  *
  * <p>The methods of this class should not be called on the UI thread. Marshalling an object into
  * JSON can be expensive for large objects.
+ *
+ * <p>Data is now persisted by {@link DatabaseHelper}; this class is kept to migrate what previous
+ * versions of the app stored in shared preferences.
  */
 public final class SharedPreferencesHelper {
 
@@ -91,6 +96,40 @@ public final class SharedPreferencesHelper {
         setList(context, movies, PREFS_SUBSCRIBED_MOVIES_PREFIX + channelId);
     }
 
+    /**
+     * Reads the movies of every channel from {@link SharedPreferences}.
+     *
+     * @param context used for getting an instance of shared preferences.
+     * @return the movies keyed by the id of the channel that they are associated with.
+     */
+    public static Map<Long, List<Movie>> readAllMovies(Context context) {
+        SharedPreferences sharedPreferences =
+                context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        Map<Long, List<Movie>> moviesByChannel = new HashMap<>();
+        for (String key : sharedPreferences.getAll().keySet()) {
+            if (!key.startsWith(PREFS_SUBSCRIBED_MOVIES_PREFIX)) {
+                continue;
+            }
+            try {
+                long channelId =
+                        Long.parseLong(key.substring(PREFS_SUBSCRIBED_MOVIES_PREFIX.length()));
+                moviesByChannel.put(channelId, getList(context, Movie.class, key));
+            } catch (NumberFormatException e) {
+                Log.e(TAG, "Could not parse channel id of key " + key, e);
+            }
+        }
+        return moviesByChannel;
+    }
+
+    /**
+     * Removes every subscription and movie stored in {@link SharedPreferences}.
+     *
+     * @param context used for getting an instance of shared preferences.
+     */
+    public static void clear(Context context) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit().clear().apply();
+    }
+
     /**
      * Retrieves a set of Strings from {@link SharedPreferences} and returns as a List.
      *
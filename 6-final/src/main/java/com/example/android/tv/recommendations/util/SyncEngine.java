@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2017 Google Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.example.android.tv.recommendations.util;
+
+import com.example.android.tv.recommendations.model.Movie;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The sync of channels and programs with the TV provider, without the jobs that run it.
+ *
+ * <p>The job services fetch the catalog, load and persist the stored movies, and hand the rest to
+ * the engine, which only talks to a {@link TvProvider}. The same sync therefore runs against the
+ * provider of the device and against an in-memory provider on a plain JVM, where it can be
+ * measured with hundreds of channels and tens of thousands of programs.
+ *
+ * <p>Like the job services, the engine stops between stages and batches once its thread is
+ * interrupted. Its methods block on the provider, and must be called on a worker thread. The time
+ * spent auditing, reconciling and writing is recorded in {@link SyncMetrics}.
+ */
+public final class SyncEngine {
+
+    private static final String[] CHANNELS_PROJECTION = {
+        ProviderRows.COLUMN_ID,
+        ProviderRows.COLUMN_DISPLAY_NAME,
+        ProviderRows.COLUMN_BROWSABLE,
+        ProviderRows.COLUMN_INTERNAL_PROVIDER_ID
+    };
+
+    /** The outcome of a sync of the programs of a channel. */
+    public static final class Result {
+
+        private final ProgramReconciler.Summary mRepaired;
+        private final ProgramReconciler.Summary mSummary;
+        private final List<Movie> mPublished;
+
+        Result(
+                ProgramReconciler.Summary repaired,
+                ProgramReconciler.Summary summary,
+                List<Movie> published) {
+            this.mRepaired = repaired;
+            this.mSummary = summary;
+            this.mPublished = published;
+        }
+
+        /** Returns the programs written to repair the channel, or null if it was not audited. */
+        public ProgramReconciler.Summary getRepaired() {
+            return mRepaired;
+        }
+
+        /** Returns the programs written to bring the channel in line with the catalog. */
+        public ProgramReconciler.Summary getSummary() {
+            return mSummary;
+        }
+
+        /**
+         * Returns the movies whose programs are published, in the order of the catalog, or null if
+         * the stored movies are still up to date or the sync was interrupted.
+         */
+        public List<Movie> getPublished() {
+            return mPublished;
+        }
+    }
+
+    private SyncEngine() {
+        // Do nothing.
+    }
+
+    /**
+     * Reconciles the programs of a channel with the catalog.
+     *
+     * <p>Now and then, see {@link ProgramAuditor}, the stored movies are first checked against the
+     * programs in the provider, and missing or orphaned programs are repaired. The programs whose
+     * fingerprint changed are then written in batches, each one checkpointed. Nothing is written if
+     * the catalog is empty, so that a failed fetch does not empty the channel.
+     *
+     * @param provider to write to.
+     * @param channelId of the channel.
+     * @param stored movies whose programs were published by the last sync. The list is not
+     *     modified.
+     * @param catalog movies to be published.
+     * @param checkpoint notified after each batch.
+     * @return the programs written, and the movies to be stored.
+     */
+    public static Result syncPrograms(
+            TvProvider provider,
+            long channelId,
+            List<Movie> stored,
+            List<Movie> catalog,
+            ProgramBatchWriter.Checkpoint checkpoint) {
+        List<Movie> movies = stored;
+        if (catalog.isEmpty()) {
+            return new Result(null, new ProgramReconciler.Summary(0, 0, 0, movies.size()), null);
+        }
+
+        // Audit, now and then, that the stored movies match the programs in the provider.
+        ProgramReconciler.Summary repaired = null;
+        if (ProgramAuditor.shouldAudit(channelId, movies)) {
+            ProgramReconciler.Plan repair;
+            long start = SyncMetrics.beginSection(SyncMetrics.AUDIT);
+            try {
+                repair = ProgramAuditor.audit(provider, channelId, movies);
+            } finally {
+                SyncMetrics.endSection(SyncMetrics.AUDIT, start);
+            }
+            if (repair != null && !repair.isEmpty()) {
+                repaired = ProgramBatchWriter.apply(provider, channelId, repair, checkpoint);
+                if (isCancelled()) {
+                    return new Result(repaired, new ProgramReconciler.Summary(0, 0, 0, 0), null);
+                }
+                movies = getPublishedMovies(repair);
+            }
+        }
+
+        // Reconcile, skipping the programs whose fingerprint is unchanged.
+        ProgramReconciler.Plan plan;
+        long start = SyncMetrics.beginSection(SyncMetrics.RECONCILE);
+        try {
+            ProgramBatchWriter.setFingerprints(catalog);
+            plan = ProgramReconciler.reconcile(movies, catalog);
+        } finally {
+            SyncMetrics.endSection(SyncMetrics.RECONCILE, start);
+        }
+
+        // Write batches, each one checkpointed.
+        ProgramReconciler.Summary summary =
+                ProgramBatchWriter.apply(provider, channelId, plan, checkpoint);
+        if (isCancelled() || (plan.isEmpty() && !hasNewFingerprints(movies, plan))) {
+            return new Result(repaired, summary, null);
+        }
+        return new Result(repaired, summary, getPublishedMovies(plan));
+    }
+
+    /**
+     * Deletes the programs of a channel, such as one that is no longer browsable.
+     *
+     * @param provider to write to.
+     * @param stored movies whose programs were published by the last sync.
+     * @param checkpoint notified after each batch.
+     * @return the number of programs deleted.
+     */
+    public static int clearPrograms(
+            TvProvider provider, List<Movie> stored, ProgramBatchWriter.Checkpoint checkpoint) {
+        if (stored.isEmpty()) {
+            return 0;
+        }
+        return ProgramBatchWriter.deletePrograms(provider, stored, checkpoint);
+    }
+
+    /**
+     * Reads the channels of the app.
+     *
+     * @param provider to read from.
+     * @return the channels with their id, display name, browsable flag and internal provider id,
+     *     or null if the provider could not be queried.
+     */
+    public static List<Map<String, Object>> queryChannels(TvProvider provider) {
+        return provider.query(TvProvider.CHANNELS, CHANNELS_PROJECTION, null, 0L);
+    }
+
+    /**
+     * Inserts channels in a single batch, or one by one if the batch fails.
+     *
+     * @param provider to write to.
+     * @param channels rows to insert, see {@link ProviderRows#buildChannel}.
+     * @return the id of each channel, in the same order, or -1 for a channel that could not be
+     *     inserted.
+     */
+    public static long[] insertChannels(TvProvider provider, List<Map<String, Object>> channels) {
+        List<TvProvider.Operation> operations = new ArrayList<>(channels.size());
+        for (Map<String, Object> channel : channels) {
+            operations.add(TvProvider.Operation.newInsert(TvProvider.CHANNELS, channel));
+        }
+        long[] channelIds = new long[channels.size()];
+        try {
+            TvProvider.Result[] results = provider.applyBatch(operations);
+            for (int index = 0; index < results.length; ++index) {
+                channelIds[index] = results[index].getId();
+            }
+        } catch (TvProvider.BatchException e) {
+            for (int index = 0; index < channels.size(); ++index) {
+                try {
+                    channelIds[index] = provider.insert(TvProvider.CHANNELS, channels.get(index));
+                } catch (RuntimeException insertException) {
+                    channelIds[index] = -1L;
+                }
+            }
+        }
+        return channelIds;
+    }
+
+    /* Returns true if movies without a fingerprint got one, which is worth persisting. */
+    private static boolean hasNewFingerprints(List<Movie> movies, ProgramReconciler.Plan plan) {
+        for (Movie movie : movies) {
+            if (movie.getProgramFingerprint() == 0L) {
+                return !plan.getMovies().isEmpty();
+            }
+        }
+        return false;
+    }
+
+    /* Returns the movies of a plan that have a program, once it has been applied. */
+    private static List<Movie> getPublishedMovies(ProgramReconciler.Plan plan) {
+        List<Movie> published = new ArrayList<>(plan.getMovies().size());
+        for (Movie movie : plan.getMovies()) {
+            if (movie.getProgramId() != 0L) {
+                published.add(movie);
+            }
+        }
+        return published;
+    }
+
+    private static boolean isCancelled() {
+        return Thread.currentThread().isInterrupted();
+    }
+}
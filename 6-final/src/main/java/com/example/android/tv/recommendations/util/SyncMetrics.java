@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2017 Google Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.example.android.tv.recommendations.util;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timings and counters of the sync, kept in memory for the life of the process.
+ *
+ * <p>A timer keeps its last {@value #WINDOW_SIZE} samples, from which {@link #dump(PrintWriter)}
+ * prints rolling percentiles; a counter only grows. Recording takes a lock on the timer, or an
+ * atomic add, and allocates nothing once a timer or counter exists.
+ *
+ * <p>Sections timed with {@link #beginSection(String)} are also traced by the {@link Tracer} set
+ * with {@link #setTracer(Tracer)}, such as one writing to {@code android.os.Trace}. The class does
+ * not depend on the Android framework, so that the sync records the same metrics on a plain JVM.
+ */
+public final class SyncMetrics {
+
+    // Timers.
+    public static final String FETCH_CATALOG = "fetch.catalog";
+    public static final String FETCH_PAGE = "fetch.page";
+    public static final String PARSE_PAGE = "parse.page";
+    public static final String AUDIT = "sync.audit";
+    public static final String RECONCILE = "sync.reconcile";
+    public static final String WRITE_BATCH = "sync.writeBatch";
+    public static final String SYNC_CHANNEL = "sync.channel";
+    public static final String SYNC_CHANNELS = "sync.channels";
+    public static final String PROVIDER_QUERY = "provider.query";
+    public static final String PROVIDER_BATCH = "provider.applyBatch";
+
+    // Counters.
+    public static final String BYTES_READ = "fetch.bytesRead";
+    public static final String PAGES_FETCHED = "fetch.pages";
+    public static final String PAGES_NOT_MODIFIED = "fetch.pagesNotModified";
+    public static final String PAGES_CACHED = "fetch.pagesCached";
+    public static final String ROWS_INSERTED = "rows.inserted";
+    public static final String ROWS_UPDATED = "rows.updated";
+    public static final String ROWS_DELETED = "rows.deleted";
+    public static final String ROWS_SKIPPED = "rows.skipped";
+    public static final String ROWS_FAILED = "rows.failed";
+    public static final String BATCHES_FAILED = "rows.failedBatches";
+    public static final String PROVIDER_CALLS = "provider.calls";
+    public static final String PROVIDER_OPERATIONS = "provider.operations";
+    public static final String SCHEDULER_CALLS = "scheduler.calls";
+
+    private static final int WINDOW_SIZE = 256;
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.99};
+
+    private static final ConcurrentMap<String, Timer> sTimers = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, AtomicLong> sCounters = new ConcurrentHashMap<>();
+
+    private static volatile Tracer sTracer;
+
+    /** Marks the sections of the sync in a trace. */
+    public interface Tracer {
+
+        /**
+         * Begins a section on the calling thread.
+         *
+         * @param name of the section.
+         */
+        void beginSection(String name);
+
+        /** Ends the last section begun on the calling thread. */
+        void endSection();
+    }
+
+    private SyncMetrics() {
+        // Do nothing.
+    }
+
+    /**
+     * Sets the tracer of the sections, null to stop tracing.
+     *
+     * @param tracer notified of each section.
+     */
+    public static void setTracer(Tracer tracer) {
+        sTracer = tracer;
+    }
+
+    /**
+     * Begins a timed section. Must be followed by {@link #endSection(String, long)} on the same
+     * thread, in a finally block.
+     *
+     * @param name of the section, traced as is.
+     * @return the start of the section, to be passed to {@link #endSection(String, long)}.
+     */
+    public static long beginSection(String name) {
+        Tracer tracer = sTracer;
+        if (tracer != null) {
+            tracer.beginSection(name);
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Ends a section begun with {@link #beginSection(String)} and records its duration.
+     *
+     * @param timer to record the duration with.
+     * @param startNanos returned by {@link #beginSection(String)}.
+     */
+    public static void endSection(String timer, long startNanos) {
+        record(timer, System.nanoTime() - startNanos);
+        Tracer tracer = sTracer;
+        if (tracer != null) {
+            tracer.endSection();
+        }
+    }
+
+    /**
+     * Records a duration.
+     *
+     * @param timer to record the duration with.
+     * @param nanos the duration.
+     */
+    public static void record(String timer, long nanos) {
+        Timer existing = sTimers.get(timer);
+        if (existing == null) {
+            Timer created = new Timer();
+            existing = sTimers.putIfAbsent(timer, created);
+            if (existing == null) {
+                existing = created;
+            }
+        }
+        existing.add(nanos);
+    }
+
+    /**
+     * Adds to a counter.
+     *
+     * @param counter to add to.
+     * @param delta to be added.
+     */
+    public static void count(String counter, long delta) {
+        AtomicLong existing = sCounters.get(counter);
+        if (existing == null) {
+            AtomicLong created = new AtomicLong();
+            existing = sCounters.putIfAbsent(counter, created);
+            if (existing == null) {
+                existing = created;
+            }
+        }
+        existing.addAndGet(delta);
+    }
+
+    /**
+     * Returns the value of a counter.
+     *
+     * @param counter to read.
+     * @return the sum of what was added since the process started, or since the last reset.
+     */
+    public static long getCount(String counter) {
+        AtomicLong existing = sCounters.get(counter);
+        return existing != null ? existing.get() : 0L;
+    }
+
+    /** Forgets every sample and counter. */
+    public static void reset() {
+        sTimers.clear();
+        sCounters.clear();
+    }
+
+    /**
+     * Prints the percentiles of every timer, in milliseconds, and the value of every counter.
+     *
+     * @param writer to print to.
+     */
+    public static void dump(PrintWriter writer) {
+        writer.println(
+                "Sync timers (ms, over the last " + WINDOW_SIZE + " samples of each timer):");
+        for (Map.Entry<String, Timer> entry : new TreeMap<>(sTimers).entrySet()) {
+            writer.println("  " + entry.getKey() + ": " + entry.getValue().summarize());
+        }
+        writer.println("Sync counters:");
+        for (Map.Entry<String, AtomicLong> entry : new TreeMap<>(sCounters).entrySet()) {
+            writer.println("  " + entry.getKey() + ": " + entry.getValue().get());
+        }
+        writer.flush();
+    }
+
+    /* The last samples of a duration, in a ring buffer. */
+    private static final class Timer {
+
+        private final long[] mSamples = new long[WINDOW_SIZE];
+        private long mCount;
+        private long mTotalNanos;
+
+        synchronized void add(long nanos) {
+            mSamples[(int) (mCount % WINDOW_SIZE)] = nanos;
+            mCount++;
+            mTotalNanos += nanos;
+        }
+
+        String summarize() {
+            long[] samples;
+            long count;
+            long totalNanos;
+            synchronized (this) {
+                count = mCount;
+                totalNanos = mTotalNanos;
+                samples = Arrays.copyOf(mSamples, (int) Math.min(count, WINDOW_SIZE));
+            }
+            Arrays.sort(samples);
+            StringBuilder summary = new StringBuilder();
+            summary.append("count=").append(count);
+            summary.append(String.format(Locale.US, " total=%.1f", totalNanos / 1e6));
+            for (double percentile : PERCENTILES) {
+                summary.append(
+                        String.format(
+                                Locale.US,
+                                " p%d=%.2f",
+                                Math.round(percentile * 100),
+                                percentile(samples, percentile) / 1e6));
+            }
+            summary.append(
+                    String.format(
+                            Locale.US,
+                            " max=%.2f",
+                            samples.length > 0 ? samples[samples.length - 1] / 1e6 : 0.0));
+            return summary.toString();
+        }
+
+        /* Nearest rank of sorted samples. */
+        private static long percentile(long[] sorted, double percentile) {
+            if (sorted.length == 0) {
+                return 0L;
+            }
+            int rank = (int) Math.ceil(percentile * sorted.length);
+            return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+        }
+    }
+}
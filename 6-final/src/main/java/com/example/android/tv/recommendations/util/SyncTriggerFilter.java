@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2017 Google Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.example.android.tv.recommendations.util;
+
+import android.content.ContentUris;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import androidx.tvprovider.media.tv.TvContractCompat;
+import com.example.android.tv.recommendations.model.Movie;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tells the content changes caused by our own program syncs apart from external ones.
+ *
+ * <p>A program sync writes to the TV provider and then re-arms the job that listens to the
+ * channels, so the notifications for its own writes can start the job again. Each sync records the
+ * programs it wrote under a new generation, which is passed to the re-armed job in its extras, one
+ * per channel. When the job is triggered, the changes to a channel are ignored if its generation is
+ * still the latest one for the channel, the trigger came shortly after the sync, and every changed
+ * uri is a program that the sync wrote. The channel itself, which the TV provider notifies along
+ * with its programs, is only ignored if it is still browsable or not, and named, as it was when the
+ * sync ran; otherwise the user or another app changed it.
+ */
+public class SyncTriggerFilter {
+
+    private static final String TAG = "SyncTriggerFilter";
+
+    /**
+     * Extra of the program sync job holding the generation of the last sync of each channel, in the
+     * order of {@link TvUtil#EXTRA_CHANNEL_IDS}.
+     */
+    public static final String EXTRA_SYNC_GENERATIONS =
+            "com.example.android.tv.recommendations.SYNC_GENERATIONS";
+
+    /** Generation of a job that was not armed by a sync. */
+    public static final long NO_GENERATION = 0L;
+
+    private static final long DEFAULT_OWN_WRITE_WINDOW_MILLIS = 10_000L;
+    private static final long DEFAULT_UPDATE_DELAY_MILLIS = 2_000L;
+    private static final long DEFAULT_MAX_DELAY_MILLIS = 10_000L;
+
+    private static final Object sLock = new Object();
+    private static final Map<Long, OwnWrites> sOwnWrites = new HashMap<>();
+
+    // Starts from the boot clock so that generations are not reused by a new process.
+    private static final AtomicLong sGeneration = new AtomicLong(SystemClock.elapsedRealtime());
+    private static final AtomicLong sSuppressedCount = new AtomicLong();
+
+    private static volatile long sOwnWriteWindowMillis = DEFAULT_OWN_WRITE_WINDOW_MILLIS;
+    private static volatile long sUpdateDelayMillis = DEFAULT_UPDATE_DELAY_MILLIS;
+    private static volatile long sMaxDelayMillis = DEFAULT_MAX_DELAY_MILLIS;
+
+    private SyncTriggerFilter() {
+        // Do nothing.
+    }
+
+    /**
+     * Sets how long changes to a channel are collected before the program sync job runs, so that a
+     * burst of changes results in a single sync.
+     *
+     * @param updateDelayMillis the job runs once no change was seen for this long.
+     * @param maxDelayMillis the job runs at most this long after the first change.
+     */
+    public static void setCoalescingDelay(long updateDelayMillis, long maxDelayMillis) {
+        if (updateDelayMillis < 0L || maxDelayMillis < updateDelayMillis) {
+            throw new IllegalArgumentException(
+                    "Invalid coalescing delay: " + updateDelayMillis + ", " + maxDelayMillis);
+        }
+        sUpdateDelayMillis = updateDelayMillis;
+        sMaxDelayMillis = maxDelayMillis;
+    }
+
+    /** Returns the delay without changes after which the program sync job runs. */
+    public static long getUpdateDelayMillis() {
+        return sUpdateDelayMillis;
+    }
+
+    /** Returns the maximum delay after the first change before the program sync job runs. */
+    public static long getMaxDelayMillis() {
+        return sMaxDelayMillis;
+    }
+
+    /**
+     * Sets how long after a sync the changes to its own programs are ignored.
+     *
+     * @param windowMillis a duration in milliseconds.
+     */
+    public static void setOwnWriteWindow(long windowMillis) {
+        if (windowMillis < 0L) {
+            throw new IllegalArgumentException("Invalid window: " + windowMillis);
+        }
+        sOwnWriteWindowMillis = windowMillis;
+    }
+
+    /**
+     * Records the programs that a sync wrote to a channel.
+     *
+     * @param channelId of the channel that was synced.
+     * @param channel as the sync saw it, null if unknown.
+     * @param movies whose programs were inserted, updated or deleted.
+     * @return the generation of the sync, to be passed to the job that listens to the channel.
+     */
+    public static long recordOwnWrites(
+            long channelId, @Nullable ChannelRegistry.Entry channel, List<Movie> movies) {
+        LongLongMap programIds = new LongLongMap(movies.size());
+        for (Movie movie : movies) {
+            if (movie.getProgramId() != 0L) {
+                programIds.put(movie.getProgramId(), 1L);
+            }
+        }
+        long generation = sGeneration.incrementAndGet();
+        synchronized (sLock) {
+            sOwnWrites.put(
+                    channelId,
+                    new OwnWrites(
+                            generation, SystemClock.elapsedRealtime(), channel, programIds));
+        }
+        return generation;
+    }
+
+    /**
+     * Returns true if a trigger of the program sync job of a channel has to be handled, or false if
+     * it was caused by the sync that armed the job.
+     *
+     * @param channelId of the channel.
+     * @param generation of the sync that armed the job, {@link #NO_GENERATION} if none.
+     * @param triggeredUris the changed uris of the channel, null if unknown.
+     * @param channel as it is now, null if unknown.
+     */
+    public static boolean shouldSync(
+            long channelId,
+            long generation,
+            Uri[] triggeredUris,
+            @Nullable ChannelRegistry.Entry channel) {
+        if (generation == NO_GENERATION || triggeredUris == null || triggeredUris.length == 0) {
+            // Not a content trigger, or too many changes for the uris to be reported.
+            return true;
+        }
+        OwnWrites ownWrites;
+        synchronized (sLock) {
+            ownWrites = sOwnWrites.get(channelId);
+        }
+        if (ownWrites == null
+                || ownWrites.generation != generation
+                || SystemClock.elapsedRealtime() - ownWrites.timeMillis > sOwnWriteWindowMillis) {
+            return true;
+        }
+        Uri channelUri = TvContractCompat.buildChannelUri(channelId);
+        for (Uri uri : triggeredUris) {
+            if (uri.equals(channelUri)
+                    && !ownWrites.programIds.isEmpty()
+                    && ownWrites.hasSameChannel(channel)) {
+                continue;
+            }
+            if (!isPreviewProgramUri(uri)
+                    || !ownWrites.programIds.containsKey(ContentUris.parseId(uri))) {
+                return true;
+            }
+        }
+        long suppressed = sSuppressedCount.incrementAndGet();
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(
+                    TAG,
+                    "Ignoring own changes to channel " + channelId + ", " + suppressed + " so far");
+        }
+        return false;
+    }
+
+    /** Returns the number of triggers that were ignored because they were caused by a sync. */
+    public static long getSuppressedCount() {
+        return sSuppressedCount.get();
+    }
+
+    private static boolean isPreviewProgramUri(Uri uri) {
+        Uri previewPrograms = TvContractCompat.PreviewPrograms.CONTENT_URI;
+        List<String> segments = uri.getPathSegments();
+        return previewPrograms.getAuthority().equals(uri.getAuthority())
+                && segments.size() == 2
+                && previewPrograms.getLastPathSegment().equals(segments.get(0));
+    }
+
+    private static final class OwnWrites {
+
+        final long generation;
+        final long timeMillis;
+        final ChannelRegistry.Entry channel;
+        final LongLongMap programIds;
+
+        OwnWrites(
+                long generation,
+                long timeMillis,
+                ChannelRegistry.Entry channel,
+                LongLongMap programIds) {
+            this.generation = generation;
+            this.timeMillis = timeMillis;
+            this.channel = channel;
+            this.programIds = programIds;
+        }
+
+        /* Returns true if the columns of the channel that a sync depends on did not change. */
+        boolean hasSameChannel(ChannelRegistry.Entry current) {
+            if (channel == null || current == null) {
+                return false;
+            }
+            String name = channel.getDisplayName();
+            return channel.isBrowsable() == current.isBrowsable()
+                    && (name == null
+                            ? current.getDisplayName() == null
+                            : name.equals(current.getDisplayName()));
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2017 Google Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.example.android.tv.recommendations.util;
+
+import android.os.Trace;
+
+/**
+ * Writes the sections of {@link SyncMetrics} to {@link Trace}, so that they show up in systrace and
+ * Perfetto captures of the app. Sections cost next to nothing while no capture is running.
+ */
+public final class SystemTracer implements SyncMetrics.Tracer {
+
+    private static final SystemTracer INSTANCE = new SystemTracer();
+
+    private SystemTracer() {}
+
+    /** Traces the sections of the sync from now on. Safe to call more than once. */
+    public static void install() {
+        SyncMetrics.setTracer(INSTANCE);
+    }
+
+    @Override
+    public void beginSection(String name) {
+        Trace.beginSection(name);
+    }
+
+    @Override
+    public void endSection() {
+        Trace.endSection();
+    }
+}
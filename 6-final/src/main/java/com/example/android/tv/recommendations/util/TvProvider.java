@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2017 Google Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.example.android.tv.recommendations.util;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The tables of the TV provider that the sync writes to, without depending on the Android
+ * framework, so that the sync logic also runs against an in-memory provider on a plain JVM.
+ *
+ * <p>Rows are maps from column name to value, see {@link ProviderRows} for the columns. Every call
+ * is one round trip to the provider, a batch included.
+ */
+public interface TvProvider {
+
+    int CHANNELS = 0;
+    int PREVIEW_PROGRAMS = 1;
+    int WATCH_NEXT_PROGRAMS = 2;
+
+    /**
+     * Inserts a row.
+     *
+     * @param table to insert into.
+     * @param values of the row.
+     * @return the id of the row, or -1 if it was not inserted.
+     */
+    long insert(int table, Map<String, Object> values);
+
+    /**
+     * Updates a row.
+     *
+     * @param table of the row.
+     * @param id of the row.
+     * @param values to be set.
+     * @return the number of rows updated, 0 if the row does not exist.
+     */
+    int update(int table, long id, Map<String, Object> values);
+
+    /**
+     * Deletes a row.
+     *
+     * @param table of the row.
+     * @param id of the row.
+     * @return the number of rows deleted, 0 if the row does not exist.
+     */
+    int delete(int table, long id);
+
+    /**
+     * Reads the rows of a table, or the rows with a given value in a column.
+     *
+     * @param table to be read.
+     * @param projection the columns to read.
+     * @param column to select rows by, such as the channel id of programs, or null for all rows.
+     * @param value of the column of the selected rows.
+     * @return the rows, or null if the table could not be read.
+     */
+    List<Map<String, Object>> query(int table, String[] projection, String column, long value);
+
+    /**
+     * Applies operations in a single transaction.
+     *
+     * @param operations to be applied, in order.
+     * @return the result of each operation, in the same order.
+     * @throws BatchException if the batch was rejected. Operations may have been applied.
+     */
+    Result[] applyBatch(List<Operation> operations) throws BatchException;
+
+    /** An insert, update or delete of a row. */
+    final class Operation {
+
+        public static final int INSERT = 0;
+        public static final int UPDATE = 1;
+        public static final int DELETE = 2;
+
+        private final int mKind;
+        private final int mTable;
+        private final long mId;
+        private final Map<String, Object> mValues;
+
+        private Operation(int kind, int table, long id, Map<String, Object> values) {
+            this.mKind = kind;
+            this.mTable = table;
+            this.mId = id;
+            this.mValues = values;
+        }
+
+        public static Operation newInsert(int table, Map<String, Object> values) {
+            return new Operation(INSERT, table, -1L, values);
+        }
+
+        public static Operation newUpdate(int table, long id, Map<String, Object> values) {
+            return new Operation(UPDATE, table, id, values);
+        }
+
+        public static Operation newDelete(int table, long id) {
+            return new Operation(DELETE, table, id, Collections.<String, Object>emptyMap());
+        }
+
+        public int getKind() {
+            return mKind;
+        }
+
+        public int getTable() {
+            return mTable;
+        }
+
+        /** Returns the id of the row to update or delete, -1 for an insert. */
+        public long getId() {
+            return mId;
+        }
+
+        public Map<String, Object> getValues() {
+            return mValues;
+        }
+    }
+
+    /** The outcome of an operation of a batch. */
+    final class Result {
+
+        private final long mId;
+        private final int mCount;
+
+        public Result(long id, int count) {
+            this.mId = id;
+            this.mCount = count;
+        }
+
+        /** Returns the id of the inserted row, or -1. */
+        public long getId() {
+            return mId;
+        }
+
+        /** Returns the number of rows updated or deleted. */
+        public int getCount() {
+            return mCount;
+        }
+    }
+
+    /** Thrown when the provider rejects a batch. */
+    class BatchException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        public BatchException(Throwable cause) {
+            super(cause);
+        }
+    }
+}
@@ -16,40 +16,53 @@
 package com.example.android.tv.recommendations.util;
 
 import android.app.job.JobInfo;
+import android.app.job.JobParameters;
 import android.app.job.JobScheduler;
 import android.content.ComponentName;
-import android.content.ContentUris;
 import android.content.Context;
-import android.database.Cursor;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Canvas;
-import android.graphics.drawable.Drawable;
-import android.graphics.drawable.VectorDrawable;
-import android.media.tv.TvContract;
 import android.net.Uri;
 import android.os.PersistableBundle;
-import androidx.annotation.NonNull;
 import androidx.annotation.WorkerThread;
 import androidx.tvprovider.media.tv.Channel;
-import androidx.tvprovider.media.tv.ChannelLogoUtils;
 import androidx.tvprovider.media.tv.TvContractCompat;
 import android.util.Log;
+import com.example.android.tv.recommendations.RefreshCatalogJobService;
 import com.example.android.tv.recommendations.SyncChannelJobService;
 import com.example.android.tv.recommendations.SyncProgramsJobService;
+import com.example.android.tv.recommendations.SyncWatchNextJobService;
 import com.example.android.tv.recommendations.model.Subscription;
+import java.util.Collections;
+import java.util.List;
 
 /** Manages interactions with the TV Provider. */
 public class TvUtil {
 
     private static final String TAG = "TvUtil";
-    private static final long CHANNEL_JOB_ID_OFFSET = 1000;
 
-    private static final String[] CHANNELS_PROJECTION = {
-        TvContractCompat.Channels._ID,
-        TvContract.Channels.COLUMN_DISPLAY_NAME,
-        TvContractCompat.Channels.COLUMN_BROWSABLE
-    };
+    /*
+     * Every job of the app has a fixed id, allocated here, instead of an id derived from the data
+     * it syncs. Ids are never reused for another job.
+     */
+    private static final int SYNC_CHANNELS_JOB_ID = 1;
+    private static final int SYNC_PROGRAMS_JOB_ID = 2;
+    private static final int REFRESH_CATALOG_JOB_ID = 3;
+    private static final int SYNC_WATCH_NEXT_JOB_ID = 4;
+
+    /**
+     * Extra of the jobs holding the time from which they could run, in milliseconds since the
+     * epoch. Jobs triggered by a content change do not have it, since they wait for the change.
+     */
+    public static final String EXTRA_RUNNABLE_AT_MILLIS =
+            "com.example.android.tv.recommendations.RUNNABLE_AT_MILLIS";
+
+    /** Extra of the program sync job holding the ids of the channels it listens to. */
+    public static final String EXTRA_CHANNEL_IDS =
+            "com.example.android.tv.recommendations.CHANNEL_IDS";
+
+    // Above this, the program sync job observes all channels through a single uri.
+    private static final int MAX_TRIGGER_URIS = 50;
+
+    private static volatile boolean sLegacyJobsCancelled;
 
     /**
      * Converts a {@link Subscription} into a {@link Channel} and adds it to the tv provider.
@@ -60,89 +73,21 @@ public class TvUtil {
      */
     @WorkerThread
     public static long createChannel(Context context, Subscription subscription) {
+        return ChannelRegistry.get(context)
+                .createChannels(context, Collections.singletonList(subscription))[0];
+    }
 
-        // Checks if our subscription has been added to the channels before.
-        Cursor cursor =
-                context.getContentResolver()
-                        .query(
-                                TvContractCompat.Channels.CONTENT_URI,
-                                CHANNELS_PROJECTION,
-                                null,
-                                null,
-                                null);
-        if (cursor != null && cursor.moveToFirst()) {
-            do {
-                Channel channel = Channel.fromCursor(cursor);
-                if (subscription.getName().equals(channel.getDisplayName())) {
-                    Log.d(
-                            TAG,
-                            "Channel already exists. Returning channel "
-                                    + channel.getId()
-                                    + " from TV Provider.");
-                    return channel.getId();
-                }
-            } while (cursor.moveToNext());
-        }
-
-        Channel.Builder builder = new Channel.Builder();
-        builder.setType(TvContractCompat.Channels.TYPE_PREVIEW)
-                .setDisplayName(subscription.getName())
-                .setDescription(subscription.getDescription())
-                .setAppLinkIntentUri(null);
-
-        Log.d(TAG, "Creating channel: " + subscription.getName());
-        Uri channelUrl =
-                context.getContentResolver()
-                        .insert(
-                                TvContractCompat.Channels.CONTENT_URI,
-                                builder.build().toContentValues());
-
-        Log.d(TAG, "channel insert at " + channelUrl);
-        long channelId = ContentUris.parseId(channelUrl);
-        Log.d(TAG, "channel id " + channelId);
-
-        Bitmap bitmap = convertToBitmap(context, subscription.getChannelLogo());
-        ChannelLogoUtils.storeChannelLogo(context, channelId, bitmap);
-
-        return channelId;
-    }
-
-    public static int getNumberOfChannels(Context context) {
-        Cursor cursor =
-                context.getContentResolver()
-                        .query(
-                                TvContractCompat.Channels.CONTENT_URI,
-                                CHANNELS_PROJECTION,
-                                null,
-                                null,
-                                null);
-        return cursor != null ? cursor.getCount() : 0;
-    }
-
-    /**
-     * Converts a resource into a {@link Bitmap}. If the resource is a vector drawable, it will be
-     * drawn into a new Bitmap. Otherwise the {@link BitmapFactory} will decode the resource.
-     *
-     * @param context used for getting the drawable from resources.
-     * @param resourceId of the drawable.
-     * @return a bitmap of the resource.
-     */
-    @NonNull
-    public static Bitmap convertToBitmap(Context context, int resourceId) {
-        Drawable drawable = context.getDrawable(resourceId);
-        if (drawable instanceof VectorDrawable) {
-            Bitmap bitmap =
-                    Bitmap.createBitmap(
-                            drawable.getIntrinsicWidth(),
-                            drawable.getIntrinsicHeight(),
-                            Bitmap.Config.ARGB_8888);
-            Canvas canvas = new Canvas(bitmap);
-            drawable.setBounds(0, 0, canvas.getWidth(), canvas.getHeight());
-            drawable.draw(canvas);
-            return bitmap;
-        }
-
-        return BitmapFactory.decodeResource(context.getResources(), resourceId);
+    /**
+     * Converts {@link Subscription}s into {@link Channel}s and adds the ones that do not exist yet
+     * to the tv provider, in a single batch.
+     *
+     * @param context used for accessing a content resolver.
+     * @param subscriptions to be converted to channels and added to the tv provider.
+     * @return the id of the channel of each subscription, -1 if it could not be created.
+     */
+    @WorkerThread
+    public static long[] createChannels(Context context, List<Subscription> subscriptions) {
+        return ChannelRegistry.get(context).createChannels(context, subscriptions);
     }
 
     /**
@@ -152,42 +97,360 @@ public class TvUtil {
      */
     public static void scheduleSyncingChannel(Context context) {
         ComponentName componentName = new ComponentName(context, SyncChannelJobService.class);
-        JobInfo.Builder builder = new JobInfo.Builder(1, componentName);
+        JobInfo.Builder builder = new JobInfo.Builder(SYNC_CHANNELS_JOB_ID, componentName);
         builder.setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY);
+        PersistableBundle bundle = new PersistableBundle();
+        bundle.putLong(EXTRA_RUNNABLE_AT_MILLIS, System.currentTimeMillis());
+        builder.setExtras(bundle);
 
         JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
 
         Log.d(TAG, "Scheduled channel creation.");
-        scheduler.schedule(builder.build());
+        schedule(scheduler, builder.build());
     }
 
     /**
-     * Schedulers syncing programs for a channel. The scheduler will listen to a {@link Uri} for a
-     * particular channel.
+     * Schedules syncing programs for a channel, adding it to the channels that the program sync job
+     * listens to.
      *
      * @param context for accessing the {@link JobScheduler}.
      * @param channelId for the channel to listen for changes.
      */
+    @WorkerThread
     public static void scheduleSyncingProgramsForChannel(Context context, long channelId) {
+        scheduleSyncingProgramsForChannels(context, new long[] {channelId});
+    }
+
+    /**
+     * Schedules syncing programs for channels, adding them to the channels that the program sync
+     * job listens to. The job is only rescheduled if a channel was added.
+     *
+     * @param context for accessing the {@link JobScheduler}.
+     * @param channelIds for the channels to listen for changes, -1 entries are ignored.
+     */
+    @WorkerThread
+    public static void scheduleSyncingProgramsForChannels(Context context, long[] channelIds) {
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        JobInfo pending = getPendingJob(scheduler, SYNC_PROGRAMS_JOB_ID);
+        LongLongMap generations =
+                pending != null ? getSyncGenerations(pending.getExtras()) : new LongLongMap();
+        boolean added = false;
+        for (long channelId : channelIds) {
+            if (channelId != -1L && !generations.containsKey(channelId)) {
+                generations.put(channelId, SyncTriggerFilter.NO_GENERATION);
+                added = true;
+            }
+        }
+        if (pending != null && !added) {
+            Log.d(TAG, "Program sync already listens to " + generations.size() + " channels");
+            return;
+        }
+        scheduleSyncingPrograms(context, generations);
+    }
+
+    /**
+     * Returns the channels that the pending program sync job listens to, which includes the job
+     * while it runs.
+     *
+     * @param context for accessing the {@link JobScheduler}.
+     * @return the generation of the last sync of each channel, empty if the job is not scheduled.
+     */
+    public static LongLongMap getPendingSyncGenerations(Context context) {
+        JobScheduler scheduler =
+                (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        JobInfo pending = getPendingJob(scheduler, SYNC_PROGRAMS_JOB_ID);
+        return pending != null ? getSyncGenerations(pending.getExtras()) : new LongLongMap();
+    }
+
+    /**
+     * Schedules the program sync job, listening to changes to all of the given channels at once.
+     * Changes are coalesced for the delays set in {@link
+     * SyncTriggerFilter#setCoalescingDelay(long, long)}, and the changes made by the syncs that
+     * armed the job are ignored when the job is triggered.
+     *
+     * @param context for accessing the {@link JobScheduler}.
+     * @param generations the generation of the last sync of each channel to listen to, or {@link
+     *     SyncTriggerFilter#NO_GENERATION}.
+     */
+    public static void scheduleSyncingPrograms(Context context, LongLongMap generations) {
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        cancelLegacyProgramJobs(scheduler);
+        if (generations.isEmpty()) {
+            SyncMetrics.count(SyncMetrics.SCHEDULER_CALLS, 1L);
+            scheduler.cancel(SYNC_PROGRAMS_JOB_ID);
+            return;
+        }
+
+        long[] channelIds = generations.keys();
+        JobInfo.Builder builder = buildProgramsJob(context, generations, -1L);
+        if (channelIds.length > MAX_TRIGGER_URIS) {
+            // Too many uris to observe one by one, the channels are told apart when triggered.
+            builder.addTriggerContentUri(
+                    new JobInfo.TriggerContentUri(
+                            TvContractCompat.Channels.CONTENT_URI,
+                            JobInfo.TriggerContentUri.FLAG_NOTIFY_FOR_DESCENDANTS));
+        } else {
+            for (long channelId : channelIds) {
+                builder.addTriggerContentUri(
+                        new JobInfo.TriggerContentUri(
+                                TvContractCompat.buildChannelUri(channelId),
+                                JobInfo.TriggerContentUri.FLAG_NOTIFY_FOR_DESCENDANTS));
+            }
+        }
+        builder.setTriggerContentMaxDelay(SyncTriggerFilter.getMaxDelayMillis());
+        builder.setTriggerContentUpdateDelay(SyncTriggerFilter.getUpdateDelayMillis());
+
+        // Replaces the pending job, there is no need to cancel it first.
+        schedule(scheduler, builder.build());
+        Log.d(TAG, "Scheduled syncing programs for " + channelIds.length + " channels");
+    }
+
+    /**
+     * Runs the program sync job for all of its channels now, instead of waiting for a change to a
+     * channel. The job listens for changes again once it completes. This replaces the job even if
+     * it is running, see {@link SyncProgramsJobService#requestSyncNow(Context)}.
+     *
+     * @param context for accessing the {@link JobScheduler}.
+     */
+    public static void scheduleSyncingProgramsNow(Context context) {
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        JobInfo pending = getPendingJob(scheduler, SYNC_PROGRAMS_JOB_ID);
+        LongLongMap generations =
+                pending != null ? getSyncGenerations(pending.getExtras()) : new LongLongMap();
+        if (generations.isEmpty()) {
+            Log.d(TAG, "No channel to sync programs for");
+            return;
+        }
+        // Without trigger uris, the job syncs every channel.
+        JobInfo.Builder builder =
+                buildProgramsJob(context, generations, System.currentTimeMillis());
+        builder.setOverrideDeadline(0L);
+        schedule(scheduler, builder.build());
+        Log.d(TAG, "Syncing programs for " + generations.size() + " channels now");
+    }
+
+    /*
+     * Builds the program sync job, with the channels and their generations in its extras, and the
+     * time from which it can run unless it is -1.
+     */
+    private static JobInfo.Builder buildProgramsJob(
+            Context context, LongLongMap generations, long runnableAtMillis) {
         ComponentName componentName = new ComponentName(context, SyncProgramsJobService.class);
+        JobInfo.Builder builder = new JobInfo.Builder(SYNC_PROGRAMS_JOB_ID, componentName);
+
+        long[] channelIds = generations.keys();
+        long[] channelGenerations = new long[channelIds.length];
+        for (int index = 0; index < channelIds.length; ++index) {
+            channelGenerations[index] =
+                    generations.get(channelIds[index], SyncTriggerFilter.NO_GENERATION);
+        }
+        PersistableBundle bundle = new PersistableBundle();
+        bundle.putLongArray(EXTRA_CHANNEL_IDS, channelIds);
+        bundle.putLongArray(SyncTriggerFilter.EXTRA_SYNC_GENERATIONS, channelGenerations);
+        if (runnableAtMillis != -1L) {
+            bundle.putLong(EXTRA_RUNNABLE_AT_MILLIS, runnableAtMillis);
+        }
+        builder.setExtras(bundle);
+        return builder;
+    }
+
+    /**
+     * Schedules the Watch Next sync job, listening to changes to the Watch Next programs, such as
+     * the user removing one from the row. Changes are coalesced for the delays of {@link
+     * SyncTriggerFilter}. Only needed while the row holds movies of the app, see {@link
+     * WatchNextSync#isWatching(Context)}.
+     *
+     * @param context for accessing the {@link JobScheduler}.
+     */
+    public static void scheduleSyncingWatchNext(Context context) {
+        JobInfo.Builder builder = buildWatchNextJob(context, -1L);
+        builder.addTriggerContentUri(
+                new JobInfo.TriggerContentUri(
+                        TvContractCompat.WatchNextPrograms.CONTENT_URI,
+                        JobInfo.TriggerContentUri.FLAG_NOTIFY_FOR_DESCENDANTS));
+        builder.setTriggerContentMaxDelay(SyncTriggerFilter.getMaxDelayMillis());
+        builder.setTriggerContentUpdateDelay(SyncTriggerFilter.getUpdateDelayMillis());
+
+        JobScheduler scheduler =
+                (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        schedule(scheduler, builder.build());
+        Log.d(TAG, "Scheduled syncing Watch Next");
+    }
+
+    /**
+     * Runs the Watch Next sync job now, for instance once the catalog changed. The job listens for
+     * changes again once it completes.
+     *
+     * @param context for accessing the {@link JobScheduler}.
+     */
+    public static void scheduleSyncingWatchNextNow(Context context) {
+        JobInfo.Builder builder = buildWatchNextJob(context, System.currentTimeMillis());
+        builder.setOverrideDeadline(0L);
+
+        JobScheduler scheduler =
+                (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        schedule(scheduler, builder.build());
+        Log.d(TAG, "Syncing Watch Next now");
+    }
 
-        JobInfo.Builder builder = new JobInfo.Builder(getJobIdForChannelId(channelId), componentName);
+    /* Builds the Watch Next sync job, with the time from which it can run unless it is -1. */
+    private static JobInfo.Builder buildWatchNextJob(Context context, long runnableAtMillis) {
+        ComponentName componentName = new ComponentName(context, SyncWatchNextJobService.class);
+        JobInfo.Builder builder = new JobInfo.Builder(SYNC_WATCH_NEXT_JOB_ID, componentName);
+        if (runnableAtMillis != -1L) {
+            PersistableBundle bundle = new PersistableBundle();
+            bundle.putLong(EXTRA_RUNNABLE_AT_MILLIS, runnableAtMillis);
+            builder.setExtras(bundle);
+        }
+        return builder;
+    }
 
-        JobInfo.TriggerContentUri triggerContentUri = new JobInfo.TriggerContentUri(TvContractCompat.buildChannelUri(channelId), JobInfo.TriggerContentUri.FLAG_NOTIFY_FOR_DESCENDANTS);
-        builder.addTriggerContentUri(triggerContentUri);
-        builder.setTriggerContentMaxDelay(0L);
-        builder.setTriggerContentUpdateDelay(0L);
+    /**
+     * Returns true if the catalog refresh job is scheduled.
+     *
+     * @param context for accessing the {@link JobScheduler}.
+     */
+    public static boolean isRefreshingCatalogScheduled(Context context) {
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        return getPendingJob(scheduler, REFRESH_CATALOG_JOB_ID) != null;
+    }
 
+    /**
+     * Schedules refreshing the catalog, replacing the refresh that is already scheduled. See {@link
+     * CatalogRefreshScheduler} for how the delay is chosen.
+     *
+     * @param context for accessing the {@link JobScheduler}.
+     * @param delayMillis how long to wait before refreshing.
+     * @param heavy true to wait for an unmetered network while the device is idle and charging,
+     *     for at most another delay, instead of refreshing on any network.
+     */
+    public static void scheduleRefreshingCatalog(Context context, long delayMillis, boolean heavy) {
+        ComponentName componentName = new ComponentName(context, RefreshCatalogJobService.class);
+        JobInfo.Builder builder = new JobInfo.Builder(REFRESH_CATALOG_JOB_ID, componentName);
+        builder.setMinimumLatency(delayMillis);
+        // Survives reboots, since the next refresh is only scheduled by the previous one.
+        builder.setPersisted(true);
+        if (heavy) {
+            // Preferred windows only, the deadline lifts the constraints if none comes.
+            builder.setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED);
+            builder.setRequiresDeviceIdle(true);
+            builder.setRequiresCharging(true);
+            builder.setOverrideDeadline(2 * delayMillis);
+        } else {
+            builder.setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY);
+        }
         PersistableBundle bundle = new PersistableBundle();
-        bundle.putLong(TvContractCompat.EXTRA_CHANNEL_ID, channelId);
+        bundle.putLong(EXTRA_RUNNABLE_AT_MILLIS, System.currentTimeMillis() + delayMillis);
         builder.setExtras(bundle);
 
         JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
-        scheduler.cancel(getJobIdForChannelId(channelId));
-        scheduler.schedule(builder.build());
+        schedule(scheduler, builder.build());
+        Log.d(TAG, "Scheduled catalog refresh in " + delayMillis + " ms, heavy: " + heavy);
+    }
+
+    /**
+     * Records how long a job waited to run, from the time it could run, in the {@code
+     * job.<name>.wait} timer of {@link SyncMetrics}. Jobs triggered by a content change are not
+     * recorded, see {@link #EXTRA_RUNNABLE_AT_MILLIS}.
+     *
+     * @param job the name of the job in the timers.
+     * @param jobParameters of the started job.
+     * @return the start of the job, to be passed to {@link #recordJobFinished(String, long)}.
+     */
+    public static long recordJobStarted(String job, JobParameters jobParameters) {
+        PersistableBundle extras = jobParameters.getExtras();
+        long runnableAtMillis =
+                extras != null ? extras.getLong(EXTRA_RUNNABLE_AT_MILLIS, -1L) : -1L;
+        if (runnableAtMillis != -1L) {
+            long waitMillis = Math.max(0L, System.currentTimeMillis() - runnableAtMillis);
+            SyncMetrics.record("job." + job + ".wait", waitMillis * 1000000L);
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Records how long a job ran, in the {@code job.<name>.run} timer of {@link SyncMetrics}.
+     *
+     * @param job the name of the job in the timers.
+     * @param startNanos returned by {@link #recordJobStarted(String, JobParameters)}.
+     */
+    public static void recordJobFinished(String job, long startNanos) {
+        SyncMetrics.record("job." + job + ".run", System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Reads the channels of the program sync job from its extras.
+     *
+     * @param extras of the job.
+     * @return the generation of the last sync of each channel.
+     */
+    public static LongLongMap getSyncGenerations(PersistableBundle extras) {
+        long[] channelIds = extras != null ? extras.getLongArray(EXTRA_CHANNEL_IDS) : null;
+        long[] channelGenerations =
+                extras != null
+                        ? extras.getLongArray(SyncTriggerFilter.EXTRA_SYNC_GENERATIONS)
+                        : null;
+        if (channelIds == null) {
+            return new LongLongMap();
+        }
+        LongLongMap generations = new LongLongMap(channelIds.length);
+        for (int index = 0; index < channelIds.length; ++index) {
+            generations.put(
+                    channelIds[index],
+                    channelGenerations != null && index < channelGenerations.length
+                            ? channelGenerations[index]
+                            : SyncTriggerFilter.NO_GENERATION);
+        }
+        return generations;
+    }
+
+    /**
+     * Returns the id of the channel that a changed uri belongs to.
+     *
+     * @param uri of a channel or of one of its descendants, such as its logo.
+     * @return the id of the channel, or -1 if the uri is not a channel uri.
+     */
+    public static long getChannelIdFromUri(Uri uri) {
+        Uri channels = TvContractCompat.Channels.CONTENT_URI;
+        List<String> segments = uri.getPathSegments();
+        if (!channels.getAuthority().equals(uri.getAuthority())
+                || segments.size() < 2
+                || !channels.getLastPathSegment().equals(segments.get(0))) {
+            return -1L;
+        }
+        try {
+            return Long.parseLong(segments.get(1));
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    /* Cancels the jobs that older versions scheduled for each channel, with derived ids. */
+    private static void cancelLegacyProgramJobs(JobScheduler scheduler) {
+        if (sLegacyJobsCancelled) {
+            return;
+        }
+        String programService = SyncProgramsJobService.class.getName();
+        SyncMetrics.count(SyncMetrics.SCHEDULER_CALLS, 1L);
+        for (JobInfo job : scheduler.getAllPendingJobs()) {
+            if (job.getId() != SYNC_PROGRAMS_JOB_ID
+                    && programService.equals(job.getService().getClassName())) {
+                Log.d(TAG, "Cancelling legacy program sync job " + job.getId());
+                SyncMetrics.count(SyncMetrics.SCHEDULER_CALLS, 1L);
+                scheduler.cancel(job.getId());
+            }
+        }
+        sLegacyJobsCancelled = true;
+    }
+
+    /* Calls to the job scheduler are binder calls, counted in SyncMetrics#SCHEDULER_CALLS. */
+    private static void schedule(JobScheduler scheduler, JobInfo job) {
+        SyncMetrics.count(SyncMetrics.SCHEDULER_CALLS, 1L);
+        scheduler.schedule(job);
     }
 
-    private static int getJobIdForChannelId(long channelId) {
-        return (int) (CHANNEL_JOB_ID_OFFSET + channelId);
+    private static JobInfo getPendingJob(JobScheduler scheduler, int jobId) {
+        SyncMetrics.count(SyncMetrics.SCHEDULER_CALLS, 1L);
+        return scheduler.getPendingJob(jobId);
     }
 }
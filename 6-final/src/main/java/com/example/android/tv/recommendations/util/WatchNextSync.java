@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2017 Google Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.example.android.tv.recommendations.util;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.annotation.WorkerThread;
+import com.example.android.tv.recommendations.model.MockDatabase;
+import com.example.android.tv.recommendations.model.Movie;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the Watch Next row of the TV provider in line with the movies being watched.
+ *
+ * <p>Watch Next programs carry the id of their movie as internal provider id, so they are keyed by
+ * the stable movie id. A sync reads the ids of the Watch Next programs of the app with a single
+ * query and joins them with the stored movies:
+ *
+ * <ul>
+ *   <li>a program claimed by no stored movie is adopted by its movie, if it has no other program,
+ *       and deleted otherwise, which removes duplicates;
+ *   <li>a stored movie whose program is gone was removed from the row by the user. It is kept as
+ *       a movie without Watch Next id, and only published again once it is watched again.
+ * </ul>
+ *
+ * <p>The movies being watched are then reconciled with the published ones by {@link
+ * ProgramReconciler}, comparing fingerprints that cover the watch state, and the changes are
+ * written by {@link ProgramBatchWriter} in batches. Only programs whose watch state or metadata
+ * changed are written. The Watch Next ids are persisted through {@link MockDatabase} after each
+ * batch.
+ *
+ * <p>Between two calls to {@link #sync(Context, List)}, the movies being watched are those already
+ * in the row, whose metadata is refreshed from the catalog by {@link #refresh(Context, List)}. The
+ * refresh then picks up the programs that the user removed from the row, and the metadata that
+ * changed in the catalog. It is run by a job that is only armed while the row holds movies of the
+ * app, starting with the sync that first publishes one.
+ */
+public class WatchNextSync {
+
+    private static final String TAG = "WatchNextSync";
+
+    private static final String[] WATCH_NEXT_PROJECTION = {
+        ProviderRows.COLUMN_ID, ProviderRows.COLUMN_INTERNAL_PROVIDER_ID
+    };
+
+    private WatchNextSync() {
+        // Do nothing.
+    }
+
+    /**
+     * Returns true if the Watch Next row holds movies of the app, which {@link #refresh(Context,
+     * List)} keeps in line with the catalog.
+     *
+     * @param context used for accessing the database.
+     */
+    @WorkerThread
+    public static boolean isWatching(Context context) {
+        return !MockDatabase.getWatchNextMovies(context).isEmpty();
+    }
+
+    /**
+     * Syncs the Watch Next row with the movies it already holds, taking their metadata from the
+     * catalog and keeping their watch state. Movies that are not in the catalog keep the metadata
+     * they were published with.
+     *
+     * @param context used for accessing a content resolver and the database.
+     * @param catalog the current catalog. The list is not modified.
+     * @return the number of Watch Next programs written, by kind of change.
+     */
+    @WorkerThread
+    public static ProgramReconciler.Summary refresh(Context context, List<Movie> catalog) {
+        Map<Long, Movie> catalogById = new HashMap<>(catalog.size());
+        for (Movie movie : catalog) {
+            catalogById.put(movie.getId(), movie);
+        }
+        List<Movie> stored = MockDatabase.getWatchNextMovies(context);
+        List<Movie> watching = new ArrayList<>(stored.size());
+        for (Movie movie : stored) {
+            Movie latest = catalogById.get(movie.getId());
+            if (latest == null) {
+                watching.add(movie);
+                continue;
+            }
+            Movie refreshed = new Movie(latest);
+            refreshed.setLastPlaybackPositionMillis(movie.getLastPlaybackPositionMillis());
+            refreshed.setDurationMillis(movie.getDurationMillis());
+            refreshed.setLastEngagementTimeMillis(movie.getLastEngagementTimeMillis());
+            watching.add(refreshed);
+        }
+        return sync(context, watching);
+    }
+
+    /**
+     * Publishes the movies being watched in the Watch Next row, and removes the others.
+     *
+     * @param context used for accessing a content resolver and the database.
+     * @param watching movies with their watch state. The list is not modified.
+     * @return the number of Watch Next programs written, by kind of change.
+     */
+    @WorkerThread
+    public static ProgramReconciler.Summary sync(final Context context, List<Movie> watching) {
+        TvProvider provider = new ContentResolverTvProvider(context);
+        LongLongMap rows = queryRows(provider);
+        if (rows == null) {
+            return new ProgramReconciler.Summary(0, 0, 0, 0);
+        }
+        List<Movie> stored = MockDatabase.getWatchNextMovies(context);
+
+        // Join the stored movies with the programs in the provider.
+        LongLongMap claimed = new LongLongMap(stored.size());
+        LongLongMap publishedIds = new LongLongMap(stored.size());
+        LongLongMap dismissed = new LongLongMap();
+        List<Movie> published = new ArrayList<>(stored.size());
+        for (Movie movie : stored) {
+            long watchNextId = movie.getWatchNextId();
+            if (watchNextId != 0L
+                    && rows.containsKey(watchNextId)
+                    && !claimed.containsKey(watchNextId)
+                    && !publishedIds.containsKey(movie.getId())) {
+                claimed.put(watchNextId, 1L);
+                publishedIds.put(movie.getId(), 1L);
+                published.add(movie);
+            } else {
+                dismissed.put(movie.getId(), movie.getLastEngagementTimeMillis());
+            }
+        }
+        LongLongMap orphanIds = new LongLongMap();
+        for (long watchNextId : rows.keys()) {
+            if (claimed.containsKey(watchNextId)) {
+                continue;
+            }
+            long movieId = rows.get(watchNextId, 0L);
+            if (movieId != 0L && !publishedIds.containsKey(movieId)) {
+                // Written by a sync whose movies were not persisted, the content is unknown.
+                Movie movie = new Movie();
+                movie.setId(movieId);
+                movie.setWatchNextId(watchNextId);
+                publishedIds.put(movieId, 1L);
+                dismissed.remove(movieId);
+                published.add(movie);
+            } else {
+                orphanIds.put(watchNextId, 1L);
+            }
+        }
+
+        // Movies removed by the user stay out of the row until they are watched again.
+        List<Movie> candidates = new ArrayList<>(watching.size());
+        List<Movie> tombstones = new ArrayList<>();
+        for (Movie item : watching) {
+            Movie movie = new Movie(item);
+            movie.setProgramId(0L);
+            movie.setWatchNextId(0L);
+            if (dismissed.containsKey(movie.getId())
+                    && movie.getLastEngagementTimeMillis()
+                            <= dismissed.get(movie.getId(), 0L)) {
+                tombstones.add(movie);
+            } else {
+                candidates.add(movie);
+            }
+        }
+
+        ProgramBatchWriter.setWatchNextFingerprints(candidates);
+        ProgramReconciler.Plan plan = ProgramReconciler.reconcile(published, candidates);
+        if (!orphanIds.isEmpty()) {
+            plan =
+                    new ProgramReconciler.Plan(
+                            plan.getMovies(),
+                            plan.getInserts(),
+                            plan.getUpdates(),
+                            plan.getDeletes(),
+                            orphanIds.keys(),
+                            plan.getUnchangedCount());
+        }
+        ProgramReconciler.Summary summary =
+                ProgramBatchWriter.applyWatchNext(
+                        provider,
+                        plan,
+                        new ProgramBatchWriter.Checkpoint() {
+                            @Override
+                            public void onBatchApplied(List<Movie> stored, List<Movie> removed) {
+                                MockDatabase.saveWatchNextChanges(context, stored, removed);
+                            }
+                        });
+        Log.d(TAG, "Synced Watch Next: " + summary + ", " + tombstones.size() + " dismissed");
+        if (Thread.currentThread().isInterrupted()) {
+            return summary;
+        }
+
+        List<Movie> movies = new ArrayList<>(plan.getMovies().size() + tombstones.size());
+        for (Movie movie : plan.getMovies()) {
+            if (movie.getWatchNextId() != 0L) {
+                movies.add(movie);
+            }
+        }
+        movies.addAll(tombstones);
+        // Written rows were already persisted batch by batch, only a change of set is left.
+        if (!plan.isEmpty() || !haveSameIds(stored, movies)) {
+            MockDatabase.saveWatchNextMovies(context, movies);
+        }
+        if (stored.isEmpty() && !movies.isEmpty()) {
+            // The row was empty, so nothing was listening to its changes.
+            TvUtil.scheduleSyncingWatchNext(context);
+        }
+        return summary;
+    }
+
+    /* Returns true if both lists hold the same movies with the same Watch Next ids. */
+    private static boolean haveSameIds(List<Movie> stored, List<Movie> movies) {
+        if (stored.size() != movies.size()) {
+            return false;
+        }
+        LongLongMap watchNextIds = new LongLongMap(movies.size());
+        for (Movie movie : movies) {
+            watchNextIds.put(movie.getId(), movie.getWatchNextId());
+        }
+        for (Movie movie : stored) {
+            if (!watchNextIds.containsKey(movie.getId())
+                    || watchNextIds.get(movie.getId(), 0L) != movie.getWatchNextId()) {
+                return false;
+            }
+        }
+        return watchNextIds.size() == stored.size();
+    }
+
+    /* Returns the Watch Next programs of the app mapped to the id of their movie, 0 if unknown. */
+    private static LongLongMap queryRows(TvProvider provider) {
+        List<Map<String, Object>> programs =
+                provider.query(TvProvider.WATCH_NEXT_PROGRAMS, WATCH_NEXT_PROJECTION, null, 0L);
+        if (programs == null) {
+            Log.e(TAG, "Could not read the Watch Next programs");
+            return null;
+        }
+        LongLongMap rows = new LongLongMap(programs.size());
+        for (Map<String, Object> program : programs) {
+            rows.put(
+                    ((Number) program.get(ProviderRows.COLUMN_ID)).longValue(),
+                    parseMovieId(program.get(ProviderRows.COLUMN_INTERNAL_PROVIDER_ID)));
+        }
+        return rows;
+    }
+
+    private static long parseMovieId(Object internalProviderId) {
+        if (internalProviderId == null) {
+            return 0L;
+        }
+        try {
+            return Long.parseLong(internalProviderId.toString());
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.example.android.tv.recommendations.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class TmdbCatalogParserTest {
+
+    private static final String POSTER_URL = TmdbCatalogParser.IMAGE_BASE_URL + "/poster.jpg";
+
+    @Test
+    public void missingOriginalTitleFallsBackToTitle() throws IOException {
+        List<Movie> movies = new ArrayList<>();
+        int skipped =
+                parse(
+                        "{\"results\": ["
+                                + "{\"id\": 550, \"media_type\": \"movie\", \"title\": \"Title\","
+                                + " \"overview\": \"Overview\", \"poster_path\": \"/poster.jpg\"},"
+                                + "{\"id\": 1399, \"media_type\": \"tv\", \"name\": \"Name\","
+                                + " \"poster_path\": \"/poster.jpg\"},"
+                                + "{\"id\": 3, \"original_title\": \"\", \"title\": null,"
+                                + " \"poster_path\": \"/poster.jpg\"}"
+                                + "]}",
+                        movies);
+
+        assertEquals(1, skipped);
+        assertEquals(2, movies.size());
+        Movie movie = movies.get(0);
+        assertEquals("Title", movie.getTitle());
+        assertEquals("Overview", movie.getDescription());
+        assertEquals(550L, movie.getTmdbId());
+        assertEquals("movie", movie.getMediaType());
+        assertEquals(TmdbCatalogParser.createMovieId("movie", 550L, null), movie.getId());
+        assertEquals(POSTER_URL, movie.getCardImageUrl());
+        assertEquals(POSTER_URL, movie.getBackgroundImageUrl());
+        Movie show = movies.get(1);
+        assertEquals("Name", show.getTitle());
+        assertEquals("", show.getDescription());
+        assertEquals(TmdbCatalogParser.createMovieId("tv", 1399L, null), show.getId());
+    }
+
+    @Test
+    public void nonNumericIdIsHashedFromContent() throws IOException {
+        List<Movie> movies = new ArrayList<>();
+        int skipped =
+                parse(
+                        "{\"results\": ["
+                                + "{\"id\": \"550\", \"original_title\": \"First\","
+                                + " \"poster_path\": \"/poster.jpg\"},"
+                                + "{\"id\": 12.5, \"original_title\": \"Second\","
+                                + " \"poster_path\": \"/poster.jpg\"},"
+                                + "{\"id\": {\"value\": 1}, \"original_title\": \"Third\","
+                                + " \"poster_path\": \"/poster.jpg\"}"
+                                + "]}",
+                        movies);
+
+        assertEquals(0, skipped);
+        assertEquals(3, movies.size());
+        for (Movie movie : movies) {
+            assertEquals(0L, movie.getTmdbId());
+            assertEquals(
+                    TmdbCatalogParser.createMovieId(
+                            null, 0L, movie.getTitle() + '\n' + "/poster.jpg"),
+                    movie.getId());
+            assertTrue(movie.getId() > 0L);
+        }
+        assertNotEquals(movies.get(0).getId(), movies.get(1).getId());
+
+        // The same item gets the same id on every fetch.
+        List<Movie> again = new ArrayList<>();
+        parse(
+                "{\"results\": [{\"id\": \"550\", \"original_title\": \"First\","
+                        + " \"poster_path\": \"/poster.jpg\"}]}",
+                again);
+        assertEquals(movies.get(0).getId(), again.get(0).getId());
+    }
+
+    @Test
+    public void unknownNestedFieldsAreSkipped() throws IOException {
+        List<Movie> movies = new ArrayList<>();
+        int skipped =
+                parse(
+                        "{\"page\": 1,"
+                                + " \"dates\": {\"maximum\": \"2017-01-01\", \"results\": []},"
+                                + " \"results\": ["
+                                + "{\"adult\": false, \"genre_ids\": [18, 53],"
+                                + " \"belongs_to\": {\"title\": \"Wrong\", \"id\": 9,"
+                                + " \"parts\": [{\"original_title\": \"Wrong\"}, [], null]},"
+                                + " \"id\": 550, \"media_type\": \"movie\","
+                                + " \"original_title\": \"Right\","
+                                + " \"poster_path\": \"/poster.jpg\","
+                                + " \"vote_average\": 8.4},"
+                                + "\"not an item\","
+                                + "{\"id\": 551, \"original_title\": \"No poster\"}"
+                                + "],"
+                                + " \"total_pages\": 500, \"extra\": [{\"results\": [1]}]}",
+                        movies);
+
+        assertEquals(2, skipped);
+        assertEquals(1, movies.size());
+        Movie movie = movies.get(0);
+        assertEquals("Right", movie.getTitle());
+        assertEquals(550L, movie.getTmdbId());
+        assertEquals(TmdbCatalogParser.createMovieId("movie", 550L, null), movie.getId());
+    }
+
+    private static int parse(String json, final List<Movie> movies) throws IOException {
+        return TmdbCatalogParser.parse(
+                new StringReader(json),
+                new TmdbCatalogParser.Listener() {
+                    @Override
+                    public void onMovie(Movie movie) {
+                        movies.add(movie);
+                    }
+                });
+    }
+}
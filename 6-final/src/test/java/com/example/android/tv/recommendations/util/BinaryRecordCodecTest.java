@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2017 Google Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.example.android.tv.recommendations.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.example.android.tv.recommendations.model.Movie;
+import com.example.android.tv.recommendations.model.Subscription;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class BinaryRecordCodecTest {
+
+    @Test
+    public void movieRoundTrip() {
+        Movie movie = createMovie();
+        assertTrue(BinaryRecordCodec.isBinary(BinaryRecordCodec.MOVIE.encode(movie)));
+        assertMovieEquals(movie, roundTrip(movie));
+    }
+
+    @Test
+    public void movieRoundTripWithOtherUrlsAndNulls() {
+        Movie movie = createMovie();
+        movie.setId(-1L);
+        movie.setProgramId(Long.MAX_VALUE);
+        movie.setWatchNextId(Long.MIN_VALUE);
+        movie.setTitle("\u00c9t\u00e9 \u2603");
+        movie.setDescription(null);
+        movie.setCategory("");
+        // Without a known prefix, and with a background image that is not the card image.
+        movie.setCardImageUrl("content://images/card");
+        movie.setBackgroundImageUrl("http://example.com/background.jpg");
+        movie.setMediaType(null);
+        assertMovieEquals(movie, roundTrip(movie));
+
+        movie.setCardImageUrl(null);
+        movie.setBackgroundImageUrl(null);
+        assertMovieEquals(movie, roundTrip(movie));
+    }
+
+    @Test
+    public void movieRoundTripLargerThanBuffer() {
+        Movie movie = createMovie();
+        char[] description = new char[10000];
+        Arrays.fill(description, 'd');
+        movie.setDescription(new String(description));
+        assertMovieEquals(movie, roundTrip(movie));
+    }
+
+    @Test
+    public void subscriptionRoundTrip() {
+        Subscription subscription = Subscription.createSubscription("Name", "Description", 42);
+        subscription.setChannelId(123456789L);
+        Subscription decoded =
+                BinaryRecordCodec.SUBSCRIPTION.decode(
+                        BinaryRecordCodec.SUBSCRIPTION.encode(subscription));
+        assertEquals(subscription.getChannelId(), decoded.getChannelId());
+        assertEquals(subscription.getName(), decoded.getName());
+        assertEquals(subscription.getDescription(), decoded.getDescription());
+        assertEquals(subscription.getChannelLogo(), decoded.getChannelLogo());
+
+        subscription.setDescription(null);
+        assertNull(
+                BinaryRecordCodec.SUBSCRIPTION
+                        .decode(BinaryRecordCodec.SUBSCRIPTION.encode(subscription))
+                        .getDescription());
+    }
+
+    @Test
+    public void truncatedRecordIsRejected() {
+        byte[] data = BinaryRecordCodec.MOVIE.encode(createMovie());
+        for (int length = 0; length < data.length; ++length) {
+            assertRejected(Arrays.copyOf(data, length));
+        }
+    }
+
+    @Test
+    public void oversizedLengthIsRejected() {
+        Movie movie = new Movie();
+        movie.setTitle("title");
+        byte[] data = BinaryRecordCodec.MOVIE.encode(movie);
+        // Header, then the id, program id and watch next id as single bytes, then the title.
+        int titleLength = 4;
+        assertEquals(2 * "title".length(), data[titleLength]);
+
+        // A length longer than the record, encoded as a zig-zag varint of 2^40.
+        byte[] oversized = new byte[data.length + 5];
+        System.arraycopy(data, 0, oversized, 0, titleLength);
+        byte[] length = {(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x40};
+        System.arraycopy(length, 0, oversized, titleLength, length.length);
+        System.arraycopy(
+                data,
+                titleLength + 1,
+                oversized,
+                titleLength + length.length,
+                data.length - titleLength - 1);
+        assertRejected(oversized);
+
+        // A negative length other than the one marking null.
+        data[titleLength] = 3;
+        assertRejected(data);
+    }
+
+    @Test
+    public void unknownHeaderIsRejected() {
+        byte[] data = BinaryRecordCodec.MOVIE.encode(createMovie());
+        data[0] = (byte) 0xFF;
+        assertRejected(data);
+        // JSON written by GsonRecordCodec.
+        assertRejected("{\"id\":1}".getBytes());
+    }
+
+    private static Movie createMovie() {
+        Movie movie = new Movie();
+        movie.setId((1L << 56) | 550L);
+        movie.setProgramId(17L);
+        movie.setWatchNextId(23L);
+        movie.setTitle("Title");
+        movie.setDescription("Description");
+        movie.setCategory("category");
+        movie.setCardImageUrl("https://image.tmdb.org/t/p/w500/poster.jpg");
+        movie.setBackgroundImageUrl("https://image.tmdb.org/t/p/w500/poster.jpg");
+        movie.setTmdbId(550L);
+        movie.setMediaType("movie");
+        movie.setProgramFingerprint(0x0123456789ABCDEFL);
+        movie.setLastPlaybackPositionMillis(60000L);
+        movie.setDurationMillis(7200000L);
+        movie.setLastEngagementTimeMillis(1500000000000L);
+        return movie;
+    }
+
+    private static Movie roundTrip(Movie movie) {
+        return BinaryRecordCodec.MOVIE.decode(BinaryRecordCodec.MOVIE.encode(movie));
+    }
+
+    private static void assertMovieEquals(Movie expected, Movie actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getProgramId(), actual.getProgramId());
+        assertEquals(expected.getWatchNextId(), actual.getWatchNextId());
+        assertEquals(expected.getTitle(), actual.getTitle());
+        assertEquals(expected.getDescription(), actual.getDescription());
+        assertEquals(expected.getCategory(), actual.getCategory());
+        assertEquals(expected.getCardImageUrl(), actual.getCardImageUrl());
+        assertEquals(expected.getBackgroundImageUrl(), actual.getBackgroundImageUrl());
+        assertEquals(expected.getTmdbId(), actual.getTmdbId());
+        assertEquals(expected.getMediaType(), actual.getMediaType());
+        assertEquals(expected.getProgramFingerprint(), actual.getProgramFingerprint());
+        assertEquals(
+                expected.getLastPlaybackPositionMillis(), actual.getLastPlaybackPositionMillis());
+        assertEquals(expected.getDurationMillis(), actual.getDurationMillis());
+        assertEquals(expected.getLastEngagementTimeMillis(), actual.getLastEngagementTimeMillis());
+    }
+
+    private static void assertRejected(byte[] data) {
+        try {
+            BinaryRecordCodec.MOVIE.decode(data);
+            fail("Decoded " + Arrays.toString(data));
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+}
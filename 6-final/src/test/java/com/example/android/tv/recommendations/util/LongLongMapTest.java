@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2017 Google Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.example.android.tv.recommendations.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+public class LongLongMapTest {
+
+    // A map created for 4 entries has 8 slots, and holds the 4 entries without growing.
+    private static final int EXPECTED_SIZE = 4;
+    private static final int CAPACITY = 8;
+
+    @Test
+    public void removeAndReinsertAcrossWrapAroundCluster() {
+        // Fills slots 6, 7, 0 and 1, so the run of entries wraps around the end of the table.
+        long c = keyWithHomeSlot(CAPACITY - 2, 0L);
+        long a = keyWithHomeSlot(CAPACITY - 1, 0L);
+        long b = keyWithHomeSlot(CAPACITY - 1, a);
+        long d = keyWithHomeSlot(0, 0L);
+        LongLongMap map = new LongLongMap(EXPECTED_SIZE);
+        map.put(c, 1L);
+        map.put(a, 2L);
+        map.put(b, 3L);
+        map.put(d, 4L);
+
+        // b and d are shifted back over the end of the table.
+        assertTrue(map.remove(a));
+        assertFalse(map.containsKey(a));
+        assertEquals(-1L, map.get(a, -1L));
+        assertEquals(1L, map.get(c, -1L));
+        assertEquals(3L, map.get(b, -1L));
+        assertEquals(4L, map.get(d, -1L));
+        assertEquals(3, map.size());
+
+        map.put(a, 5L);
+        assertEquals(5L, map.get(a, -1L));
+        assertEquals(3L, map.get(b, -1L));
+        assertEquals(4L, map.get(d, -1L));
+        assertEquals(4, map.size());
+
+        assertTrue(map.remove(b));
+        assertTrue(map.remove(c));
+        assertFalse(map.remove(c));
+        assertEquals(5L, map.get(a, -1L));
+        assertEquals(4L, map.get(d, -1L));
+        assertArrayEquals(sorted(a, d), sorted(map.keys()));
+    }
+
+    @Test
+    public void keyZero() {
+        LongLongMap map = new LongLongMap();
+        assertFalse(map.containsKey(0L));
+        assertEquals(-1L, map.get(0L, -1L));
+        assertFalse(map.remove(0L));
+
+        map.put(0L, 0L);
+        map.put(1L, 1L);
+        assertTrue(map.containsKey(0L));
+        assertEquals(0L, map.get(0L, -1L));
+        assertEquals(2, map.size());
+        assertArrayEquals(new long[] {0L, 1L}, sorted(map.keys()));
+
+        map.put(0L, 7L);
+        assertEquals(7L, map.get(0L, -1L));
+        assertEquals(2, map.size());
+
+        assertTrue(map.remove(0L));
+        assertFalse(map.containsKey(0L));
+        assertEquals(1L, map.get(1L, -1L));
+        assertEquals(1, map.size());
+
+        map.put(0L, 3L);
+        map.clear();
+        assertFalse(map.containsKey(0L));
+        assertTrue(map.isEmpty());
+    }
+
+    /* Returns the first key after the given one that LongLongMap places in the given slot. */
+    private static long keyWithHomeSlot(int slot, long after) {
+        for (long key = after + 1; ; ++key) {
+            // Same as LongLongMap.hash().
+            long h = key * 0x9E3779B97F4A7C15L;
+            if (((int) (h ^ (h >>> 32)) & (CAPACITY - 1)) == slot) {
+                return key;
+            }
+        }
+    }
+
+    private static long[] sorted(long... keys) {
+        long[] copy = keys.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+}
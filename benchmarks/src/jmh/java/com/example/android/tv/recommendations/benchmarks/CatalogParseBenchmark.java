@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2017 Google Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.example.android.tv.recommendations.benchmarks;
+
+import com.example.android.tv.recommendations.model.Movie;
+import com.example.android.tv.recommendations.model.TmdbCatalogParser;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing of a TMDB response into movies, as done for each page fetched by {@code
+ * MockMovieService.createMovieList}. The response is read from memory, so only parsing is
+ * measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CatalogParseBenchmark {
+
+    @Param({"20", "1000", "50000"})
+    public int size;
+
+    private String mResponse;
+
+    @Setup
+    public void setUp() {
+        mResponse = Fixtures.createCatalogJson(size);
+    }
+
+    @Benchmark
+    public List<Movie> parse() throws IOException {
+        final List<Movie> movies = new ArrayList<>(size);
+        TmdbCatalogParser.parse(
+                new StringReader(mResponse),
+                new TmdbCatalogParser.Listener() {
+                    @Override
+                    public void onMovie(Movie movie) {
+                        movies.add(movie);
+                    }
+                });
+        return movies;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2017 Google Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.example.android.tv.recommendations.benchmarks;
+
+import com.example.android.tv.recommendations.model.Movie;
+import com.example.android.tv.recommendations.model.Subscription;
+import com.example.android.tv.recommendations.model.TmdbCatalogParser;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Builds the payloads of the benchmarks. The same size always gives the same payload. */
+final class Fixtures {
+
+    private static final String OVERVIEW =
+            "Um grupo improvavel de herois precisa salvar a cidade antes que seja tarde demais, "
+                    + "enquanto segredos do passado voltam a tona.";
+
+    private Fixtures() {
+        // Do nothing.
+    }
+
+    /**
+     * Creates movies as they are stored after a sync, with program ids and fingerprints.
+     *
+     * @param count of movies.
+     * @return the movies, with distinct ids.
+     */
+    static List<Movie> createMovies(int count) {
+        List<Movie> movies = new ArrayList<>(count);
+        for (int index = 0; index < count; ++index) {
+            long tmdbId = 1000L + index;
+            String mediaType = index % 3 == 0 ? "tv" : "movie";
+            Movie movie = new Movie();
+            movie.setId(TmdbCatalogParser.createMovieId(mediaType, tmdbId, null));
+            movie.setTmdbId(tmdbId);
+            movie.setMediaType(mediaType);
+            movie.setTitle("Filme " + index);
+            movie.setDescription(OVERVIEW);
+            movie.setCategory("trending");
+            movie.setCardImageUrl(TmdbCatalogParser.IMAGE_BASE_URL + "/poster" + index + ".jpg");
+            movie.setBackgroundImageUrl(movie.getCardImageUrl());
+            movie.setProgramId(100_000L + index);
+            movie.setProgramFingerprint(31L * index + 7L);
+            movies.add(movie);
+        }
+        return movies;
+    }
+
+    /**
+     * Creates subscriptions with channels.
+     *
+     * @param count of subscriptions.
+     * @return the subscriptions, with distinct names and channel ids.
+     */
+    static List<Subscription> createSubscriptions(int count) {
+        List<Subscription> subscriptions = new ArrayList<>(count);
+        for (int index = 0; index < count; ++index) {
+            Subscription subscription =
+                    Subscription.createSubscription("Canal " + index, OVERVIEW, index);
+            subscription.setChannelId(index + 1L);
+            subscriptions.add(subscription);
+        }
+        return subscriptions;
+    }
+
+    /**
+     * Creates a TMDB trending response, with the fields of the real one.
+     *
+     * @param count of items in the results.
+     * @return the response body.
+     */
+    static String createCatalogJson(int count) {
+        StringWriter out = new StringWriter(count * 400);
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.beginObject();
+            writer.name("page").value(1);
+            writer.name("results").beginArray();
+            for (int index = 0; index < count; ++index) {
+                boolean tv = index % 3 == 0;
+                writer.beginObject();
+                writer.name("adult").value(false);
+                writer.name("backdrop_path").value("/backdrop" + index + ".jpg");
+                writer.name("genre_ids").beginArray().value(28).value(12).value(878).endArray();
+                writer.name("id").value(1000L + index);
+                writer.name(tv ? "original_name" : "original_title").value("Film " + index);
+                writer.name("overview").value(OVERVIEW);
+                writer.name("poster_path").value("/poster" + index + ".jpg");
+                writer.name("media_type").value(tv ? "tv" : "movie");
+                writer.name("original_language").value("en");
+                writer.name(tv ? "name" : "title").value("Filme " + index);
+                writer.name("popularity").value(1234.5 - index);
+                writer.name(tv ? "first_air_date" : "release_date").value("2020-01-01");
+                writer.name("vote_average").value(7.5);
+                writer.name("vote_count").value(1000 + index);
+                writer.endObject();
+            }
+            writer.endArray();
+            writer.name("total_pages").value(1000);
+            writer.name("total_results").value(20_000);
+            writer.endObject();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return out.toString();
+    }
+}
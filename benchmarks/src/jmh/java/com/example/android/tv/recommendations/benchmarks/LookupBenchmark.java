@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2017 Google Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.example.android.tv.recommendations.benchmarks;
+
+import com.example.android.tv.recommendations.model.Movie;
+import com.example.android.tv.recommendations.model.Subscription;
+import com.example.android.tv.recommendations.util.LongLongMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookups of a movie by id and of a subscription by name: the linear scans that {@code
+ * MockDatabase.findMovie} and {@code findSubscription} used to do, against the indexes that the
+ * database cache keeps. The looked up items are spread over the list, so scans are not always
+ * short.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookupBenchmark {
+
+    private static final int LOOKUPS = 16;
+
+    @Param({"20", "1000", "50000"})
+    public int size;
+
+    private List<Movie> mMovies;
+    private List<Subscription> mSubscriptions;
+    private LongLongMap mMovieIndexes;
+    private Map<String, Subscription> mSubscriptionsByName;
+    private long[] mMovieIds;
+    private String[] mNames;
+
+    @Setup
+    public void setUp() {
+        mMovies = Fixtures.createMovies(size);
+        mSubscriptions = Fixtures.createSubscriptions(size);
+        mMovieIndexes = new LongLongMap(size);
+        for (int index = 0; index < size; ++index) {
+            mMovieIndexes.put(mMovies.get(index).getId(), index);
+        }
+        mSubscriptionsByName = new HashMap<>();
+        for (Subscription subscription : mSubscriptions) {
+            mSubscriptionsByName.put(subscription.getName(), subscription);
+        }
+        mMovieIds = new long[LOOKUPS];
+        mNames = new String[LOOKUPS];
+        for (int lookup = 0; lookup < LOOKUPS; ++lookup) {
+            int index = (int) ((long) size * lookup / LOOKUPS);
+            mMovieIds[lookup] = mMovies.get(index).getId();
+            mNames[lookup] = mSubscriptions.get(index).getName();
+        }
+    }
+
+    @Benchmark
+    public int findMovieLinear() {
+        int found = 0;
+        for (long movieId : mMovieIds) {
+            for (int index = 0; index < mMovies.size(); ++index) {
+                if (mMovies.get(index).getId() == movieId) {
+                    found += index;
+                    break;
+                }
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int findMovieIndexed() {
+        int found = 0;
+        for (long movieId : mMovieIds) {
+            found += (int) mMovieIndexes.get(movieId, -1L);
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int findSubscriptionLinear() {
+        int found = 0;
+        for (String name : mNames) {
+            for (int index = 0; index < mSubscriptions.size(); ++index) {
+                if (mSubscriptions.get(index).getName().equals(name)) {
+                    found += index;
+                    break;
+                }
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int findSubscriptionIndexed() {
+        int found = 0;
+        for (String name : mNames) {
+            found += mSubscriptionsByName.get(name).getChannelLogo();
+        }
+        return found;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2017 Google Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.example.android.tv.recommendations.benchmarks;
+
+import com.example.android.tv.recommendations.model.Movie;
+import com.example.android.tv.recommendations.util.BinaryRecordCodec;
+import com.example.android.tv.recommendations.util.RecordCodec;
+import com.google.gson.Gson;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Marshalling of the stored movies of a channel: one Gson string per movie, as done by {@code
+ * SharedPreferencesHelper.setList} and {@code getList}, against the binary records that the
+ * database stores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersistenceBenchmark {
+
+    @Param({"20", "1000", "50000"})
+    public int size;
+
+    private final Gson mGson = new Gson();
+    private final RecordCodec<Movie> mCodec = BinaryRecordCodec.MOVIE;
+
+    private List<Movie> mMovies;
+    private Set<String> mStrings;
+    private List<byte[]> mRecords;
+
+    @Setup
+    public void setUp() {
+        mMovies = Fixtures.createMovies(size);
+        mStrings = encodeGson();
+        mRecords = encodeBinary();
+    }
+
+    @Benchmark
+    public Set<String> encodeGson() {
+        Set<String> strings = new LinkedHashSet<>(mMovies.size());
+        for (Movie movie : mMovies) {
+            strings.add(mGson.toJson(movie));
+        }
+        return strings;
+    }
+
+    @Benchmark
+    public List<Movie> decodeGson() {
+        List<Movie> movies = new ArrayList<>(mStrings.size());
+        for (String string : mStrings) {
+            movies.add(mGson.fromJson(string, Movie.class));
+        }
+        return movies;
+    }
+
+    @Benchmark
+    public List<byte[]> encodeBinary() {
+        List<byte[]> records = new ArrayList<>(mMovies.size());
+        for (Movie movie : mMovies) {
+            records.add(mCodec.encode(movie));
+        }
+        return records;
+    }
+
+    @Benchmark
+    public List<Movie> decodeBinary() {
+        List<Movie> movies = new ArrayList<>(mRecords.size());
+        for (byte[] record : mRecords) {
+            movies.add(mCodec.decode(record));
+        }
+        return movies;
+    }
+}
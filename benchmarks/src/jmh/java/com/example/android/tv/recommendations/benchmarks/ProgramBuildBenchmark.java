@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2017 Google Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.example.android.tv.recommendations.benchmarks;
+
+import com.example.android.tv.recommendations.model.Movie;
+import com.example.android.tv.recommendations.util.ProgramFingerprint;
+import com.example.android.tv.recommendations.util.ProgramReconciler;
+import com.example.android.tv.recommendations.util.ProviderRows;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Deciding which program rows a sync writes, and building them. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProgramBuildBenchmark {
+
+    private static final int PROGRAM_TYPE = ProviderRows.PROGRAM_TYPE_MOVIE;
+    private static final int POSTER_ASPECT_RATIO = ProviderRows.ASPECT_RATIO_MOVIE_POSTER;
+
+    @Param({"20", "1000", "50000"})
+    public int size;
+
+    private List<Movie> mPublished;
+    private List<Movie> mCatalog;
+
+    @Setup
+    public void setUp() {
+        mPublished = Fixtures.createMovies(size);
+        for (Movie movie : mPublished) {
+            movie.setProgramFingerprint(
+                    ProgramFingerprint.of(movie, PROGRAM_TYPE, POSTER_ASPECT_RATIO));
+        }
+        // One movie in ten has a new title, the others are unchanged.
+        mCatalog = new ArrayList<>(size);
+        for (int index = 0; index < size; ++index) {
+            Movie movie = new Movie(mPublished.get(index));
+            movie.setProgramId(0L);
+            if (index % 10 == 0) {
+                movie.setTitle(movie.getTitle() + " (novo)");
+            }
+            mCatalog.add(movie);
+        }
+    }
+
+    @Benchmark
+    public long fingerprint() {
+        long hash = 0L;
+        for (Movie movie : mCatalog) {
+            hash ^= ProgramFingerprint.of(movie, PROGRAM_TYPE, POSTER_ASPECT_RATIO);
+        }
+        return hash;
+    }
+
+    @Benchmark
+    public ProgramReconciler.Plan reconcile() {
+        for (Movie movie : mCatalog) {
+            movie.setProgramFingerprint(
+                    ProgramFingerprint.of(movie, PROGRAM_TYPE, POSTER_ASPECT_RATIO));
+        }
+        return ProgramReconciler.reconcile(mPublished, mCatalog);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> buildRows() {
+        List<Map<String, Object>> rows = new ArrayList<>(mCatalog.size());
+        for (Movie movie : mCatalog) {
+            rows.add(ProviderRows.buildProgram(1L, movie));
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2017 Google Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.example.android.tv.recommendations.loadtest;
+
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A local stand-in for the TMDB trending endpoint, serving fixture pages of 20 items.
+ *
+ * <p>Pages carry an {@code ETag} that changes with their content, and conditional requests for a
+ * page that did not change are answered with {@code 304 Not Modified}, as TMDB does. Bodies are
+ * gzipped for clients that accept it. The catalog
+ * can be changed between syncs to measure how much of it is fetched and written again.
+ */
+final class FakeTmdbServer {
+
+    static final int PAGE_SIZE = 20;
+
+    private static final String PATH = "/3/trending/all/day";
+    private static final String OVERVIEW =
+            "Um grupo improvavel de herois precisa salvar a cidade antes que seja tarde demais, "
+                    + "enquanto segredos do passado voltam a tona.";
+
+    private final HttpServer mServer;
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(4);
+
+    private final int[] mItemRevisions;
+    private final int[] mPageRevisions;
+
+    private final AtomicLong mRequests = new AtomicLong();
+    private final AtomicLong mNotModified = new AtomicLong();
+    private final AtomicLong mBytesServed = new AtomicLong();
+
+    /**
+     * Starts a server on a free port of the loopback interface.
+     *
+     * @param itemCount the number of items of the catalog.
+     */
+    FakeTmdbServer(int itemCount) throws IOException {
+        mItemRevisions = new int[itemCount];
+        mPageRevisions = new int[getPageCount()];
+        // Headers and body are written separately, which Nagle's algorithm would delay.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.createContext(
+                PATH,
+                new HttpHandler() {
+                    @Override
+                    public void handle(HttpExchange exchange) throws IOException {
+                        serve(exchange);
+                    }
+                });
+        mServer.setExecutor(mExecutor);
+        mServer.start();
+    }
+
+    void stop() {
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+    }
+
+    /** Returns the url of the catalog, to which the page parameter is appended. */
+    String getCatalogUrl() {
+        return "http://"
+                + mServer.getAddress().getHostString()
+                + ":"
+                + mServer.getAddress().getPort()
+                + PATH
+                + "?language=pt-BR";
+    }
+
+    int getPageCount() {
+        return (mItemRevisions.length + PAGE_SIZE - 1) / PAGE_SIZE;
+    }
+
+    /**
+     * Changes the overview of every n-th item, which changes the pages holding them.
+     *
+     * @param every the interval between changed items, 10 to change a tenth of the catalog.
+     */
+    synchronized void changeOverviews(int every) {
+        for (int index = 0; index < mItemRevisions.length; index += every) {
+            mItemRevisions[index]++;
+            mPageRevisions[index / PAGE_SIZE]++;
+        }
+    }
+
+    long getRequests() {
+        return mRequests.get();
+    }
+
+    long getNotModified() {
+        return mNotModified.get();
+    }
+
+    long getBytesServed() {
+        return mBytesServed.get();
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        mRequests.incrementAndGet();
+        try {
+            int page = parsePage(exchange.getRequestURI().getQuery());
+            if (page < 1 || page > getPageCount()) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            String body;
+            String etag;
+            synchronized (this) {
+                etag = "\"p" + page + "r" + mPageRevisions[page - 1] + "\"";
+                if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    mNotModified.incrementAndGet();
+                    exchange.getResponseHeaders().set("ETag", etag);
+                    exchange.sendResponseHeaders(304, -1);
+                    return;
+                }
+                body = writePage(page);
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json;charset=utf-8");
+            exchange.getResponseHeaders().set("ETag", etag);
+            String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                bytes = gzip(bytes);
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            }
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+            mBytesServed.addAndGet(bytes.length);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+
+    private static int parsePage(String query) {
+        if (query == null) {
+            return 1;
+        }
+        for (String parameter : query.split("&")) {
+            if (parameter.startsWith("page=")) {
+                try {
+                    return Integer.parseInt(parameter.substring("page=".length()));
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /* Writes a page with the fields of the real response, see TmdbCatalogParser. */
+    private String writePage(int page) throws IOException {
+        StringWriter out = new StringWriter(PAGE_SIZE * 450);
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.beginObject();
+            writer.name("page").value(page);
+            writer.name("results").beginArray();
+            int end = Math.min(page * PAGE_SIZE, mItemRevisions.length);
+            for (int index = (page - 1) * PAGE_SIZE; index < end; ++index) {
+                boolean tv = index % 3 == 0;
+                writer.beginObject();
+                writer.name("adult").value(false);
+                writer.name("backdrop_path").value("/backdrop" + index + ".jpg");
+                writer.name("genre_ids").beginArray().value(28).value(12).value(878).endArray();
+                writer.name("id").value(1000L + index);
+                writer.name(tv ? "original_name" : "original_title").value("Film " + index);
+                writer.name("overview")
+                        .value(
+                                mItemRevisions[index] == 0
+                                        ? OVERVIEW
+                                        : OVERVIEW + " (" + mItemRevisions[index] + ")");
+                writer.name("poster_path").value("/poster" + index + ".jpg");
+                writer.name("media_type").value(tv ? "tv" : "movie");
+                writer.name("original_language").value("en");
+                writer.name(tv ? "name" : "title").value("Filme " + index);
+                writer.name("popularity").value(1234.5 - index);
+                writer.name(tv ? "first_air_date" : "release_date").value("2020-01-01");
+                writer.name("vote_average").value(7.5);
+                writer.name("vote_count").value(1000 + index);
+                writer.endObject();
+            }
+            writer.endArray();
+            writer.name("total_pages").value(getPageCount());
+            writer.name("total_results").value(mItemRevisions.length);
+            writer.endObject();
+        }
+        return out.toString();
+    }
+}
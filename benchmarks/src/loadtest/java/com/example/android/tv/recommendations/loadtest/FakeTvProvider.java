@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2017 Google Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.example.android.tv.recommendations.loadtest;
+
+import com.example.android.tv.recommendations.util.ProviderRows;
+import com.example.android.tv.recommendations.util.TvProvider;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An in-memory TV provider that counts its calls.
+ *
+ * <p>Each call stands for one binder transaction of the real provider, a batch included. Like the
+ * real provider, programs can only be inserted into an existing channel, updates and deletes of
+ * missing rows affect no row, and a batch is applied entirely or not at all. Programs are indexed
+ * by channel, as the real provider does, so that querying a channel does not scan every program.
+ */
+final class FakeTvProvider implements TvProvider {
+
+    private static final int TABLE_COUNT = 3;
+
+    private final List<Map<Long, Map<String, Object>>> mTables = new ArrayList<>(TABLE_COUNT);
+    private final Map<Long, Set<Long>> mProgramsByChannel = new HashMap<>();
+    private final long[] mNextIds = new long[TABLE_COUNT];
+
+    private final Counters mCounters = new Counters();
+
+    /** The number of calls and rows handled by the provider. */
+    static final class Counters {
+
+        long inserts;
+        long updates;
+        long deletes;
+        long queries;
+        long batches;
+        long batchOperations;
+        long rowsRead;
+        long rejectedBatches;
+
+        /** Returns the number of calls to the provider, each one a binder transaction. */
+        long getCalls() {
+            return inserts + updates + deletes + queries + batches;
+        }
+
+        Counters copy() {
+            Counters copy = new Counters();
+            copy.inserts = inserts;
+            copy.updates = updates;
+            copy.deletes = deletes;
+            copy.queries = queries;
+            copy.batches = batches;
+            copy.batchOperations = batchOperations;
+            copy.rowsRead = rowsRead;
+            copy.rejectedBatches = rejectedBatches;
+            return copy;
+        }
+
+        Counters minus(Counters other) {
+            Counters difference = copy();
+            difference.inserts -= other.inserts;
+            difference.updates -= other.updates;
+            difference.deletes -= other.deletes;
+            difference.queries -= other.queries;
+            difference.batches -= other.batches;
+            difference.batchOperations -= other.batchOperations;
+            difference.rowsRead -= other.rowsRead;
+            difference.rejectedBatches -= other.rejectedBatches;
+            return difference;
+        }
+    }
+
+    FakeTvProvider() {
+        for (int table = 0; table < TABLE_COUNT; ++table) {
+            mTables.add(new LinkedHashMap<Long, Map<String, Object>>());
+            mNextIds[table] = 1L;
+        }
+    }
+
+    /** Returns a copy of the counters, to be compared with a later one. */
+    synchronized Counters getCounters() {
+        return mCounters.copy();
+    }
+
+    /** Returns the number of rows of a table, without counting it as a call. */
+    synchronized int size(int table) {
+        return mTables.get(table).size();
+    }
+
+    /**
+     * Sets a column of a row without counting it as a call, as the system or the user would, such
+     * as when a channel is made browsable.
+     */
+    synchronized void set(int table, long id, String column, Object value) {
+        Map<String, Object> row = mTables.get(table).get(id);
+        if (row != null) {
+            row.put(column, value);
+        }
+    }
+
+    /** Deletes a row without counting it as a call, as the user does when removing a program. */
+    synchronized void remove(int table, long id) {
+        removeRow(table, id);
+    }
+
+    /** Returns the ids of the rows of a table, without counting it as a call. */
+    synchronized List<Long> ids(int table) {
+        return new ArrayList<>(mTables.get(table).keySet());
+    }
+
+    @Override
+    public synchronized long insert(int table, Map<String, Object> values) {
+        mCounters.inserts++;
+        return insertRow(table, values);
+    }
+
+    @Override
+    public synchronized int update(int table, long id, Map<String, Object> values) {
+        mCounters.updates++;
+        return updateRow(table, id, values);
+    }
+
+    @Override
+    public synchronized int delete(int table, long id) {
+        mCounters.deletes++;
+        return removeRow(table, id);
+    }
+
+    @Override
+    public synchronized List<Map<String, Object>> query(
+            int table, String[] projection, String column, long value) {
+        mCounters.queries++;
+        Map<Long, Map<String, Object>> rows = mTables.get(table);
+        List<Map<String, Object>> result = new ArrayList<>();
+        if (table == PREVIEW_PROGRAMS && ProviderRows.COLUMN_CHANNEL_ID.equals(column)) {
+            Set<Long> ids = mProgramsByChannel.get(value);
+            if (ids != null) {
+                for (long id : ids) {
+                    result.add(project(rows.get(id), projection));
+                }
+            }
+        } else {
+            for (Map<String, Object> row : rows.values()) {
+                Object actual = column != null ? row.get(column) : null;
+                if (column == null
+                        || (actual instanceof Number && ((Number) actual).longValue() == value)) {
+                    result.add(project(row, projection));
+                }
+            }
+        }
+        mCounters.rowsRead += result.size();
+        return result;
+    }
+
+    @Override
+    public synchronized Result[] applyBatch(List<Operation> operations) throws BatchException {
+        mCounters.batches++;
+        mCounters.batchOperations += operations.size();
+        // Checked up front, so that a rejected batch leaves the tables untouched.
+        for (Operation operation : operations) {
+            if (operation.getKind() == Operation.INSERT) {
+                try {
+                    checkInsert(operation.getTable(), operation.getValues());
+                } catch (IllegalArgumentException e) {
+                    mCounters.rejectedBatches++;
+                    throw new BatchException(e);
+                }
+            }
+        }
+        Result[] results = new Result[operations.size()];
+        for (int index = 0; index < operations.size(); ++index) {
+            Operation operation = operations.get(index);
+            switch (operation.getKind()) {
+                case Operation.INSERT:
+                    results[index] =
+                            new Result(insertRow(operation.getTable(), operation.getValues()), 0);
+                    break;
+                case Operation.UPDATE:
+                    results[index] =
+                            new Result(
+                                    -1L,
+                                    updateRow(
+                                            operation.getTable(),
+                                            operation.getId(),
+                                            operation.getValues()));
+                    break;
+                default:
+                    results[index] =
+                            new Result(-1L, removeRow(operation.getTable(), operation.getId()));
+                    break;
+            }
+        }
+        return results;
+    }
+
+    private void checkInsert(int table, Map<String, Object> values) {
+        if (table == PREVIEW_PROGRAMS) {
+            Object channelId = values.get(ProviderRows.COLUMN_CHANNEL_ID);
+            if (!(channelId instanceof Number)
+                    || !mTables.get(CHANNELS).containsKey(((Number) channelId).longValue())) {
+                throw new IllegalArgumentException("No such channel: " + channelId);
+            }
+        }
+    }
+
+    private long insertRow(int table, Map<String, Object> values) {
+        checkInsert(table, values);
+        long id = mNextIds[table]++;
+        Map<String, Object> row = new HashMap<>(values);
+        row.put(ProviderRows.COLUMN_ID, id);
+        if (table == CHANNELS && !row.containsKey(ProviderRows.COLUMN_BROWSABLE)) {
+            row.put(ProviderRows.COLUMN_BROWSABLE, 0L);
+        }
+        mTables.get(table).put(id, row);
+        if (table == PREVIEW_PROGRAMS) {
+            long channelId = ((Number) row.get(ProviderRows.COLUMN_CHANNEL_ID)).longValue();
+            Set<Long> ids = mProgramsByChannel.get(channelId);
+            if (ids == null) {
+                ids = new LinkedHashSet<>();
+                mProgramsByChannel.put(channelId, ids);
+            }
+            ids.add(id);
+        }
+        return id;
+    }
+
+    private int updateRow(int table, long id, Map<String, Object> values) {
+        Map<String, Object> row = mTables.get(table).get(id);
+        if (row == null) {
+            return 0;
+        }
+        // The channel of a program does not change in this app, so the index stays valid.
+        row.putAll(values);
+        row.put(ProviderRows.COLUMN_ID, id);
+        return 1;
+    }
+
+    private int removeRow(int table, long id) {
+        Map<String, Object> row = mTables.get(table).remove(id);
+        if (row == null) {
+            return 0;
+        }
+        if (table == PREVIEW_PROGRAMS) {
+            Set<Long> ids =
+                    mProgramsByChannel.get(
+                            ((Number) row.get(ProviderRows.COLUMN_CHANNEL_ID)).longValue());
+            if (ids != null) {
+                ids.remove(id);
+            }
+        } else if (table == CHANNELS) {
+            // Deleting a channel deletes its programs.
+            Set<Long> ids = mProgramsByChannel.remove(id);
+            if (ids != null) {
+                for (long programId : ids) {
+                    mTables.get(PREVIEW_PROGRAMS).remove(programId);
+                }
+            }
+        }
+        return 1;
+    }
+
+    private static Map<String, Object> project(Map<String, Object> row, String[] projection) {
+        if (projection == null) {
+            return new HashMap<>(row);
+        }
+        Map<String, Object> projected = new HashMap<>();
+        for (String column : projection) {
+            projected.put(column, row.get(column));
+        }
+        return projected;
+    }
+}
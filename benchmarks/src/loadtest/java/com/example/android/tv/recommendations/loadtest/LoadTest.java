@@ -0,0 +1,345 @@
+/*
+ * Copyright (c) 2017 Google Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.example.android.tv.recommendations.loadtest;
+
+import com.example.android.tv.recommendations.model.CatalogFetcher;
+import com.example.android.tv.recommendations.model.Movie;
+import com.example.android.tv.recommendations.model.Subscription;
+import com.example.android.tv.recommendations.util.DatabaseCache;
+import com.example.android.tv.recommendations.util.ProgramAuditor;
+import com.example.android.tv.recommendations.util.ProgramBatchWriter;
+import com.example.android.tv.recommendations.util.ProgramReconciler;
+import com.example.android.tv.recommendations.util.ProviderRows;
+import com.example.android.tv.recommendations.util.SyncEngine;
+import com.example.android.tv.recommendations.util.SyncMetrics;
+import com.example.android.tv.recommendations.util.TvProvider;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs the channel and program sync of the app headless, against {@link FakeTvProvider} and
+ * {@link FakeTmdbServer}, and reports for each step the calls made to the provider, the rows
+ * written, the requests made to the server and the bytes it served, the reads that missed {@link
+ * DatabaseCache}, the wall time and the bytes allocated. The timers and counters of {@link
+ * SyncMetrics} are printed after each scenario.
+ *
+ * <p>Each scenario creates its channels, syncs every channel, changes a tenth of the catalog and
+ * syncs again, syncs once more without any change, then removes programs behind the back of the
+ * app and syncs with an audit. The catalog is fetched by the {@link CatalogFetcher} of the app,
+ * revalidating every page on each sync. Channels are synced one after the other on the calling
+ * thread, so that allocations are those of the sync; the fetcher and the server run on their own
+ * threads.
+ *
+ * <pre>
+ *   ./gradlew :benchmarks:loadTest
+ *   ./gradlew :benchmarks:loadTest --args='500 40'   # channels, programs per channel
+ * </pre>
+ */
+public final class LoadTest {
+
+    private static final String FORMAT =
+            "%-12s %6s %7s %7s %8s %8s %7s %7s %5s %7s %7s %7s %8s %8s%n";
+
+    private final FakeTmdbServer mServer;
+    private final FakeTvProvider mProvider = new FakeTvProvider();
+    // As many threads as the app fetches pages with.
+    private final ExecutorService mPageExecutor = Executors.newFixedThreadPool(4);
+    private final File mCacheDirectory;
+    private final CatalogFetcher mFetcher;
+    private final int mChannelCount;
+
+    /*
+     * The stored movies of each channel, standing for the database behind MockDatabase. Reads go
+     * through DatabaseCache first, as in MockDatabase.getMovies().
+     */
+    private final Map<Long, Map<Long, Movie>> mDatabase = new LinkedHashMap<>();
+
+    private LoadTest(int channelCount, int programsPerChannel) throws IOException {
+        this.mChannelCount = channelCount;
+        this.mServer = new FakeTmdbServer(programsPerChannel);
+        this.mCacheDirectory = Files.createTempDirectory("catalog").toFile();
+        this.mFetcher =
+                new CatalogFetcher(
+                        mCacheDirectory,
+                        mPageExecutor,
+                        new CatalogFetcher.Listener() {
+                            @Override
+                            public void onPageFailed(String url, Throwable error, boolean cached) {
+                                System.err.println("Could not fetch " + url + ": " + error);
+                            }
+
+                            @Override
+                            public void onItemsSkipped(String url, int count) {
+                                System.err.println("Skipped " + count + " items of " + url);
+                            }
+                        });
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 2) {
+            run(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+            return;
+        }
+        // 20k programs either spread over many channels or in a single one.
+        run(500, 40);
+        run(1, 20_000);
+    }
+
+    private static void run(int channelCount, int programsPerChannel) throws IOException {
+        System.out.printf(
+                Locale.US,
+                "%n%d channels x %d programs%n",
+                channelCount,
+                programsPerChannel);
+        System.out.printf(
+                Locale.US,
+                FORMAT,
+                "step",
+                "calls",
+                "batches",
+                "queries",
+                "rowsRead",
+                "inserted",
+                "updated",
+                "deleted",
+                "http",
+                "http304",
+                "httpKB",
+                "dbReads",
+                "wallMs",
+                "allocMB");
+        SyncMetrics.reset();
+        DatabaseCache.clear();
+        LoadTest test = new LoadTest(channelCount, programsPerChannel);
+        try {
+            test.runScenario();
+        } finally {
+            test.stop();
+        }
+        System.out.println("Programs: " + ProgramBatchWriter.getStats());
+        SyncMetrics.dump(new PrintWriter(System.out));
+    }
+
+    private void runScenario() throws IOException {
+        Step step = begin("channels");
+        long[] channelIds = createChannels();
+        end(step, null);
+
+        step = begin("initial");
+        end(step, syncAll(channelIds));
+
+        mServer.changeOverviews(10);
+        step = begin("changed10%");
+        end(step, syncAll(channelIds));
+
+        step = begin("unchanged");
+        end(step, syncAll(channelIds));
+        if (mChannelCount == 1 && step.cacheMisses != DatabaseCache.getMissCount()) {
+            throw new IllegalStateException("A channel larger than the cache was read again");
+        }
+
+        // The user removes one program in a hundred from the home screen.
+        List<Long> programIds = mProvider.ids(TvProvider.PREVIEW_PROGRAMS);
+        for (int index = 0; index < programIds.size(); index += 100) {
+            mProvider.remove(TvProvider.PREVIEW_PROGRAMS, programIds.get(index));
+        }
+        for (long channelId : channelIds) {
+            ProgramAuditor.requestAudit(channelId);
+        }
+        step = begin("audited");
+        end(step, syncAll(channelIds));
+
+        if (mProvider.size(TvProvider.PREVIEW_PROGRAMS) != countStoredMovies()) {
+            throw new IllegalStateException(
+                    "Provider has "
+                            + mProvider.size(TvProvider.PREVIEW_PROGRAMS)
+                            + " programs, database has "
+                            + countStoredMovies());
+        }
+    }
+
+    private void stop() {
+        mServer.stop();
+        mPageExecutor.shutdownNow();
+        File[] files = mCacheDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mCacheDirectory.delete();
+    }
+
+    /* Creates the channels in one batch, and makes them browsable as the user would. */
+    private long[] createChannels() {
+        List<Map<String, Object>> channels = new ArrayList<>(mChannelCount);
+        for (int index = 0; index < mChannelCount; ++index) {
+            channels.add(
+                    ProviderRows.buildChannel(
+                            Subscription.createSubscription("Canal " + index, "Canal", 0)));
+        }
+        long[] channelIds = SyncEngine.insertChannels(mProvider, channels);
+        List<Map<String, Object>> rows = SyncEngine.queryChannels(mProvider);
+        if (rows == null || rows.size() != mChannelCount) {
+            throw new IllegalStateException("Channels were not created");
+        }
+        for (long channelId : channelIds) {
+            mProvider.set(TvProvider.CHANNELS, channelId, ProviderRows.COLUMN_BROWSABLE, 1L);
+            mDatabase.put(channelId, new LinkedHashMap<Long, Movie>());
+        }
+        return channelIds;
+    }
+
+    /* Fetches the catalog once, as the published snapshot is shared, and syncs every channel. */
+    private ProgramReconciler.Summary syncAll(long[] channelIds) throws IOException {
+        List<Movie> catalog = mFetcher.fetch(mServer.getCatalogUrl(), mServer.getPageCount(), 0L);
+        if (catalog.isEmpty()) {
+            throw new IOException("Could not fetch the catalog");
+        }
+        int inserted = 0;
+        int updated = 0;
+        int deleted = 0;
+        int unchanged = 0;
+        for (final long channelId : channelIds) {
+            final Map<Long, Movie> stored = mDatabase.get(channelId);
+            List<Movie> movies = DatabaseCache.getMovies(channelId);
+            if (movies == null) {
+                movies = new ArrayList<>(stored.size());
+                for (Movie movie : stored.values()) {
+                    movies.add(new Movie(movie));
+                }
+                DatabaseCache.putMovies(channelId, movies);
+            }
+            List<Movie> copy = new ArrayList<>(catalog.size());
+            for (Movie movie : catalog) {
+                copy.add(new Movie(movie));
+            }
+            SyncEngine.Result result =
+                    SyncEngine.syncPrograms(
+                            mProvider,
+                            channelId,
+                            movies,
+                            copy,
+                            new ProgramBatchWriter.Checkpoint() {
+                                @Override
+                                public void onBatchApplied(
+                                        List<Movie> saved, List<Movie> removed) {
+                                    for (Movie movie : removed) {
+                                        stored.remove(movie.getId());
+                                    }
+                                    for (Movie movie : saved) {
+                                        stored.put(movie.getId(), new Movie(movie));
+                                    }
+                                    DatabaseCache.putMovieChanges(channelId, saved, removed);
+                                }
+                            });
+            if (result.getPublished() != null) {
+                stored.clear();
+                for (Movie movie : result.getPublished()) {
+                    stored.put(movie.getId(), new Movie(movie));
+                }
+                DatabaseCache.putMovies(channelId, result.getPublished());
+            }
+            ProgramReconciler.Summary[] summaries = {result.getRepaired(), result.getSummary()};
+            for (ProgramReconciler.Summary summary : summaries) {
+                if (summary != null) {
+                    inserted += summary.getInserted();
+                    updated += summary.getUpdated();
+                    deleted += summary.getDeleted();
+                    unchanged += summary.getUnchanged();
+                }
+            }
+        }
+        return new ProgramReconciler.Summary(inserted, updated, deleted, unchanged);
+    }
+
+    private int countStoredMovies() {
+        int count = 0;
+        for (Map<Long, Movie> stored : mDatabase.values()) {
+            count += stored.size();
+        }
+        return count;
+    }
+
+    private Step begin(String name) {
+        System.gc();
+        Step step = new Step();
+        step.name = name;
+        step.counters = mProvider.getCounters();
+        step.requests = mServer.getRequests();
+        step.notModified = mServer.getNotModified();
+        step.bytesServed = mServer.getBytesServed();
+        step.cacheMisses = DatabaseCache.getMissCount();
+        step.allocatedBytes = getAllocatedBytes();
+        step.startNanos = System.nanoTime();
+        return step;
+    }
+
+    private void end(Step step, ProgramReconciler.Summary summary) {
+        long wallNanos = System.nanoTime() - step.startNanos;
+        long allocated = getAllocatedBytes() - step.allocatedBytes;
+        FakeTvProvider.Counters counters = mProvider.getCounters().minus(step.counters);
+        System.out.printf(
+                Locale.US,
+                FORMAT,
+                step.name,
+                counters.getCalls(),
+                counters.batches,
+                counters.queries,
+                counters.rowsRead,
+                summary != null ? summary.getInserted() : counters.batchOperations,
+                summary != null ? summary.getUpdated() : 0,
+                summary != null ? summary.getDeleted() : 0,
+                mServer.getRequests() - step.requests,
+                mServer.getNotModified() - step.notModified,
+                (mServer.getBytesServed() - step.bytesServed) / 1024,
+                DatabaseCache.getMissCount() - step.cacheMisses,
+                String.format(Locale.US, "%.1f", wallNanos / 1e6),
+                String.format(Locale.US, "%.1f", allocated / (1024.0 * 1024.0)));
+    }
+
+    /* Bytes allocated by the calling thread, -1 if the JVM does not report it. */
+    private static long getAllocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1L;
+    }
+
+    private static final class Step {
+
+        String name;
+        FakeTvProvider.Counters counters;
+        long requests;
+        long notModified;
+        long bytesServed;
+        long cacheMisses;
+        long allocatedBytes;
+        long startNanos;
+    }
+}